@@ -0,0 +1,265 @@
+package Database.Drivers;
+
+import Paralexec.Logger;
+import Paralexec.Settings;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Small pool of the database connections.
+ *
+ * Connections idle for a while are validated before the borrow,
+ * invalid connections are replaced. New connections are opened
+ * with the exponential backoff.
+ *
+ * Settings:
+ *
+ *  - paralexec.db.poolSize - maximum number of the open connections (default 4)
+ *  - paralexec.db.reconnectAttempts - connection attempts before the failure (default 5)
+ *
+ * @author oto
+ */
+final public class DbConnectionPool
+{
+	final private static String JDBC_DRIVER = "com.mysql.jdbc.Driver";
+
+
+	/**
+	 * Maximum number of the open connections.
+	 */
+	private static int POOL_SIZE = Math.max(1, Settings.getInt("db.poolSize", 4));
+
+
+	/**
+	 * Connection attempts before the failure.
+	 */
+	private static int RECONNECT_ATTEMPTS = Math.max(1, Settings.getInt("db.reconnectAttempts", 5));
+
+
+	/**
+	 * First reconnect backoff (miliseconds).
+	 */
+	private static long RECONNECT_INITIAL_BACKOFF = 100;
+
+
+	/**
+	 * Maximum reconnect backoff (miliseconds).
+	 */
+	private static long RECONNECT_MAX_BACKOFF = 5000;
+
+
+	/**
+	 * Idle time without the server validation (miliseconds).
+	 */
+	private static long VALIDATION_IDLE_TIME = 1000;
+
+
+	/**
+	 * Server validation timeout (seconds).
+	 */
+	private static int VALIDATION_TIMEOUT = 2;
+
+
+	/**
+	 * Maximum wait for the free connection (miliseconds).
+	 */
+	private static long BORROW_TIMEOUT = 30000;
+
+
+	/**
+	 * Connection parameters.
+	 */
+	private String db;
+
+
+	private String user;
+
+
+	private String password;
+
+
+	/**
+	 * Idle connections (the last returned first).
+	 */
+	private Deque<PooledConnection> idleConnections = new ArrayDeque<>();
+
+
+	/**
+	 * Number of the open (idle and borrowed) connections.
+	 */
+	private int openConnectionsCount = 0;
+
+
+	/**
+	 * Opens the first connection.
+	 *
+	 * @param	db
+	 * @param	user
+	 * @param	password
+	 * @throws	DbDriverException
+	 */
+	public DbConnectionPool(String db, String user, String password) throws DbDriverException
+	{
+		this.db			= db;
+		this.user		= user;
+		this.password	= password;
+
+		this.idleConnections.push(new PooledConnection(this, this.openConnection()));
+
+		this.openConnectionsCount = 1;
+	}
+
+
+	/**
+	 * Borrows the connection - it has to be closed after the use.
+	 *
+	 * @return	Valid connection.
+	 * @throws	DbDriverException
+	 */
+	public PooledConnection getConnection() throws DbDriverException
+	{
+		PooledConnection connection = this.takeIdleConnection();
+
+		if (connection != null && !connection.isValid(VALIDATION_IDLE_TIME, VALIDATION_TIMEOUT))
+		{
+			Logger.warn("Invalid pooled connection - creating new.");
+
+			connection.closeQuietly();
+			connection = null;
+		}
+
+		// The pool slot is reserved for the new connection.
+		if (connection == null)
+		{
+			try
+			{
+				connection = new PooledConnection(this, this.openConnection());
+			}
+			catch (DbDriverException e)
+			{
+				this.releaseSlot();
+
+				throw e;
+			}
+		}
+
+		return connection;
+	}
+
+
+	/**
+	 * Takes the idle connection or reserves the slot for the new one.
+	 *
+	 * @return	Idle connection (null if the new one should be opened).
+	 * @throws	DbDriverException
+	 */
+	private synchronized PooledConnection takeIdleConnection() throws DbDriverException
+	{
+		long deadline = System.currentTimeMillis() + BORROW_TIMEOUT;
+
+		while (this.idleConnections.isEmpty() && this.openConnectionsCount >= POOL_SIZE)
+		{
+			long remaining = deadline - System.currentTimeMillis();
+
+			if (remaining <= 0)
+			{
+				throw new DbDriverException("No free database connection.");
+			}
+
+			try
+			{
+				this.wait(remaining);
+			}
+			catch (InterruptedException e)
+			{
+				throw new DbDriverException("Waiting for the database connection has been interrupted.");
+			}
+		}
+
+		if (!this.idleConnections.isEmpty())
+		{
+			return this.idleConnections.pop();
+		}
+
+		this.openConnectionsCount++;
+
+		return null;
+	}
+
+
+	/**
+	 * Returns the borrowed connection.
+	 *
+	 * @param connection
+	 */
+	synchronized void release(PooledConnection connection)
+	{
+		if (connection.isClosed())
+		{
+			connection.closeQuietly();
+
+			this.openConnectionsCount--;
+		}
+		else
+		{
+			this.idleConnections.push(connection);
+		}
+
+		this.notifyAll();
+	}
+
+
+	/**
+	 * Releases the slot reserved for the new connection.
+	 */
+	private synchronized void releaseSlot()
+	{
+		this.openConnectionsCount--;
+
+		this.notifyAll();
+	}
+
+
+	/**
+	 * Opens new connection with the exponential backoff.
+	 *
+	 * @return	JDBC connection.
+	 * @throws	DbDriverException
+	 */
+	private Connection openConnection() throws DbDriverException
+	{
+		long backoff = RECONNECT_INITIAL_BACKOFF;
+
+		for (int attempt = 1; ; attempt++)
+		{
+			try
+			{
+				Class.forName(JDBC_DRIVER);
+
+				return DriverManager.getConnection(this.db, this.user, this.password);
+			}
+			catch (Exception e)
+			{
+				if (attempt >= RECONNECT_ATTEMPTS)
+				{
+					throw new DbDriverException("Database connection error: " + e.getMessage());
+				}
+
+				Logger.warn("Database connection failed - retrying.", "attempt", attempt, "backoffMs", backoff, "error", e.getMessage());
+
+				try
+				{
+					Thread.sleep(backoff);
+				}
+				catch (InterruptedException ie)
+				{
+					throw new DbDriverException("Database connection has been interrupted.");
+				}
+
+				backoff = Math.min(backoff * 2, RECONNECT_MAX_BACKOFF);
+			}
+		}
+	}
+}
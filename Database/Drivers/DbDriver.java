@@ -1,62 +1,57 @@
 package Database.Drivers;
 
-import java.sql.*;
-import Paralexec.Logger;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
+ * Database driver.
+ *
+ * Drivers of the same database share one connection pool.
  *
  * @author ODIS
  */
 abstract public class DbDriver
 {
-	final private static String JDBC_DRIVER = "com.mysql.jdbc.Driver";
+	/**
+	 * <Database and user => connection pool>
+	 */
+	private static Map<String, DbConnectionPool> pools = new HashMap<>();
 	
 	
-	private Connection connection;
+	private DbConnectionPool pool;
 	
 	
 	public DbDriver() throws DbDriverException
 	{
-		this.connection = this.getNewConnection();
+		this.pool = getPool(this.getDb(), this.getUser(), this.getPassword());
 	}
 	
 	
-	private Connection getNewConnection() throws DbDriverException
+	private static synchronized DbConnectionPool getPool(String db, String user, String password) throws DbDriverException
 	{
-		try
+		String key				= user + "@" + db;
+		DbConnectionPool pool	= pools.get(key);
+		
+		if (pool == null)
 		{
-			Class.forName(JDBC_DRIVER);
+			pool = new DbConnectionPool(db, user, password);
 			
-			return DriverManager.getConnection(
-					this.getDb(), 
-					this.getUser(), 
-					this.getPassword()
-			);
-		}
-		catch (Exception e)
-		{
-			throw new DbDriverException("Database connection error: " + e.getMessage());
+			pools.put(key, pool);
 		}
+		
+		return pool;
 	}
 	
 	
-	public Connection getConnection() throws DbDriverException
+	/**
+	 * Borrows the pooled connection - it has to be closed after the use.
+	 * 
+	 * @return
+	 * @throws DbDriverException 
+	 */
+	public PooledConnection getConnection() throws DbDriverException
 	{
-		try
-		{
-			if (this.connection.isClosed())
-			{
-				Logger.log("Cannot get connection - creating new.");
-				
-				this.connection = this.getNewConnection();
-			}
-		}
-		catch (SQLException e)
-		{
-			throw new DbDriverException("Database access error: " + e.getMessage());
-		}
-		
-		return this.connection;
+		return this.pool.getConnection();
 	}
 	
 	
@@ -0,0 +1,198 @@
+package Database.Drivers;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Connection borrowed from the connection pool.
+ *
+ * It caches the prepared statements by their SQL, so the statements
+ * are prepared only once per connection. Cached statements must not be closed
+ * by the caller - close() returns the whole connection to the pool.
+ *
+ * @author oto
+ */
+final public class PooledConnection implements AutoCloseable
+{
+	/**
+	 * Maximum number of the cached statements.
+	 */
+	private static int STATEMENT_CACHE_SIZE = 32;
+
+
+	/**
+	 * Owner pool.
+	 */
+	private DbConnectionPool pool;
+
+
+	/**
+	 * JDBC connection.
+	 */
+	private Connection connection;
+
+
+	/**
+	 * <SQL => prepared statement> in the access order.
+	 */
+	private Map<String, PreparedStatement> statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true)
+	{
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest)
+		{
+			if (this.size() <= STATEMENT_CACHE_SIZE)
+			{
+				return false;
+			}
+
+			closeStatement(eldest.getValue());
+
+			return true;
+		}
+	};
+
+
+	/**
+	 * Time of the return to the pool (miliseconds).
+	 */
+	private long releaseTime;
+
+
+	/**
+	 * @param pool
+	 * @param connection
+	 */
+	PooledConnection(DbConnectionPool pool, Connection connection)
+	{
+		this.pool			= pool;
+		this.connection		= connection;
+		this.releaseTime	= System.currentTimeMillis();
+	}
+
+
+	/**
+	 * @return JDBC connection.
+	 */
+	public Connection getConnection()
+	{
+		return this.connection;
+	}
+
+
+	/**
+	 * Returns cached prepared statement of the SQL (with cleared parameters).
+	 *
+	 * @param	sql
+	 * @return	Prepared statement.
+	 * @throws	SQLException
+	 */
+	public PreparedStatement prepareStatement(String sql) throws SQLException
+	{
+		PreparedStatement stmt = this.statements.get(sql);
+
+		if (stmt == null || stmt.isClosed())
+		{
+			stmt = this.connection.prepareStatement(sql);
+
+			this.statements.put(sql, stmt);
+		}
+		else
+		{
+			stmt.clearParameters();
+			stmt.clearBatch();
+		}
+
+		return stmt;
+	}
+
+
+	/**
+	 * Returns the connection to the pool.
+	 */
+	@Override
+	public void close()
+	{
+		this.releaseTime = System.currentTimeMillis();
+
+		this.pool.release(this);
+	}
+
+
+	/**
+	 * Checks the connection.
+	 *
+	 * Connections idle for a short time are not checked on the server.
+	 *
+	 * @param	maxUncheckedIdleTime	Idle time without the server check (miliseconds).
+	 * @param	timeout					Server check timeout (seconds).
+	 * @return	TRUE if the connection can be used.
+	 */
+	boolean isValid(long maxUncheckedIdleTime, int timeout)
+	{
+		try
+		{
+			if (this.connection.isClosed())
+			{
+				return false;
+			}
+
+			return System.currentTimeMillis() - this.releaseTime <= maxUncheckedIdleTime || this.connection.isValid(timeout);
+		}
+		catch (SQLException e)
+		{
+			return false;
+		}
+	}
+
+
+	/**
+	 * @return TRUE if the JDBC connection has been closed.
+	 */
+	boolean isClosed()
+	{
+		try
+		{
+			return this.connection.isClosed();
+		}
+		catch (SQLException e)
+		{
+			return true;
+		}
+	}
+
+
+	/**
+	 * Closes the statements and the JDBC connection.
+	 */
+	void closeQuietly()
+	{
+		for (PreparedStatement stmt : this.statements.values())
+		{
+			closeStatement(stmt);
+		}
+
+		this.statements.clear();
+
+		try
+		{
+			this.connection.close();
+		}
+		catch (SQLException e) {}
+	}
+
+
+	/**
+	 * @param stmt
+	 */
+	private static void closeStatement(PreparedStatement stmt)
+	{
+		try
+		{
+			stmt.close();
+		}
+		catch (SQLException e) {}
+	}
+}
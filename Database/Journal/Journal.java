@@ -0,0 +1,505 @@
+package Database.Journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Append-only journal file.
+ *
+ * Every record is one line of tab separated fields (tabs, new lines
+ * and backslashes in the fields are escaped, \N is null). Incomplete last record
+ * (crash during the write) is dropped on the replay.
+ *
+ * More processes can append to the journal (e.g. the process import). Writes
+ * are done under the file lock and the records appended by the other processes
+ * are passed to the replay consumer before the own append (or by replayAppended()).
+ *
+ * @author oto
+ */
+final public class Journal
+{
+	/**
+	 * Null field.
+	 */
+	private static String NULL = "\\N";
+
+
+	/**
+	 * Journal file path.
+	 */
+	private Path path;
+
+
+	/**
+	 * Force the records to the disk after every append.
+	 */
+	private boolean sync;
+
+
+	/**
+	 * Journal file channel.
+	 */
+	private FileChannel channel;
+
+
+	/**
+	 * Number of the records in the file.
+	 */
+	private long recordsCount = 0;
+
+
+	/**
+	 * Position after the last replayed or appended record.
+	 */
+	private long readPosition = 0;
+
+
+	/**
+	 * File key of the opened journal (the compaction replaces the file).
+	 */
+	private Object fileKey;
+
+
+	/**
+	 * Consumer of the replayed records (null before the replay).
+	 */
+	private Consumer<String[]> consumer = null;
+
+
+	/**
+	 * @param	path
+	 * @param	sync	Force the records to the disk after every append.
+	 * @throws	JournalException
+	 */
+	public Journal(Path path, boolean sync) throws JournalException
+	{
+		this.path	= path;
+		this.sync	= sync;
+
+		try
+		{
+			if (path.getParent() != null)
+			{
+				Files.createDirectories(path.getParent());
+			}
+
+			this.channel = this.openChannel();
+		}
+		catch (IOException e)
+		{
+			throw new JournalException("Cannot open journal " + path + ": " + e.getMessage(), e);
+		}
+	}
+
+
+	/**
+	 * Reads all records.
+	 *
+	 * The consumer also gets the records appended by the other processes later.
+	 *
+	 * @param	consumer
+	 * @throws	JournalException
+	 */
+	public void replay(Consumer<String[]> consumer) throws JournalException
+	{
+		this.consumer = consumer;
+
+		FileLock lock = null;
+
+		try
+		{
+			lock = this.lock();
+
+			this.recordsCount	= 0;
+			this.readPosition	= 0;
+
+			this.readAppended();
+
+			// Incomplete last record is dropped (there is no writer, we have the lock).
+			if (this.readPosition < this.channel.size())
+			{
+				this.channel.truncate(this.readPosition);
+			}
+		}
+		catch (IOException e)
+		{
+			throw new JournalException("Cannot read journal " + this.path + ": " + e.getMessage(), e);
+		}
+		finally
+		{
+			release(lock);
+		}
+	}
+
+
+	/**
+	 * Passes the records appended by the other processes to the replay consumer.
+	 *
+	 * @throws JournalException
+	 */
+	public void replayAppended() throws JournalException
+	{
+		FileLock lock = null;
+
+		try
+		{
+			lock = this.lock();
+
+			this.readAppended();
+		}
+		catch (IOException e)
+		{
+			throw new JournalException("Cannot read journal " + this.path + ": " + e.getMessage(), e);
+		}
+		finally
+		{
+			release(lock);
+		}
+	}
+
+
+	/**
+	 * Reads the complete records after the read position (the file lock has to be held).
+	 *
+	 * @throws	IOException
+	 * @throws	JournalException
+	 */
+	private void readAppended() throws IOException, JournalException
+	{
+		long size = this.channel.size();
+
+		if (size <= this.readPosition)
+		{
+			return;
+		}
+
+		byte[] content = new byte[(int) (size - this.readPosition)];
+
+		try (FileChannel readChannel = FileChannel.open(this.path, StandardOpenOption.READ))
+		{
+			ByteBuffer buffer = ByteBuffer.wrap(content);
+
+			readChannel.position(this.readPosition);
+
+			while (buffer.hasRemaining() && readChannel.read(buffer) >= 0) {}
+		}
+
+		int lineStart = 0;
+
+		for (int i = 0; i < content.length; i++)
+		{
+			if (content[i] == '\n')
+			{
+				String[] record;
+
+				try
+				{
+					record = decode(new String(content, lineStart, i - lineStart, StandardCharsets.UTF_8));
+
+					if (this.consumer != null)
+					{
+						this.consumer.accept(record);
+					}
+				}
+				catch (RuntimeException e)
+				{
+					throw new JournalException("Invalid record " + (this.recordsCount + 1) + " of journal " + this.path + ".", e);
+				}
+
+				this.recordsCount++;
+
+				lineStart = i + 1;
+			}
+		}
+
+		this.readPosition += lineStart;
+	}
+
+
+	/**
+	 * Locks the journal file.
+	 *
+	 * The journal replaced by the compaction of the other process is reopened
+	 * and replayed from the start.
+	 *
+	 * @return	File lock.
+	 * @throws	IOException
+	 */
+	private FileLock lock() throws IOException
+	{
+		while (true)
+		{
+			FileLock lock = this.channel.lock();
+
+			Object currentKey = Files.readAttributes(this.path, BasicFileAttributes.class).fileKey();
+
+			if (currentKey == null || currentKey.equals(this.fileKey))
+			{
+				return lock;
+			}
+
+			lock.release();
+
+			this.channel.close();
+
+			this.channel		= this.openChannel();
+			this.readPosition	= 0;
+			this.recordsCount	= 0;
+		}
+	}
+
+
+	/**
+	 * Appends the records (one write).
+	 *
+	 * @param	records
+	 * @throws	JournalException
+	 */
+	public void append(List<String[]> records) throws JournalException
+	{
+		if (records.isEmpty())
+		{
+			return;
+		}
+
+		FileLock lock = null;
+
+		try
+		{
+			lock = this.lock();
+
+			// Records of the other processes go before the own records.
+			this.readAppended();
+
+			ByteBuffer buffer = ByteBuffer.wrap(encode(records).getBytes(StandardCharsets.UTF_8));
+
+			while (buffer.hasRemaining())
+			{
+				this.channel.write(buffer);
+			}
+
+			if (this.sync)
+			{
+				this.channel.force(false);
+			}
+
+			this.recordsCount	+= records.size();
+			this.readPosition	= this.channel.size();
+		}
+		catch (IOException e)
+		{
+			throw new JournalException("Cannot write journal " + this.path + ": " + e.getMessage(), e);
+		}
+		finally
+		{
+			release(lock);
+		}
+	}
+
+
+	/**
+	 * Appends one record.
+	 *
+	 * @param	fields
+	 * @throws	JournalException
+	 */
+	public void append(String... fields) throws JournalException
+	{
+		List<String[]> records = new ArrayList<>();
+
+		records.add(fields);
+
+		this.append(records);
+	}
+
+
+	/**
+	 * Replaces the journal content by given records (compaction).
+	 *
+	 * The new file is written aside and atomically moved over the journal.
+	 *
+	 * @param	records
+	 * @throws	JournalException
+	 */
+	public void rewrite(List<String[]> records) throws JournalException
+	{
+		Path tmpPath	= this.path.resolveSibling(this.path.getFileName() + ".tmp");
+		FileLock lock	= null;
+
+		try
+		{
+			lock = this.lock();
+
+			// Records appended by the other process are not in the compacted state - the compaction waits.
+			if (this.channel.size() != this.readPosition)
+			{
+				return;
+			}
+
+			try (FileChannel tmpChannel = FileChannel.open(tmpPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+			{
+				ByteBuffer buffer = ByteBuffer.wrap(encode(records).getBytes(StandardCharsets.UTF_8));
+
+				while (buffer.hasRemaining())
+				{
+					tmpChannel.write(buffer);
+				}
+
+				tmpChannel.force(true);
+			}
+
+			Files.move(tmpPath, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			// The lock of the old file is released with its channel.
+			this.channel.close();
+
+			this.channel		= this.openChannel();
+			this.recordsCount	= records.size();
+			this.readPosition	= this.channel.size();
+		}
+		catch (IOException e)
+		{
+			throw new JournalException("Cannot compact journal " + this.path + ": " + e.getMessage(), e);
+		}
+		finally
+		{
+			release(lock);
+		}
+	}
+
+
+	/**
+	 * Releases the file lock (the lock of the closed channel is already released).
+	 *
+	 * @param lock	Null if it has not been acquired.
+	 */
+	private static void release(FileLock lock)
+	{
+		if (lock != null && lock.isValid())
+		{
+			try
+			{
+				lock.release();
+			}
+			catch (IOException e) {}
+		}
+	}
+
+
+	/**
+	 * @return Number of the records in the file.
+	 */
+	public long getRecordsCount()
+	{
+		return this.recordsCount;
+	}
+
+
+	/**
+	 * @return	Journal file channel opened for the append.
+	 * @throws	IOException
+	 */
+	private FileChannel openChannel() throws IOException
+	{
+		FileChannel channel = FileChannel.open(this.path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+		this.fileKey = Files.readAttributes(this.path, BasicFileAttributes.class).fileKey();
+
+		return channel;
+	}
+
+
+	/**
+	 * @param	records
+	 * @return	Encoded records (lines).
+	 */
+	private static String encode(List<String[]> records)
+	{
+		StringBuilder content = new StringBuilder();
+
+		for (String[] fields : records)
+		{
+			for (int i = 0; i < fields.length; i++)
+			{
+				if (i > 0)
+				{
+					content.append('\t');
+				}
+
+				if (fields[i] == null)
+				{
+					content.append(NULL);
+
+					continue;
+				}
+
+				for (char c : fields[i].toCharArray())
+				{
+					switch (c)
+					{
+						case '\\':	content.append("\\\\");	break;
+						case '\t':	content.append("\\t");	break;
+						case '\n':	content.append("\\n");	break;
+						case '\r':	content.append("\\r");	break;
+						default:	content.append(c);
+					}
+				}
+			}
+
+			content.append('\n');
+		}
+
+		return content.toString();
+	}
+
+
+	/**
+	 * @param	line
+	 * @return	Decoded record fields.
+	 */
+	private static String[] decode(String line)
+	{
+		String[] fields = line.split("\t", -1);
+
+		for (int i = 0; i < fields.length; i++)
+		{
+			if (fields[i].equals(NULL))
+			{
+				fields[i] = null;
+			}
+			else if (fields[i].indexOf('\\') >= 0)
+			{
+				StringBuilder field = new StringBuilder();
+
+				for (int j = 0; j < fields[i].length(); j++)
+				{
+					char c = fields[i].charAt(j);
+
+					if (c == '\\' && j + 1 < fields[i].length())
+					{
+						char escaped = fields[i].charAt(++j);
+
+						c = escaped == 't' ? '\t' : escaped == 'n' ? '\n' : escaped == 'r' ? '\r' : escaped;
+					}
+
+					field.append(c);
+				}
+
+				fields[i] = field.toString();
+			}
+		}
+
+		return fields;
+	}
+}
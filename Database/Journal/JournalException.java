@@ -0,0 +1,28 @@
+package Database.Journal;
+
+import Database.DatabaseException;
+
+/**
+ * Exception associated with the journal processing.
+ *
+ * @author oto
+ */
+public class JournalException extends DatabaseException
+{
+	public JournalException()
+	{
+		super();
+	}
+	
+	
+	public JournalException(String message)
+	{
+		super(message);
+	}
+	
+	
+	public JournalException(String message, Throwable cause)
+	{
+		super(message, cause);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,746 @@
+package Database.Journal;
+
+import Database.DatabaseException;
+import Database.ModelStore;
+import Database.ProcessStateChange;
+import Database.ProcessStore;
+import Process.ProcessSetting;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Embedded store of the executed processes and the runtime models.
+ *
+ * The state is kept in the memory and every change is appended to the journal
+ * in the store directory, so no database server is needed. Journals are replayed
+ * on the start and compacted when they are much longer than the state.
+ *
+ * Records of processes.journal (tab separated):
+ *
+ *  - P id parent_id script_path input_dir_path input_ext output_dir_path output_ext - new WAITING process
+ *  - D id parent_id - additional parent of the process
+ *  - R id time - process is RUNNING
+ *  - F id time error - process is FINISHED (error \N if there is none)
+ *  - Q id file_name attempts time error - input file quarantined after the failed attempts
+ *  - C id file_name - input file has been processed (checkpoint)
+ *  - X id - checkpoints of the process are removed
+ *  - S time - all RUNNING processes are WAITING
+ *  - T id state start_time end_time error - process state snapshot (compaction)
+ *
+ * Records of models.journal:
+ *
+ *  - M model_key model
+ *
+ * Times are in milliseconds since the epoch.
+ *
+ * New processes are imported from the file (java -jar Paralexec.jar import file), also
+ * while Paralexec is running - the appended records are read on the process tree refresh.
+ * Import file has one process per line (tab separated, # starts the comment line):
+ *
+ *  id parent_id script_path input_dir_path input_ext output_dir_path output_ext [additional_parent_ids]
+ *
+ * Additional parent IDs are separated by commas.
+ *
+ * @author oto
+ */
+final public class JournalProcessStore implements ProcessStore, ModelStore
+{
+	/**
+	 * Processes journal file name.
+	 */
+	private static String PROCESSES_FILE = "processes.journal";
+
+
+	/**
+	 * Models journal file name.
+	 */
+	private static String MODELS_FILE = "models.journal";
+
+
+	/**
+	 * Minimal number of the records for the compaction.
+	 */
+	private static int COMPACTION_MIN_RECORDS = 1000;
+
+
+	/**
+	 * Process row (the same columns as executed_processes).
+	 */
+	private static final class ProcessRow
+	{
+		private int id;
+
+
+		private int parentId;
+
+
+		private String state = "WAITING";
+
+
+		private String scriptPath;
+
+
+		private String inputDirPath;
+
+
+		private String inputExt;
+
+
+		private String outputDirPath;
+
+
+		private String outputExt;
+
+
+		private String error = null;
+
+
+		private String startTime = null;
+
+
+		private String endTime = null;
+
+
+		/**
+		 * Additional parent IDs.
+		 */
+		private List<Integer> dependencyIds = new ArrayList<>();
+
+
+		/**
+		 * <File name => quarantine record>
+		 */
+		private Map<String, String[]> quarantinedFiles = new LinkedHashMap<>();
+
+
+		/**
+		 * Processed input file names (checkpoints).
+		 */
+		private Set<String> processedFiles = new LinkedHashSet<>();
+	}
+
+
+	/**
+	 * <Process ID => process row>
+	 */
+	private Map<Integer, ProcessRow> processes = new LinkedHashMap<>();
+
+
+	/**
+	 * <Model key => serialized model>
+	 */
+	private Map<String, String> models = new HashMap<>();
+
+
+	/**
+	 * Processes journal.
+	 */
+	private Journal processJournal;
+
+
+	/**
+	 * Models journal.
+	 */
+	private Journal modelJournal;
+
+
+	/**
+	 * Opens, replays and compacts the journals.
+	 *
+	 * @param	directory	Store directory.
+	 * @param	sync		Force the records to the disk after every change.
+	 * @throws	JournalException
+	 */
+	public JournalProcessStore(Path directory, boolean sync) throws JournalException
+	{
+		this(directory, sync, true);
+	}
+
+
+	/**
+	 * Opens and replays the journals.
+	 *
+	 * @param	directory	Store directory.
+	 * @param	sync		Force the records to the disk after every change.
+	 * @param	compact		Compact the journals (the import must not compact the journals of the running Paralexec).
+	 * @throws	JournalException
+	 */
+	public JournalProcessStore(Path directory, boolean sync, boolean compact) throws JournalException
+	{
+		this.processJournal	= new Journal(directory.resolve(PROCESSES_FILE), sync);
+		this.modelJournal	= new Journal(directory.resolve(MODELS_FILE), sync);
+
+		this.processJournal.replay(this::applyProcessRecord);
+		this.modelJournal.replay(this::applyModelRecord);
+
+		if (compact)
+		{
+			this.compact();
+		}
+	}
+
+
+	/**
+	 * Imports the processes from the file (all or nothing).
+	 *
+	 * @param	file	Import file (see the class description).
+	 * @return	Number of the imported processes.
+	 * @throws	JournalException
+	 */
+	public synchronized int importProcesses(Path file) throws JournalException
+	{
+		List<String> lines;
+
+		try
+		{
+			lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		}
+		catch (IOException e)
+		{
+			throw new JournalException("Cannot read import file " + file + ": " + e.getMessage(), e);
+		}
+
+		// Records of the other processes are applied first, so the IDs are checked against the current state.
+		this.processJournal.replayAppended();
+
+		List<String[]> records	= new ArrayList<>();
+		Set<Integer> ids		= new HashSet<>();
+		int processesCount		= 0;
+
+		for (int i = 0; i < lines.size(); i++)
+		{
+			String line = lines.get(i);
+
+			if (line.trim().isEmpty() || line.trim().startsWith("#"))
+			{
+				continue;
+			}
+
+			String[] fields = line.split("\t", -1);
+
+			if (fields.length != 7 && fields.length != 8)
+			{
+				throw new JournalException("Invalid line " + (i + 1) + " of import file " + file + " (7 or 8 tab separated fields expected).");
+			}
+
+			try
+			{
+				int id = Integer.parseInt(fields[0].trim());
+
+				Integer.parseInt(fields[1].trim());
+
+				if (this.processes.containsKey(id) || !ids.add(id))
+				{
+					throw new JournalException("Duplicite process " + id + " on line " + (i + 1) + " of import file " + file + ".");
+				}
+
+				records.add(new String[] {"P", String.valueOf(id), fields[1].trim(), fields[2], fields[3], fields[4], fields[5], fields[6]});
+
+				if (fields.length == 8 && !fields[7].trim().isEmpty())
+				{
+					for (String parentId : fields[7].split(","))
+					{
+						records.add(new String[] {"D", String.valueOf(id), String.valueOf(Integer.parseInt(parentId.trim()))});
+					}
+				}
+			}
+			catch (NumberFormatException e)
+			{
+				throw new JournalException("Invalid process ID on line " + (i + 1) + " of import file " + file + ".");
+			}
+
+			processesCount++;
+		}
+
+		// One append - the running Paralexec never reads the half of the import.
+		this.processJournal.append(records);
+
+		for (String[] record : records)
+		{
+			this.applyProcessRecord(record);
+		}
+
+		return processesCount;
+	}
+
+
+	/**
+	 * Adds new WAITING process.
+	 *
+	 * @param	id
+	 * @param	parentId		Parent process ID (0 = root).
+	 * @param	scriptPath
+	 * @param	inputDirPath
+	 * @param	inputExt
+	 * @param	outputDirPath
+	 * @param	outputExt
+	 * @throws	JournalException
+	 */
+	public synchronized void addProcess(int id, int parentId, String scriptPath, String inputDirPath, String inputExt, String outputDirPath, String outputExt) throws JournalException
+	{
+		String[] record = {"P", String.valueOf(id), String.valueOf(parentId), scriptPath, inputDirPath, inputExt, outputDirPath, outputExt};
+
+		this.processJournal.append(record);
+		this.applyProcessRecord(record);
+	}
+
+
+	/**
+	 * Adds the additional parent of the process.
+	 *
+	 * @param	id
+	 * @param	parentId
+	 * @throws	JournalException
+	 */
+	public synchronized void addDependency(int id, int parentId) throws JournalException
+	{
+		if (!this.processes.containsKey(id))
+		{
+			throw new JournalException("Unknown process " + id + ".");
+		}
+
+		this.appendAndApply(new String[] {"D", String.valueOf(id), String.valueOf(parentId)});
+	}
+
+
+	@Override
+	public void loadWaitingProcesses(Consumer<ProcessSetting> consumer) throws DatabaseException
+	{
+		List<ProcessSetting> waitingProcesses = new ArrayList<>();
+
+		// The consumer is called without the store lock.
+		synchronized (this)
+		{
+			// Processes imported while Paralexec is running.
+			this.processJournal.replayAppended();
+
+			for (ProcessRow row : this.processes.values())
+			{
+				if (this.isWaiting(row))
+				{
+					waitingProcesses.add(new ProcessSetting(
+							row.id,
+							row.parentId,
+							row.state,
+							row.scriptPath,
+							row.inputDirPath,
+							row.inputExt,
+							row.outputDirPath,
+							row.outputExt,
+							row.error
+					));
+				}
+			}
+		}
+
+		waitingProcesses.forEach(consumer);
+	}
+
+
+	@Override
+	public void loadProcessDependencies(BiConsumer<Integer, Integer> consumer) throws DatabaseException
+	{
+		List<int[]> dependencies = new ArrayList<>();
+
+		// The consumer is called without the store lock.
+		synchronized (this)
+		{
+			for (ProcessRow row : this.processes.values())
+			{
+				if (this.isWaiting(row))
+				{
+					for (int parentId : row.dependencyIds)
+					{
+						dependencies.add(new int[] {row.id, parentId});
+					}
+				}
+			}
+		}
+
+		for (int[] dependency : dependencies)
+		{
+			consumer.accept(dependency[0], dependency[1]);
+		}
+	}
+
+
+	@Override
+	public synchronized void markProcessAsRunning(int processId) throws DatabaseException
+	{
+		if (!this.processes.containsKey(processId))
+		{
+			throw new JournalException("No affected rows after process marking.");
+		}
+
+		this.appendAndApply(this.getRunningRecord(processId, System.currentTimeMillis()));
+	}
+
+
+	@Override
+	public synchronized void markProcessAsFinished(int processId, String error) throws DatabaseException
+	{
+		if (!this.processes.containsKey(processId))
+		{
+			throw new JournalException("No affected rows after process marking.");
+		}
+
+		this.appendAndApply(this.getFinishedRecord(processId, System.currentTimeMillis(), error));
+	}
+
+
+	@Override
+	public synchronized List<Integer> updateProcessStates(List<ProcessStateChange> changes) throws DatabaseException
+	{
+		List<String[]> records	= new ArrayList<>();
+		List<Integer> missing	= new ArrayList<>();
+
+		for (ProcessStateChange change : changes)
+		{
+			if (!this.processes.containsKey(change.getProcessId()))
+			{
+				missing.add(change.getProcessId());
+
+				continue;
+			}
+
+			if (change.isRunning())
+			{
+				records.add(this.getRunningRecord(change.getProcessId(), change.getStartTime().getTime()));
+			}
+
+			if (change.isFinished())
+			{
+				records.add(this.getFinishedRecord(change.getProcessId(), change.getEndTime().getTime(), change.getError()));
+			}
+		}
+
+		this.processJournal.append(records);
+
+		for (String[] record : records)
+		{
+			this.applyProcessRecord(record);
+		}
+
+		return missing;
+	}
+
+
+	@Override
+	public synchronized void quarantineFile(int processId, String fileName, int attempts, String error) throws DatabaseException
+	{
+		if (!this.processes.containsKey(processId))
+		{
+			throw new JournalException("Unknown process " + processId + ".");
+		}
+
+		this.appendAndApply(new String[] {"Q", String.valueOf(processId), fileName, String.valueOf(attempts), String.valueOf(System.currentTimeMillis()), error});
+	}
+
+
+	@Override
+	public synchronized Set<String> getProcessedFiles(int processId) throws DatabaseException
+	{
+		ProcessRow row = this.processes.get(processId);
+
+		return row != null ? new HashSet<>(row.processedFiles) : new HashSet<>();
+	}
+
+
+	@Override
+	public synchronized void markFilesAsProcessed(Map<Integer, List<String>> files) throws DatabaseException
+	{
+		List<String[]> records = new ArrayList<>();
+
+		for (Map.Entry<Integer, List<String>> processFiles : files.entrySet())
+		{
+			if (this.processes.containsKey(processFiles.getKey()))
+			{
+				for (String fileName : processFiles.getValue())
+				{
+					records.add(new String[] {"C", String.valueOf(processFiles.getKey()), fileName});
+				}
+			}
+		}
+
+		this.processJournal.append(records);
+
+		for (String[] record : records)
+		{
+			this.applyProcessRecord(record);
+		}
+	}
+
+
+	@Override
+	public synchronized void clearProcessedFiles(int processId) throws DatabaseException
+	{
+		ProcessRow row = this.processes.get(processId);
+
+		if (row != null && !row.processedFiles.isEmpty())
+		{
+			this.appendAndApply(new String[] {"X", String.valueOf(processId)});
+		}
+	}
+
+
+	@Override
+	public synchronized void stopRunningProcesses() throws DatabaseException
+	{
+		this.appendAndApply(new String[] {"S", String.valueOf(System.currentTimeMillis())});
+	}
+
+
+	@Override
+	public void initialize() throws DatabaseException
+	{
+		// Journals are opened by the constructor.
+	}
+
+
+	@Override
+	public synchronized Map<String, String> getModels() throws DatabaseException
+	{
+		return new HashMap<>(this.models);
+	}
+
+
+	@Override
+	public synchronized void saveModel(String modelKey, String model) throws DatabaseException
+	{
+		String[] record = {"M", modelKey, model};
+
+		this.modelJournal.append(record);
+		this.applyModelRecord(record);
+	}
+
+
+	/**
+	 * @param	row
+	 * @return	TRUE if the process is loaded by loadWaitingProcesses().
+	 */
+	private boolean isWaiting(ProcessRow row)
+	{
+		return row.state.equals("WAITING") || (row.state.equals("FINISHED") && row.error != null);
+	}
+
+
+	/**
+	 * @param	processId
+	 * @param	time
+	 * @return	RUNNING record.
+	 */
+	private String[] getRunningRecord(int processId, long time)
+	{
+		return new String[] {"R", String.valueOf(processId), String.valueOf(time)};
+	}
+
+
+	/**
+	 * @param	processId
+	 * @param	time
+	 * @param	error
+	 * @return	FINISHED record.
+	 */
+	private String[] getFinishedRecord(int processId, long time, String error)
+	{
+		return new String[] {"F", String.valueOf(processId), String.valueOf(time), error};
+	}
+
+
+	/**
+	 * @param	record
+	 * @throws	JournalException
+	 */
+	private void appendAndApply(String[] record) throws JournalException
+	{
+		this.processJournal.append(record);
+		this.applyProcessRecord(record);
+	}
+
+
+	/**
+	 * Applies the processes journal record to the state.
+	 *
+	 * @param record
+	 */
+	private void applyProcessRecord(String[] record)
+	{
+		ProcessRow row;
+
+		switch (record[0])
+		{
+			case "P":
+				row					= new ProcessRow();
+				row.id				= Integer.parseInt(record[1]);
+				row.parentId		= Integer.parseInt(record[2]);
+				row.scriptPath		= record[3];
+				row.inputDirPath	= record[4];
+				row.inputExt		= record[5];
+				row.outputDirPath	= record[6];
+				row.outputExt		= record[7];
+
+				this.processes.put(row.id, row);
+				break;
+
+			case "D":
+				row = this.processes.get(Integer.parseInt(record[1]));
+
+				if (row != null && !row.dependencyIds.contains(Integer.parseInt(record[2])))
+				{
+					row.dependencyIds.add(Integer.parseInt(record[2]));
+				}
+				break;
+
+			case "Q":
+				row = this.processes.get(Integer.parseInt(record[1]));
+
+				if (row != null)
+				{
+					row.quarantinedFiles.put(record[2], record);
+				}
+				break;
+
+			case "C":
+				row = this.processes.get(Integer.parseInt(record[1]));
+
+				if (row != null)
+				{
+					row.processedFiles.add(record[2]);
+				}
+				break;
+
+			case "X":
+				row = this.processes.get(Integer.parseInt(record[1]));
+
+				if (row != null)
+				{
+					row.processedFiles.clear();
+				}
+				break;
+
+			case "R":
+				row = this.processes.get(Integer.parseInt(record[1]));
+
+				if (row != null)
+				{
+					row.state		= "RUNNING";
+					row.startTime	= record[2];
+				}
+				break;
+
+			case "F":
+				row = this.processes.get(Integer.parseInt(record[1]));
+
+				if (row != null)
+				{
+					row.state	= "FINISHED";
+					row.endTime	= record[2];
+					row.error	= record[3];
+				}
+				break;
+
+			case "S":
+				for (ProcessRow runningRow : this.processes.values())
+				{
+					if (runningRow.state.equals("RUNNING"))
+					{
+						runningRow.state		= "WAITING";
+						runningRow.startTime	= null;
+					}
+				}
+				break;
+
+			case "T":
+				row = this.processes.get(Integer.parseInt(record[1]));
+
+				if (row != null)
+				{
+					row.state		= record[2];
+					row.startTime	= record[3];
+					row.endTime		= record[4];
+					row.error		= record[5];
+				}
+				break;
+		}
+	}
+
+
+	/**
+	 * Applies the models journal record to the state.
+	 *
+	 * @param record
+	 */
+	private void applyModelRecord(String[] record)
+	{
+		if (record[0].equals("M"))
+		{
+			this.models.put(record[1], record[2]);
+		}
+	}
+
+
+	/**
+	 * Rewrites the journals which are much longer than the state.
+	 *
+	 * @throws JournalException
+	 */
+	private void compact() throws JournalException
+	{
+		long processRecordsCount = this.processes.size() * 2L;
+
+		for (ProcessRow row : this.processes.values())
+		{
+			processRecordsCount += row.dependencyIds.size() + row.quarantinedFiles.size() + row.processedFiles.size();
+		}
+
+		if (this.processJournal.getRecordsCount() > Math.max(COMPACTION_MIN_RECORDS, processRecordsCount * 2))
+		{
+			List<String[]> records = new ArrayList<>();
+
+			for (ProcessRow row : this.processes.values())
+			{
+				records.add(new String[] {"P", String.valueOf(row.id), String.valueOf(row.parentId), row.scriptPath, row.inputDirPath, row.inputExt, row.outputDirPath, row.outputExt});
+
+				for (int parentId : row.dependencyIds)
+				{
+					records.add(new String[] {"D", String.valueOf(row.id), String.valueOf(parentId)});
+				}
+
+				records.addAll(row.quarantinedFiles.values());
+
+				for (String fileName : row.processedFiles)
+				{
+					records.add(new String[] {"C", String.valueOf(row.id), fileName});
+				}
+
+				records.add(new String[] {"T", String.valueOf(row.id), row.state, row.startTime, row.endTime, row.error});
+			}
+
+			this.processJournal.rewrite(records);
+		}
+
+		if (this.modelJournal.getRecordsCount() > Math.max(COMPACTION_MIN_RECORDS, this.models.size() * 2L))
+		{
+			List<String[]> records = new ArrayList<>();
+
+			for (Map.Entry<String, String> model : this.models.entrySet())
+			{
+				records.add(new String[] {"M", model.getKey(), model.getValue()});
+			}
+
+			this.modelJournal.rewrite(records);
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package Database;
+
+import java.util.Map;
+
+/**
+ * Storage of the serialized process runtime models.
+ *
+ * @author oto
+ */
+public interface ModelStore
+{
+	/**
+	 * Prepares the storage (creates it if it doesn't exist).
+	 *
+	 * @throws	DatabaseException
+	 */
+	public void initialize() throws DatabaseException;
+
+
+	/**
+	 * @return	<Model key => serialized model>
+	 * @throws	DatabaseException
+	 */
+	public Map<String, String> getModels() throws DatabaseException;
+
+
+	/**
+	 * @param	modelKey
+	 * @param	model		Serialized model.
+	 * @throws	DatabaseException
+	 */
+	public void saveModel(String modelKey, String model) throws DatabaseException;
+}
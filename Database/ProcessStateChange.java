@@ -0,0 +1,162 @@
+package Database;
+
+import java.sql.Timestamp;
+
+/**
+ * Pending state change of the executed process.
+ *
+ * It can hold the RUNNING transition, the FINISHED transition or both
+ * (RUNNING always happened before FINISHED).
+ *
+ * @author oto
+ */
+final public class ProcessStateChange
+{
+	/**
+	 * Process setting dataset ID.
+	 */
+	private int processId;
+
+
+	/**
+	 * Time of the RUNNING transition (null if there is none).
+	 */
+	private Timestamp startTime = null;
+
+
+	/**
+	 * Time of the FINISHED transition (null if there is none).
+	 */
+	private Timestamp endTime = null;
+
+
+	/**
+	 * Error of the FINISHED transition.
+	 */
+	private String error = null;
+
+
+	/**
+	 * @param processId
+	 */
+	private ProcessStateChange(int processId)
+	{
+		this.processId = processId;
+	}
+
+
+	/**
+	 * @param	processId
+	 * @param	startTime
+	 * @return	RUNNING transition.
+	 */
+	public static ProcessStateChange running(int processId, Timestamp startTime)
+	{
+		ProcessStateChange change = new ProcessStateChange(processId);
+
+		change.startTime = startTime;
+
+		return change;
+	}
+
+
+	/**
+	 * @param	processId
+	 * @param	endTime
+	 * @param	error		Error (null if there is none).
+	 * @return	FINISHED transition.
+	 */
+	public static ProcessStateChange finished(int processId, Timestamp endTime, String error)
+	{
+		ProcessStateChange change = new ProcessStateChange(processId);
+
+		change.endTime	= endTime;
+		change.error	= error;
+
+		return change;
+	}
+
+
+	/**
+	 * Coalesces the later change of the same process into this one.
+	 *
+	 * RUNNING after FINISHED cannot be coalesced (the order would be lost).
+	 *
+	 * @param	later
+	 * @return	TRUE if the change has been coalesced.
+	 */
+	public boolean coalesce(ProcessStateChange later)
+	{
+		if (this.isFinished() && later.isRunning())
+		{
+			return false;
+		}
+
+		if (later.isRunning())
+		{
+			this.startTime = later.startTime;
+		}
+
+		if (later.isFinished())
+		{
+			this.endTime	= later.endTime;
+			this.error		= later.error;
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * @return Process setting dataset ID.
+	 */
+	public int getProcessId()
+	{
+		return this.processId;
+	}
+
+
+	/**
+	 * @return TRUE if the change contains the RUNNING transition.
+	 */
+	public boolean isRunning()
+	{
+		return this.startTime != null;
+	}
+
+
+	/**
+	 * @return TRUE if the change contains the FINISHED transition.
+	 */
+	public boolean isFinished()
+	{
+		return this.endTime != null;
+	}
+
+
+	/**
+	 * @return Time of the RUNNING transition.
+	 */
+	public Timestamp getStartTime()
+	{
+		return this.startTime;
+	}
+
+
+	/**
+	 * @return Time of the FINISHED transition.
+	 */
+	public Timestamp getEndTime()
+	{
+		return this.endTime;
+	}
+
+
+	/**
+	 * @return Error of the FINISHED transition.
+	 */
+	public String getError()
+	{
+		return this.error;
+	}
+}
@@ -0,0 +1,109 @@
+package Database;
+
+import Process.ProcessSetting;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Storage of the executed processes and their states.
+ *
+ * @author oto
+ */
+public interface ProcessStore
+{
+	/**
+	 * Streams WAITING processes and FINISHED processes with the error (in any order).
+	 *
+	 * @param	consumer	Called for every process as soon as it's read.
+	 * @throws	DatabaseException
+	 */
+	public void loadWaitingProcesses(Consumer<ProcessSetting> consumer) throws DatabaseException;
+
+
+	/**
+	 * Streams the additional parents of the processes loaded by loadWaitingProcesses().
+	 *
+	 * The process is ready when its parent and all its additional parents are finished.
+	 *
+	 * @param	consumer	Called with the process ID and the parent ID.
+	 * @throws	DatabaseException
+	 */
+	public void loadProcessDependencies(BiConsumer<Integer, Integer> consumer) throws DatabaseException;
+
+
+	/**
+	 * @param	processId
+	 * @throws	DatabaseException
+	 */
+	public void markProcessAsRunning(int processId) throws DatabaseException;
+
+
+	/**
+	 * @param	processId
+	 * @param	error		Error (null if there is none).
+	 * @throws	DatabaseException
+	 */
+	public void markProcessAsFinished(int processId, String error) throws DatabaseException;
+
+
+	/**
+	 * Writes the state changes at once.
+	 *
+	 * RUNNING transition of the change is written before its FINISHED transition,
+	 * every process can be in the list only once.
+	 *
+	 * @param	changes
+	 * @return	IDs of the unknown processes.
+	 * @throws	DatabaseException
+	 */
+	public List<Integer> updateProcessStates(List<ProcessStateChange> changes) throws DatabaseException;
+
+
+	/**
+	 * Records the input file which failed all attempts of the process.
+	 *
+	 * @param	processId
+	 * @param	fileName	Input file name.
+	 * @param	attempts	Number of the failed attempts.
+	 * @param	error		Error of the last attempt.
+	 * @throws	DatabaseException
+	 */
+	public void quarantineFile(int processId, String fileName, int attempts, String error) throws DatabaseException;
+
+
+	/**
+	 * @param	processId
+	 * @return	Names of the processed input files of the unfinished process (checkpoints).
+	 * @throws	DatabaseException
+	 */
+	public Set<String> getProcessedFiles(int processId) throws DatabaseException;
+
+
+	/**
+	 * Records the processed input files at once.
+	 *
+	 * @param	files	<Process ID => processed input file names>
+	 * @throws	DatabaseException
+	 */
+	public void markFilesAsProcessed(Map<Integer, List<String>> files) throws DatabaseException;
+
+
+	/**
+	 * Removes the processed input files of the finished process.
+	 *
+	 * @param	processId
+	 * @throws	DatabaseException
+	 */
+	public void clearProcessedFiles(int processId) throws DatabaseException;
+
+
+	/**
+	 * Marks all RUNNING processes as WAITING.
+	 *
+	 * @throws	DatabaseException
+	 */
+	public void stopRunningProcesses() throws DatabaseException;
+}
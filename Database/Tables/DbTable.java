@@ -2,7 +2,7 @@ package Database.Tables;
 
 import Database.Drivers.DbDriver;
 import Database.Drivers.DbDriverException;
-import java.sql.Connection;
+import Database.Drivers.PooledConnection;
 
 /**
  *
@@ -25,7 +25,13 @@ abstract public class DbTable
 	abstract protected String getTableName();
 	
 	
-	protected Connection getDbConnection() throws DbDriverException
+	/**
+	 * Borrows the pooled connection - use it in try-with-resources.
+	 * 
+	 * @return
+	 * @throws DbDriverException 
+	 */
+	protected PooledConnection getDbConnection() throws DbDriverException
 	{
 		return this.db.getConnection();
 	}
@@ -2,24 +2,66 @@ package Database.Tables;
 
 import Database.Drivers.DbDriver;
 import Database.Drivers.DbDriverException;
+import Database.Drivers.PooledConnection;
 import Database.DatabaseException;
+import Database.ProcessStateChange;
+import Database.ProcessStore;
 import Database.Drivers.TotemDbDriver;
+import Metrics.MetricsRegistry;
 import Process.ProcessSetting;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 /**
  *
  * @author ODIS
  */
-final public class ExecutedProcessesTable extends DbTable
+final public class ExecutedProcessesTable extends DbTable implements ProcessStore
 {
-	public ExecutedProcessesTable() throws DbDriverException
+	/**
+	 * Condition of the loaded processes.
+	 */
+	private static String WAITING_CONDITION = "(p.state = \"WAITING\" OR (p.state = \"FINISHED\" AND p.error IS NOT NULL))";
+	
+	
+	/**
+	 * Additional parents of the processes.
+	 */
+	private ProcessDependenciesTable dependenciesTable;
+	
+	
+	/**
+	 * Poison input files of the processes.
+	 */
+	private QuarantinedFilesTable quarantinedFilesTable;
+	
+	
+	/**
+	 * Processed input files (checkpoints) of the processes.
+	 */
+	private ProcessedFilesTable processedFilesTable;
+	
+	
+	public ExecutedProcessesTable() throws DatabaseException
 	{
 		super();
+		
+		this.dependenciesTable = new ProcessDependenciesTable();
+		this.dependenciesTable.initialize();
+		
+		this.quarantinedFilesTable = new QuarantinedFilesTable();
+		this.quarantinedFilesTable.initialize();
+		
+		this.processedFilesTable = new ProcessedFilesTable();
+		this.processedFilesTable.initialize();
 	}
 	
 	
@@ -37,97 +79,264 @@ final public class ExecutedProcessesTable extends DbTable
 	}
 	
 	
-	public List<ProcessSetting> getWaitingProcesses() throws DatabaseException
+	@Override
+	public void loadWaitingProcesses(Consumer<ProcessSetting> consumer) throws DatabaseException
 	{
-                try
-                {
-                        PreparedStatement stmt          = this.getDbConnection().prepareStatement(this.getSelectAllSql() + " WHERE (state = \"WAITING\" OR (state = \"FINISHED\" AND error IS NOT NULL)) ORDER BY parent_id");
-                        ResultSet rs                    = stmt.executeQuery();
-                        List<ProcessSetting> processes  = new ArrayList<>();
-                        
-                        while (rs.next())
+		try (
+			PooledConnection connection	= this.getDbConnection();
+			PreparedStatement stmt		= connection.getConnection().prepareStatement(
+					this.getSelectAllSql() + " p WHERE " + WAITING_CONDITION,
+					ResultSet.TYPE_FORWARD_ONLY,
+					ResultSet.CONCUR_READ_ONLY
+			)
+		)
+		{
+			// MySQL driver streams the rows one by one instead of reading the whole result.
+			stmt.setFetchSize(Integer.MIN_VALUE);
+			
+			try (ResultSet rs = stmt.executeQuery())
 			{
-				processes.add(
-					new ProcessSetting(
-						rs.getInt(1),
-						rs.getInt(2),
-						rs.getString(3),
-						rs.getString(4),
-						rs.getString(5),
-						rs.getString(6),
-						rs.getString(7),
-						rs.getString(8),
-						rs.getString(9)
-					)
-				);
+				while (rs.next())
+				{
+					consumer.accept(
+						new ProcessSetting(
+							rs.getInt(1),
+							rs.getInt(2),
+							rs.getString(3),
+							rs.getString(4),
+							rs.getString(5),
+							rs.getString(6),
+							rs.getString(7),
+							rs.getString(8),
+							rs.getString(9)
+						)
+					);
+				}
 			}
-                        
-                        rs.close();
-                        stmt.close();
-                        
-                        return processes;
-                }
-                catch (SQLException e)
-                {
-                        throw new DbTableException(e.getMessage(), e);
-                }
+		}
+		catch (SQLException e)
+		{
+			throw new DbTableException(e.getMessage(), e);
+		}
 	}
 	
 	
+	@Override
+	public void loadProcessDependencies(BiConsumer<Integer, Integer> consumer) throws DatabaseException
+	{
+		this.dependenciesTable.loadDependencies(this.getTableName(), WAITING_CONDITION, consumer);
+	}
+	
+	
+	@Override
 	public void markProcessAsRunning(int processId) throws DatabaseException
 	{
-                try
-                {
-                        PreparedStatement stmt = this.getDbConnection().prepareStatement("UPDATE " + this.getTableName() + " SET state = \"RUNNING\", start_time = NOW() WHERE process_setting_dataset_id = " + processId);
-                        
-                        if (stmt.executeUpdate() <= 0)
-                        {
-                                throw new DbTableException("No affected rows after process marking.");
-                        }
-                        
-                        stmt.close();
-                }
-                catch (SQLException e)
-                {
-                        throw new DbTableException(e.getMessage(), e);
-                }
+		long startTime = System.nanoTime();
+		
+		try (PooledConnection connection = this.getDbConnection())
+		{
+			PreparedStatement stmt = connection.prepareStatement("UPDATE " + this.getTableName() + " SET state = \"RUNNING\", start_time = NOW() WHERE process_setting_dataset_id = ?");
+			
+			stmt.setInt(1, processId);
+			
+			if (stmt.executeUpdate() <= 0)
+			{
+				throw new DbTableException("No affected rows after process marking.");
+			}
+		}
+		catch (SQLException e)
+		{
+			throw new DbTableException(e.getMessage(), e);
+		}
+		finally
+		{
+			this.observeUpdateTime("running", startTime);
+		}
 	}
 	
 	
+	@Override
 	public void markProcessAsFinished(int processId, String error) throws DatabaseException
 	{
-		try
-		{	
-			PreparedStatement stmt = this.getDbConnection().prepareStatement("UPDATE " + this.getTableName() + " SET state = \"FINISHED\", end_time = NOW(), error = ? WHERE process_setting_dataset_id = " + processId);
+		long startTime = System.nanoTime();
+		
+		try (PooledConnection connection = this.getDbConnection())
+		{
+			PreparedStatement stmt = connection.prepareStatement("UPDATE " + this.getTableName() + " SET state = \"FINISHED\", end_time = NOW(), error = ? WHERE process_setting_dataset_id = ?");
 
 			stmt.setString(1, error);
+			stmt.setInt(2, processId);
 			
 			if (stmt.executeUpdate() <= 0)
 			{
 				throw new DbTableException("No affected rows after process marking.");
 			}
-                        
-                        stmt.close();
 		}
 		catch (SQLException e)
 		{
 			throw new DbTableException(e.getMessage(), e);
 		}
+		finally
+		{
+			this.observeUpdateTime("finished", startTime);
+		}
+	}
+	
+	
+	/**
+	 * Writes the state changes in JDBC batches (one transaction).
+	 * 
+	 * RUNNING transitions are written before FINISHED transitions,
+	 * so every process can be in the list only once.
+	 * 
+	 * @param	changes
+	 * @return	IDs of the processes without affected rows.
+	 * @throws	DatabaseException 
+	 */
+	@Override
+	public List<Integer> updateProcessStates(List<ProcessStateChange> changes) throws DatabaseException
+	{
+		long startTime			= System.nanoTime();
+		List<Integer> missing	= new ArrayList<>();
+		
+		try (PooledConnection pooledConnection = this.getDbConnection())
+		{
+			Connection connection	= pooledConnection.getConnection();
+			boolean autoCommit		= connection.getAutoCommit();
+			
+			connection.setAutoCommit(false);
+			
+			try
+			{
+				PreparedStatement runningStmt	= pooledConnection.prepareStatement("UPDATE " + this.getTableName() + " SET state = \"RUNNING\", start_time = ? WHERE process_setting_dataset_id = ?");
+				PreparedStatement finishedStmt	= pooledConnection.prepareStatement("UPDATE " + this.getTableName() + " SET state = \"FINISHED\", end_time = ?, error = ? WHERE process_setting_dataset_id = ?");
+				List<ProcessStateChange> running	= new ArrayList<>();
+				List<ProcessStateChange> finished	= new ArrayList<>();
+				
+				for (ProcessStateChange change : changes)
+				{
+					if (change.isRunning())
+					{
+						runningStmt.setTimestamp(1, change.getStartTime());
+						runningStmt.setInt(2, change.getProcessId());
+						runningStmt.addBatch();
+						
+						running.add(change);
+					}
+					
+					if (change.isFinished())
+					{
+						finishedStmt.setTimestamp(1, change.getEndTime());
+						finishedStmt.setString(2, change.getError());
+						finishedStmt.setInt(3, change.getProcessId());
+						finishedStmt.addBatch();
+						
+						finished.add(change);
+					}
+				}
+				
+				this.collectMissingRows(running.isEmpty() ? new int[0] : runningStmt.executeBatch(), running, missing);
+				this.collectMissingRows(finished.isEmpty() ? new int[0] : finishedStmt.executeBatch(), finished, missing);
+				
+				connection.commit();
+			}
+			catch (SQLException e)
+			{
+				connection.rollback();
+				
+				throw e;
+			}
+			finally
+			{
+				connection.setAutoCommit(autoCommit);
+			}
+			
+			return missing;
+		}
+		catch (SQLException e)
+		{
+			throw new DbTableException(e.getMessage(), e);
+		}
+		finally
+		{
+			this.observeUpdateTime("batch", startTime);
+		}
+	}
+	
+	
+	private void collectMissingRows(int[] results, List<ProcessStateChange> changes, List<Integer> missing)
+	{
+		for (int i = 0; i < results.length; i++)
+		{
+			if (results[i] == 0)
+			{
+				missing.add(changes.get(i).getProcessId());
+			}
+		}
+	}
+	
+	
+	@Override
+	public void quarantineFile(int processId, String fileName, int attempts, String error) throws DatabaseException
+	{
+		this.quarantinedFilesTable.quarantineFile(processId, fileName, attempts, error);
+	}
+	
+	
+	@Override
+	public Set<String> getProcessedFiles(int processId) throws DatabaseException
+	{
+		return this.processedFilesTable.getProcessedFiles(processId);
+	}
+	
+	
+	@Override
+	public void markFilesAsProcessed(Map<Integer, List<String>> files) throws DatabaseException
+	{
+		long startTime = System.nanoTime();
+		
+		try
+		{
+			this.processedFilesTable.markFilesAsProcessed(files);
+		}
+		finally
+		{
+			this.observeUpdateTime("files", startTime);
+		}
 	}
 	
 	
+	@Override
+	public void clearProcessedFiles(int processId) throws DatabaseException
+	{
+		this.processedFilesTable.clearProcessedFiles(processId);
+	}
+	
+	
+	@Override
 	public void stopRunningProcesses() throws DatabaseException
 	{
-                try
-		{	
-			PreparedStatement stmt = this.getDbConnection().prepareStatement("UPDATE " + this.getTableName() + " SET state = \"WAITING\", start_time = NULL WHERE state = \"RUNNING\"");
+		long startTime = System.nanoTime();
+		
+		try (PooledConnection connection = this.getDbConnection())
+		{
+			PreparedStatement stmt = connection.prepareStatement("UPDATE " + this.getTableName() + " SET state = \"WAITING\", start_time = NULL WHERE state = \"RUNNING\"");
 
 			stmt.executeUpdate();
-                        stmt.close();
 		}
 		catch (SQLException e)
 		{
 			throw new DbTableException(e.getMessage(), e);
 		}
+		finally
+		{
+			this.observeUpdateTime("stop_running", startTime);
+		}
+	}
+	
+	
+	private void observeUpdateTime(String operation, long startTime)
+	{
+		MetricsRegistry.histogram("paralexec_db_update_seconds", "Process state update latency.", "operation", operation).observeNanos(System.nanoTime() - startTime);
 	}
 }
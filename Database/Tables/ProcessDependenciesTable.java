@@ -0,0 +1,94 @@
+package Database.Tables;
+
+import Database.DatabaseException;
+import Database.Drivers.DbDriver;
+import Database.Drivers.DbDriverException;
+import Database.Drivers.PooledConnection;
+import Database.Drivers.TotemDbDriver;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.function.BiConsumer;
+
+/**
+ * Additional parents of the executed processes (the process graph is a DAG).
+ *
+ * The parent_id column of executed_processes is the first parent,
+ * every row of this table adds one more.
+ *
+ * @author oto
+ */
+final public class ProcessDependenciesTable extends DbTable
+{
+	public ProcessDependenciesTable() throws DbDriverException
+	{
+		super();
+	}
+	
+	
+	@Override
+	protected DbDriver getDb() throws DbDriverException
+	{
+		return new TotemDbDriver();
+	}
+	
+	
+	@Override
+	protected String getTableName()
+	{
+		return "executed_process_dependencies";
+	}
+	
+	
+	public void initialize() throws DatabaseException
+	{
+		try (PooledConnection connection = this.getDbConnection(); Statement stmt = connection.getConnection().createStatement())
+		{
+			stmt.executeUpdate(
+				"CREATE TABLE IF NOT EXISTS " + this.getTableName() + " ("
+				+ "process_setting_dataset_id INT NOT NULL, "
+				+ "parent_id INT NOT NULL, "
+				+ "PRIMARY KEY (process_setting_dataset_id, parent_id)"
+				+ ")"
+			);
+		}
+		catch (SQLException e)
+		{
+			throw new DbTableException(e.getMessage(), e);
+		}
+	}
+	
+	
+	/**
+	 * Streams the dependencies of the processes in given table.
+	 * 
+	 * @param	processesTableName
+	 * @param	waitingCondition	Condition of the loaded processes.
+	 * @param	consumer			Called with the process ID and the parent ID.
+	 * @throws	DatabaseException 
+	 */
+	public void loadDependencies(String processesTableName, String waitingCondition, BiConsumer<Integer, Integer> consumer) throws DatabaseException
+	{
+		try (PooledConnection connection = this.getDbConnection())
+		{
+			PreparedStatement stmt = connection.prepareStatement(
+					"SELECT d.process_setting_dataset_id, d.parent_id FROM " + this.getTableName() + " d"
+					+ " JOIN " + processesTableName + " p ON p.process_setting_dataset_id = d.process_setting_dataset_id"
+					+ " WHERE " + waitingCondition
+			);
+			
+			try (ResultSet rs = stmt.executeQuery())
+			{
+				while (rs.next())
+				{
+					consumer.accept(rs.getInt(1), rs.getInt(2));
+				}
+			}
+		}
+		catch (SQLException e)
+		{
+			throw new DbTableException(e.getMessage(), e);
+		}
+	}
+}
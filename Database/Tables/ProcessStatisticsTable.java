@@ -0,0 +1,104 @@
+package Database.Tables;
+
+import Database.DatabaseException;
+import Database.ModelStore;
+import Database.Drivers.DbDriver;
+import Database.Drivers.DbDriverException;
+import Database.Drivers.PooledConnection;
+import Database.Drivers.TotemDbDriver;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Runtime models of the process scripts kept across the Paralexec runs.
+ *
+ * @author oto
+ */
+final public class ProcessStatisticsTable extends DbTable implements ModelStore
+{
+	public ProcessStatisticsTable() throws DbDriverException
+	{
+		super();
+	}
+	
+	
+	@Override
+	protected DbDriver getDb() throws DbDriverException
+	{
+		return new TotemDbDriver();
+	}
+	
+	
+	@Override
+	protected String getTableName()
+	{
+		return "process_statistics";
+	}
+	
+	
+	@Override
+	public void initialize() throws DatabaseException
+	{
+		try (PooledConnection connection = this.getDbConnection(); Statement stmt = connection.getConnection().createStatement())
+		{
+			stmt.executeUpdate(
+				"CREATE TABLE IF NOT EXISTS " + this.getTableName() + " ("
+				+ "model_key VARCHAR(255) NOT NULL PRIMARY KEY, "
+				+ "model TEXT NOT NULL, "
+				+ "updated_time DATETIME NOT NULL"
+				+ ")"
+			);
+		}
+		catch (SQLException e)
+		{
+			throw new DbTableException(e.getMessage(), e);
+		}
+	}
+	
+	
+	@Override
+	public Map<String, String> getModels() throws DatabaseException
+	{
+		try (PooledConnection connection = this.getDbConnection())
+		{
+			ResultSet rs				= connection.prepareStatement("SELECT model_key, model FROM " + this.getTableName()).executeQuery();
+			Map<String, String> models	= new HashMap<>();
+			
+			while (rs.next())
+			{
+				models.put(rs.getString(1), rs.getString(2));
+			}
+			
+			rs.close();
+			
+			return models;
+		}
+		catch (SQLException e)
+		{
+			throw new DbTableException(e.getMessage(), e);
+		}
+	}
+	
+	
+	@Override
+	public void saveModel(String modelKey, String model) throws DatabaseException
+	{
+		try (PooledConnection connection = this.getDbConnection())
+		{
+			PreparedStatement stmt = connection.prepareStatement("INSERT INTO " + this.getTableName() + " (model_key, model, updated_time) VALUES (?, ?, NOW()) ON DUPLICATE KEY UPDATE model = VALUES(model), updated_time = NOW()");
+			
+			stmt.setString(1, modelKey);
+			stmt.setString(2, model);
+			
+			stmt.executeUpdate();
+		}
+		catch (SQLException e)
+		{
+			throw new DbTableException(e.getMessage(), e);
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package Database.Tables;
+
+import Database.DatabaseException;
+import Database.Drivers.DbDriver;
+import Database.Drivers.DbDriverException;
+import Database.Drivers.PooledConnection;
+import Database.Drivers.TotemDbDriver;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Processed input files of the unfinished processes (checkpoints).
+ *
+ * @author oto
+ */
+final public class ProcessedFilesTable extends DbTable
+{
+	public ProcessedFilesTable() throws DbDriverException
+	{
+		super();
+	}
+	
+	
+	@Override
+	protected DbDriver getDb() throws DbDriverException
+	{
+		return new TotemDbDriver();
+	}
+	
+	
+	@Override
+	protected String getTableName()
+	{
+		return "executed_process_files";
+	}
+	
+	
+	public void initialize() throws DatabaseException
+	{
+		try (PooledConnection connection = this.getDbConnection(); Statement stmt = connection.getConnection().createStatement())
+		{
+			stmt.executeUpdate(
+				"CREATE TABLE IF NOT EXISTS " + this.getTableName() + " ("
+				+ "process_setting_dataset_id INT NOT NULL, "
+				+ "file_name VARCHAR(255) NOT NULL, "
+				+ "processed_time DATETIME NOT NULL, "
+				+ "PRIMARY KEY (process_setting_dataset_id, file_name)"
+				+ ")"
+			);
+		}
+		catch (SQLException e)
+		{
+			throw new DbTableException(e.getMessage(), e);
+		}
+	}
+	
+	
+	/**
+	 * @param	processId
+	 * @return	Names of the processed input files.
+	 * @throws	DatabaseException 
+	 */
+	public Set<String> getProcessedFiles(int processId) throws DatabaseException
+	{
+		try (PooledConnection connection = this.getDbConnection())
+		{
+			PreparedStatement stmt	= connection.prepareStatement("SELECT file_name FROM " + this.getTableName() + " WHERE process_setting_dataset_id = ?");
+			Set<String> files		= new HashSet<>();
+			
+			stmt.setInt(1, processId);
+			
+			try (ResultSet rs = stmt.executeQuery())
+			{
+				while (rs.next())
+				{
+					files.add(rs.getString(1));
+				}
+			}
+			
+			return files;
+		}
+		catch (SQLException e)
+		{
+			throw new DbTableException(e.getMessage(), e);
+		}
+	}
+	
+	
+	/**
+	 * Inserts the processed files in one JDBC batch (one transaction).
+	 * 
+	 * @param	files	<Process ID => processed input file names>
+	 * @throws	DatabaseException 
+	 */
+	public void markFilesAsProcessed(Map<Integer, List<String>> files) throws DatabaseException
+	{
+		try (PooledConnection pooledConnection = this.getDbConnection())
+		{
+			Connection connection	= pooledConnection.getConnection();
+			boolean autoCommit		= connection.getAutoCommit();
+			
+			connection.setAutoCommit(false);
+			
+			try
+			{
+				PreparedStatement stmt = pooledConnection.prepareStatement("INSERT IGNORE INTO " + this.getTableName() + " (process_setting_dataset_id, file_name, processed_time) VALUES (?, ?, NOW())");
+				
+				for (Map.Entry<Integer, List<String>> processFiles : files.entrySet())
+				{
+					for (String fileName : processFiles.getValue())
+					{
+						stmt.setInt(1, processFiles.getKey());
+						stmt.setString(2, fileName);
+						stmt.addBatch();
+					}
+				}
+				
+				stmt.executeBatch();
+				
+				connection.commit();
+			}
+			catch (SQLException e)
+			{
+				connection.rollback();
+				
+				throw e;
+			}
+			finally
+			{
+				connection.setAutoCommit(autoCommit);
+			}
+		}
+		catch (SQLException e)
+		{
+			throw new DbTableException(e.getMessage(), e);
+		}
+	}
+	
+	
+	/**
+	 * @param	processId
+	 * @throws	DatabaseException 
+	 */
+	public void clearProcessedFiles(int processId) throws DatabaseException
+	{
+		try (PooledConnection connection = this.getDbConnection())
+		{
+			PreparedStatement stmt = connection.prepareStatement("DELETE FROM " + this.getTableName() + " WHERE process_setting_dataset_id = ?");
+			
+			stmt.setInt(1, processId);
+			
+			stmt.executeUpdate();
+		}
+		catch (SQLException e)
+		{
+			throw new DbTableException(e.getMessage(), e);
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package Database.Tables;
+
+import Database.DatabaseException;
+import Database.Drivers.DbDriver;
+import Database.Drivers.DbDriverException;
+import Database.Drivers.PooledConnection;
+import Database.Drivers.TotemDbDriver;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Input files which failed all attempts of the process (poison files).
+ *
+ * @author oto
+ */
+final public class QuarantinedFilesTable extends DbTable
+{
+	public QuarantinedFilesTable() throws DbDriverException
+	{
+		super();
+	}
+	
+	
+	@Override
+	protected DbDriver getDb() throws DbDriverException
+	{
+		return new TotemDbDriver();
+	}
+	
+	
+	@Override
+	protected String getTableName()
+	{
+		return "quarantined_files";
+	}
+	
+	
+	public void initialize() throws DatabaseException
+	{
+		try (PooledConnection connection = this.getDbConnection(); Statement stmt = connection.getConnection().createStatement())
+		{
+			stmt.executeUpdate(
+				"CREATE TABLE IF NOT EXISTS " + this.getTableName() + " ("
+				+ "process_setting_dataset_id INT NOT NULL, "
+				+ "file_name VARCHAR(255) NOT NULL, "
+				+ "attempts INT NOT NULL, "
+				+ "error TEXT NULL, "
+				+ "quarantine_time DATETIME NOT NULL, "
+				+ "PRIMARY KEY (process_setting_dataset_id, file_name)"
+				+ ")"
+			);
+		}
+		catch (SQLException e)
+		{
+			throw new DbTableException(e.getMessage(), e);
+		}
+	}
+	
+	
+	/**
+	 * @param	processId
+	 * @param	fileName
+	 * @param	attempts
+	 * @param	error
+	 * @throws	DatabaseException 
+	 */
+	public void quarantineFile(int processId, String fileName, int attempts, String error) throws DatabaseException
+	{
+		try (PooledConnection connection = this.getDbConnection())
+		{
+			PreparedStatement stmt = connection.prepareStatement(
+					"INSERT INTO " + this.getTableName() + " (process_setting_dataset_id, file_name, attempts, error, quarantine_time) VALUES (?, ?, ?, ?, NOW())"
+					+ " ON DUPLICATE KEY UPDATE attempts = VALUES(attempts), error = VALUES(error), quarantine_time = NOW()"
+			);
+			
+			stmt.setInt(1, processId);
+			stmt.setString(2, fileName);
+			stmt.setInt(3, attempts);
+			stmt.setString(4, error);
+			
+			stmt.executeUpdate();
+		}
+		catch (SQLException e)
+		{
+			throw new DbTableException(e.getMessage(), e);
+		}
+	}
+}
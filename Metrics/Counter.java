@@ -0,0 +1,74 @@
+package Metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic counter.
+ *
+ * @author oto
+ */
+final public class Counter extends Metric
+{
+	/**
+	 * Counted value.
+	 */
+	private final LongAdder count = new LongAdder();
+
+
+	/**
+	 * @param name
+	 * @param help
+	 * @param labels
+	 */
+	public Counter(String name, String help, Map<String, String> labels)
+	{
+		super(name, help, labels);
+	}
+
+
+	/**
+	 * Increments the counter.
+	 */
+	public void increment()
+	{
+		this.count.increment();
+	}
+
+
+	/**
+	 * @param value
+	 */
+	public void add(long value)
+	{
+		this.count.add(value);
+	}
+
+
+	/**
+	 * @return Counted value.
+	 */
+	public long getCount()
+	{
+		return this.count.sum();
+	}
+
+
+	@Override
+	public String getType()
+	{
+		return "counter";
+	}
+
+
+	@Override
+	public Map<String, Number> getValues()
+	{
+		Map<String, Number> values = new LinkedHashMap<>();
+
+		values.put("Count", this.getCount());
+
+		return values;
+	}
+}
@@ -0,0 +1,59 @@
+package Metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Gauge reading the current value from the supplier.
+ *
+ * @author oto
+ */
+final public class Gauge extends Metric
+{
+	/**
+	 * Value supplier.
+	 */
+	private Supplier<Number> supplier;
+
+
+	/**
+	 * @param name
+	 * @param help
+	 * @param labels
+	 * @param supplier
+	 */
+	public Gauge(String name, String help, Map<String, String> labels, Supplier<Number> supplier)
+	{
+		super(name, help, labels);
+
+		this.supplier = supplier;
+	}
+
+
+	/**
+	 * @return Current value.
+	 */
+	public Number getValue()
+	{
+		return this.supplier.get();
+	}
+
+
+	@Override
+	public String getType()
+	{
+		return "gauge";
+	}
+
+
+	@Override
+	public Map<String, Number> getValues()
+	{
+		Map<String, Number> values = new LinkedHashMap<>();
+
+		values.put("Value", this.getValue());
+
+		return values;
+	}
+}
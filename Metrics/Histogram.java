@@ -0,0 +1,238 @@
+package Metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with the exponential buckets (in seconds).
+ *
+ * Quantiles are estimated by the interpolation inside the buckets.
+ *
+ * @author oto
+ */
+final public class Histogram extends Metric
+{
+	/**
+	 * Upper bounds of the buckets - 0.5 ms doubled up to 2.3 hours.
+	 */
+	private static final double[] BUCKET_BOUNDS = createBucketBounds(0.0005, 2, 25);
+
+
+	/**
+	 * Bucket counts (the last one is +Inf).
+	 */
+	private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS.length + 1];
+
+
+	/**
+	 * Observations count.
+	 */
+	private final LongAdder count = new LongAdder();
+
+
+	/**
+	 * Observations sum.
+	 */
+	private final DoubleAdder sum = new DoubleAdder();
+
+
+	/**
+	 * Maximal observation (double bits).
+	 */
+	private final AtomicLong max = new AtomicLong(Double.doubleToLongBits(0));
+
+
+	/**
+	 * @param name
+	 * @param help
+	 * @param labels
+	 */
+	public Histogram(String name, String help, Map<String, String> labels)
+	{
+		super(name, help, labels);
+
+		for (int i = 0; i < this.buckets.length; i++)
+		{
+			this.buckets[i] = new LongAdder();
+		}
+	}
+
+
+	/**
+	 * @param	first
+	 * @param	factor
+	 * @param	count
+	 * @return	Bucket bounds.
+	 */
+	private static double[] createBucketBounds(double first, double factor, int count)
+	{
+		double[] bounds = new double[count];
+
+		for (int i = 0; i < count; i++)
+		{
+			bounds[i] = first * Math.pow(factor, i);
+		}
+
+		return bounds;
+	}
+
+
+	/**
+	 * Records the observation.
+	 *
+	 * @param seconds
+	 */
+	public void observe(double seconds)
+	{
+		int i = 0;
+
+		while (i < BUCKET_BOUNDS.length && seconds > BUCKET_BOUNDS[i])
+		{
+			i++;
+		}
+
+		this.buckets[i].increment();
+		this.count.increment();
+		this.sum.add(seconds);
+
+		long currentMax;
+
+		while (seconds > Double.longBitsToDouble(currentMax = this.max.get()))
+		{
+			if (this.max.compareAndSet(currentMax, Double.doubleToLongBits(seconds)))
+			{
+				break;
+			}
+		}
+	}
+
+
+	/**
+	 * Records the observation given in nanoseconds.
+	 *
+	 * @param nanoseconds
+	 */
+	public void observeNanos(long nanoseconds)
+	{
+		this.observe(nanoseconds / 1e9);
+	}
+
+
+	/**
+	 * @return Observations count.
+	 */
+	public long getCount()
+	{
+		return this.count.sum();
+	}
+
+
+	/**
+	 * @return Observations sum.
+	 */
+	public double getSum()
+	{
+		return this.sum.sum();
+	}
+
+
+	/**
+	 * @return Maximal observation.
+	 */
+	public double getMax()
+	{
+		return Double.longBitsToDouble(this.max.get());
+	}
+
+
+	/**
+	 * @return Upper bounds of the buckets (without +Inf).
+	 */
+	public double[] getBucketBounds()
+	{
+		return BUCKET_BOUNDS.clone();
+	}
+
+
+	/**
+	 * @return Bucket counts (the last one is +Inf).
+	 */
+	public long[] getBucketCounts()
+	{
+		long[] counts = new long[this.buckets.length];
+
+		for (int i = 0; i < counts.length; i++)
+		{
+			counts[i] = this.buckets[i].sum();
+		}
+
+		return counts;
+	}
+
+
+	/**
+	 * @param	quantile	Quantile (0 - 1).
+	 * @return	Estimated quantile value.
+	 */
+	public double getQuantile(double quantile)
+	{
+		long[] counts	= this.getBucketCounts();
+		long total		= 0;
+
+		for (long bucketCount : counts)
+		{
+			total += bucketCount;
+		}
+
+		if (total == 0)
+		{
+			return 0;
+		}
+
+		double rank		= quantile * total;
+		long cumulative	= 0;
+
+		for (int i = 0; i < counts.length; i++)
+		{
+			if (cumulative + counts[i] >= rank && counts[i] > 0)
+			{
+				double lower = i == 0 ? 0 : BUCKET_BOUNDS[i - 1];
+				double upper = i < BUCKET_BOUNDS.length ? BUCKET_BOUNDS[i] : this.getMax();
+
+				return Math.min(lower + (upper - lower) * (rank - cumulative) / counts[i], this.getMax());
+			}
+
+			cumulative += counts[i];
+		}
+
+		return this.getMax();
+	}
+
+
+	@Override
+	public String getType()
+	{
+		return "histogram";
+	}
+
+
+	@Override
+	public Map<String, Number> getValues()
+	{
+		Map<String, Number> values	= new LinkedHashMap<>();
+		long observations			= this.getCount();
+
+		values.put("Count", observations);
+		values.put("Sum", this.getSum());
+		values.put("Mean", observations > 0 ? this.getSum() / observations : 0.0);
+		values.put("Max", this.getMax());
+		values.put("P50", this.getQuantile(0.5));
+		values.put("P95", this.getQuantile(0.95));
+		values.put("P99", this.getQuantile(0.99));
+
+		return values;
+	}
+}
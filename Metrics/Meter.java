@@ -0,0 +1,178 @@
+package Metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Meter - counter with the one-minute exponentially weighted rate.
+ *
+ * @author oto
+ */
+final public class Meter extends Metric
+{
+	/**
+	 * Rate update interval (nanoseconds).
+	 */
+	private static long TICK_INTERVAL = 5L * 1000 * 1000 * 1000;
+
+
+	/**
+	 * Rate smoothing factor for the one-minute window and the 5 seconds ticks.
+	 */
+	private static double ALPHA = 1 - Math.exp(-5.0 / 60.0);
+
+
+	/**
+	 * Total count.
+	 */
+	private final LongAdder count = new LongAdder();
+
+
+	/**
+	 * Count since the last tick.
+	 */
+	private final LongAdder uncounted = new LongAdder();
+
+
+	/**
+	 * Last tick time.
+	 */
+	private final AtomicLong lastTick;
+
+
+	/**
+	 * Meter creation time.
+	 */
+	private final long startTime;
+
+
+	/**
+	 * One-minute rate (per nanosecond).
+	 */
+	private volatile double rate = 0;
+
+
+	/**
+	 * Rate initialized flag.
+	 */
+	private volatile boolean initialized = false;
+
+
+	/**
+	 * @param name
+	 * @param help
+	 * @param labels
+	 */
+	public Meter(String name, String help, Map<String, String> labels)
+	{
+		super(name, help, labels);
+
+		this.startTime	= System.nanoTime();
+		this.lastTick	= new AtomicLong(this.startTime);
+	}
+
+
+	/**
+	 * Marks the occurrence of the events.
+	 *
+	 * @param events
+	 */
+	public void mark(long events)
+	{
+		this.tickIfNecessary();
+		this.count.add(events);
+		this.uncounted.add(events);
+	}
+
+
+	/**
+	 * @return Total count.
+	 */
+	public long getCount()
+	{
+		return this.count.sum();
+	}
+
+
+	/**
+	 * @return One-minute rate per second.
+	 */
+	public double getRate()
+	{
+		this.tickIfNecessary();
+
+		return this.rate * 1e9;
+	}
+
+
+	/**
+	 * @return Mean rate per second since the meter creation.
+	 */
+	public double getMeanRate()
+	{
+		double elapsed = System.nanoTime() - this.startTime;
+
+		return elapsed > 0 ? this.getCount() / elapsed * 1e9 : 0;
+	}
+
+
+	/**
+	 * Updates the rate for all passed ticks.
+	 */
+	private void tickIfNecessary()
+	{
+		long oldTick	= this.lastTick.get();
+		long newTick	= System.nanoTime();
+		long age		= newTick - oldTick;
+
+		if (age < TICK_INTERVAL)
+		{
+			return;
+		}
+
+		long newIntervalStartTick = newTick - age % TICK_INTERVAL;
+
+		// Only one thread updates the rate.
+		if (!this.lastTick.compareAndSet(oldTick, newIntervalStartTick))
+		{
+			return;
+		}
+
+		for (long i = 0; i < age / TICK_INTERVAL; i++)
+		{
+			double instantRate = (double) this.uncounted.sumThenReset() / TICK_INTERVAL;
+
+			if (this.initialized)
+			{
+				this.rate += ALPHA * (instantRate - this.rate);
+			}
+			else
+			{
+				this.rate			= instantRate;
+				this.initialized	= true;
+			}
+		}
+	}
+
+
+	@Override
+	public String getType()
+	{
+		return "meter";
+	}
+
+
+	@Override
+	public Map<String, Number> getValues()
+	{
+		Map<String, Number> values = new LinkedHashMap<>();
+
+		values.put("Count", this.getCount());
+		values.put("Rate", this.getRate());
+		values.put("MeanRate", this.getMeanRate());
+
+		return values;
+	}
+}
@@ -0,0 +1,82 @@
+package Metrics;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Base of the metrics kept in the MetricsRegistry.
+ *
+ * @author oto
+ */
+abstract public class Metric
+{
+	/**
+	 * Metric name.
+	 */
+	private String name;
+
+
+	/**
+	 * Metric description.
+	 */
+	private String help;
+
+
+	/**
+	 * Metric labels (e.g. process => 12).
+	 */
+	private Map<String, String> labels;
+
+
+	/**
+	 * @param name
+	 * @param help
+	 * @param labels
+	 */
+	public Metric(String name, String help, Map<String, String> labels)
+	{
+		this.name	= name;
+		this.help	= help;
+		this.labels	= Collections.unmodifiableMap(new LinkedHashMap<>(labels));
+	}
+
+
+	/**
+	 * @return Metric name.
+	 */
+	public String getName()
+	{
+		return this.name;
+	}
+
+
+	/**
+	 * @return Metric description.
+	 */
+	public String getHelp()
+	{
+		return this.help;
+	}
+
+
+	/**
+	 * @return Metric labels.
+	 */
+	public Map<String, String> getLabels()
+	{
+		return this.labels;
+	}
+
+
+	/**
+	 * @return Metric type name.
+	 */
+	abstract public String getType();
+
+
+	/**
+	 * @return Current metric values by the attribute names.
+	 */
+	abstract public Map<String, Number> getValues();
+}
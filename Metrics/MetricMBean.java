@@ -0,0 +1,119 @@
+package Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanConstructorInfo;
+
+/**
+ * Read-only JMX view of the metric.
+ *
+ * Every metric value is exported as an attribute.
+ *
+ * @author oto
+ */
+final public class MetricMBean implements DynamicMBean
+{
+	/**
+	 * Exported metric.
+	 */
+	private Metric metric;
+
+
+	/**
+	 * @param metric
+	 */
+	public MetricMBean(Metric metric)
+	{
+		this.metric = metric;
+	}
+
+
+	@Override
+	public Object getAttribute(String attribute) throws AttributeNotFoundException
+	{
+		Map<String, Number> values = this.metric.getValues();
+
+		if (!values.containsKey(attribute))
+		{
+			throw new AttributeNotFoundException("Unknown attribute " + attribute);
+		}
+
+		return values.get(attribute);
+	}
+
+
+	@Override
+	public void setAttribute(Attribute attribute)
+	{
+		throw new UnsupportedOperationException("Metric attributes are read-only.");
+	}
+
+
+	@Override
+	public AttributeList getAttributes(String[] attributes)
+	{
+		Map<String, Number> values	= this.metric.getValues();
+		AttributeList list			= new AttributeList();
+
+		for (String attribute : attributes)
+		{
+			if (values.containsKey(attribute))
+			{
+				list.add(new Attribute(attribute, values.get(attribute)));
+			}
+		}
+
+		return list;
+	}
+
+
+	@Override
+	public AttributeList setAttributes(AttributeList attributes)
+	{
+		return new AttributeList();
+	}
+
+
+	@Override
+	public Object invoke(String actionName, Object[] params, String[] signature)
+	{
+		throw new UnsupportedOperationException("Metric has no operations.");
+	}
+
+
+	@Override
+	public MBeanInfo getMBeanInfo()
+	{
+		List<MBeanAttributeInfo> attributes = new ArrayList<>();
+
+		for (Map.Entry<String, Number> value : this.metric.getValues().entrySet())
+		{
+			attributes.add(new MBeanAttributeInfo(
+					value.getKey(),
+					value.getValue().getClass().getName(),
+					this.metric.getHelp(),
+					true,
+					false,
+					false
+			));
+		}
+
+		return new MBeanInfo(
+				this.metric.getClass().getName(),
+				this.metric.getHelp(),
+				attributes.toArray(new MBeanAttributeInfo[0]),
+				new MBeanConstructorInfo[0],
+				new MBeanOperationInfo[0],
+				new MBeanNotificationInfo[0]
+		);
+	}
+}
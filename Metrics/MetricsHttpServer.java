@@ -0,0 +1,252 @@
+package Metrics;
+
+import Paralexec.Logger;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Embedded HTTP server of the metrics (bound to localhost).
+ *
+ * Endpoints:
+ *
+ *  - /metrics - all registered metrics in the Prometheus text format
+ *  - /status - JSON status given by the status supplier
+ *
+ * @author oto
+ */
+final public class MetricsHttpServer
+{
+	/**
+	 * Prometheus text format content type.
+	 */
+	private static String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+
+	/**
+	 * HTTP server.
+	 */
+	private HttpServer server;
+
+
+	/**
+	 * JSON status supplier.
+	 */
+	private Supplier<String> statusSupplier;
+
+
+	/**
+	 * @param	port
+	 * @param	statusSupplier
+	 * @throws	IOException
+	 */
+	public MetricsHttpServer(int port, Supplier<String> statusSupplier) throws IOException
+	{
+		this.statusSupplier	= statusSupplier;
+		this.server			= HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+
+		this.server.createContext("/metrics", exchange -> this.respond(exchange, PROMETHEUS_CONTENT_TYPE, this.getPrometheusMetrics()));
+		this.server.createContext("/status", exchange -> this.respond(exchange, "application/json; charset=utf-8", this.statusSupplier.get()));
+		this.server.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "Paralexec-MetricsHttpServer");
+
+			thread.setDaemon(true);
+
+			return thread;
+		}));
+	}
+
+
+	/**
+	 * Starts the server.
+	 */
+	public void start()
+	{
+		this.server.start();
+
+		Logger.info("Metrics HTTP server started.", "address", this.server.getAddress());
+	}
+
+
+	/**
+	 * Stops the server.
+	 */
+	public void stop()
+	{
+		this.server.stop(0);
+	}
+
+
+	/**
+	 * Sends the response.
+	 *
+	 * @param	exchange
+	 * @param	contentType
+	 * @param	body
+	 * @throws	IOException
+	 */
+	private void respond(HttpExchange exchange, String contentType, String body) throws IOException
+	{
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(200, bytes.length);
+
+		try (OutputStream output = exchange.getResponseBody())
+		{
+			output.write(bytes);
+		}
+	}
+
+
+	/**
+	 * Samples of one metric family (all label sets) follow its HELP and TYPE lines.
+	 *
+	 * @return All registered metrics in the Prometheus text format.
+	 */
+	public String getPrometheusMetrics()
+	{
+		Map<String, StringBuilder> families = new LinkedHashMap<>();
+
+		for (Metric metric : MetricsRegistry.getMetrics())
+		{
+			String name = metric.getName();
+
+			if (metric instanceof Counter)
+			{
+				this.appendSample(this.getFamily(families, name + "_total", metric.getHelp(), "counter"), name + "_total", metric.getLabels(), null, ((Counter) metric).getCount());
+			}
+			else if (metric instanceof Gauge)
+			{
+				this.appendSample(this.getFamily(families, name, metric.getHelp(), "gauge"), name, metric.getLabels(), null, ((Gauge) metric).getValue().doubleValue());
+			}
+			else if (metric instanceof Meter)
+			{
+				Meter meter = (Meter) metric;
+
+				this.appendSample(this.getFamily(families, name + "_total", metric.getHelp(), "counter"), name + "_total", metric.getLabels(), null, meter.getCount());
+				this.appendSample(this.getFamily(families, name + "_rate", metric.getHelp() + " One-minute rate per second.", "gauge"), name + "_rate", metric.getLabels(), null, meter.getRate());
+			}
+			else if (metric instanceof Histogram)
+			{
+				Histogram histogram	= (Histogram) metric;
+				double[] bounds		= histogram.getBucketBounds();
+				long[] counts		= histogram.getBucketCounts();
+				long cumulative		= 0;
+				StringBuilder text	= this.getFamily(families, name, metric.getHelp(), "histogram");
+
+				for (int i = 0; i < counts.length; i++)
+				{
+					cumulative += counts[i];
+
+					this.appendSample(text, name + "_bucket", metric.getLabels(), i < bounds.length ? formatNumber(bounds[i]) : "+Inf", cumulative);
+				}
+
+				this.appendSample(text, name + "_sum", metric.getLabels(), null, histogram.getSum());
+				this.appendSample(text, name + "_count", metric.getLabels(), null, cumulative);
+			}
+		}
+
+		StringBuilder text = new StringBuilder();
+
+		families.values().forEach(text::append);
+
+		return text.toString();
+	}
+
+
+	/**
+	 * Returns the metric family text, it starts with the HELP and TYPE lines.
+	 *
+	 * @param	families	<metric name => family text>
+	 * @param	name
+	 * @param	help
+	 * @param	type
+	 * @return	Family text.
+	 */
+	private StringBuilder getFamily(Map<String, StringBuilder> families, String name, String help, String type)
+	{
+		StringBuilder text = families.get(name);
+
+		if (text == null)
+		{
+			text = new StringBuilder();
+
+			text.append("# HELP ").append(name).append(' ').append(help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+			text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+
+			families.put(name, text);
+		}
+
+		return text;
+	}
+
+
+	/**
+	 * Appends the sample line.
+	 *
+	 * @param text
+	 * @param name
+	 * @param labels
+	 * @param le		Histogram bucket bound (null for other samples).
+	 * @param value
+	 */
+	private void appendSample(StringBuilder text, String name, Map<String, String> labels, String le, double value)
+	{
+		text.append(name);
+
+		if (!labels.isEmpty() || le != null)
+		{
+			String separator = "{";
+
+			for (Map.Entry<String, String> label : labels.entrySet())
+			{
+				text.append(separator).append(label.getKey()).append("=\"").append(escapeLabelValue(label.getValue())).append('"');
+				separator = ",";
+			}
+
+			if (le != null)
+			{
+				text.append(separator).append("le=\"").append(le).append('"');
+			}
+
+			text.append('}');
+		}
+
+		text.append(' ').append(formatNumber(value)).append('\n');
+	}
+
+
+	/**
+	 * @param	value
+	 * @return	Escaped label value.
+	 */
+	private static String escapeLabelValue(String value)
+	{
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+
+	/**
+	 * @param	value
+	 * @return	Number in the Prometheus format.
+	 */
+	private static String formatNumber(double value)
+	{
+		if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15)
+		{
+			return Long.toString((long) value);
+		}
+
+		return String.format(Locale.ROOT, "%s", value);
+	}
+}
@@ -0,0 +1,200 @@
+package Metrics;
+
+import Paralexec.Logger;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registry of the Paralexec metrics.
+ *
+ * Metrics are created on the first use and exported as JMX MBeans
+ * named Paralexec:type=<type>,name=<name>[,<label>=<value>...].
+ *
+ * Labels are given as key, value pairs, e.g.:
+ *
+ *	MetricsRegistry.meter("process_files", "Processed input files.", "process", 12).mark(1);
+ *
+ * @author oto
+ */
+final public class MetricsRegistry
+{
+	/**
+	 * JMX domain.
+	 */
+	private static String JMX_DOMAIN = "Paralexec";
+
+
+	/**
+	 * Metrics by the name and labels.
+	 */
+	private static Map<String, Metric> metrics = new ConcurrentHashMap<>();
+
+
+	/**
+	 * @param	name
+	 * @param	help
+	 * @param	labels	Label key, value pairs.
+	 * @return	Counter.
+	 */
+	public static Counter counter(String name, String help, Object... labels)
+	{
+		return (Counter) getMetric(name, labels, labelsMap -> new Counter(name, help, labelsMap));
+	}
+
+
+	/**
+	 * @param	name
+	 * @param	help
+	 * @param	labels	Label key, value pairs.
+	 * @return	Meter.
+	 */
+	public static Meter meter(String name, String help, Object... labels)
+	{
+		return (Meter) getMetric(name, labels, labelsMap -> new Meter(name, help, labelsMap));
+	}
+
+
+	/**
+	 * @param	name
+	 * @param	help
+	 * @param	labels	Label key, value pairs.
+	 * @return	Histogram.
+	 */
+	public static Histogram histogram(String name, String help, Object... labels)
+	{
+		return (Histogram) getMetric(name, labels, labelsMap -> new Histogram(name, help, labelsMap));
+	}
+
+
+	/**
+	 * Registers the gauge (the existing one is kept).
+	 *
+	 * @param	name
+	 * @param	help
+	 * @param	supplier
+	 * @param	labels		Label key, value pairs.
+	 * @return	Gauge.
+	 */
+	public static Gauge gauge(String name, String help, Supplier<Number> supplier, Object... labels)
+	{
+		return (Gauge) getMetric(name, labels, labelsMap -> new Gauge(name, help, labelsMap, supplier));
+	}
+
+
+	/**
+	 * @return All registered metrics.
+	 */
+	public static Collection<Metric> getMetrics()
+	{
+		List<Metric> list = new ArrayList<>(metrics.values());
+
+		list.sort((a, b) -> a.getName().compareTo(b.getName()));
+
+		return list;
+	}
+
+
+	/**
+	 * @param	name
+	 * @param	labels
+	 * @param	factory
+	 * @return	Existing or newly created and exported metric.
+	 */
+	private static Metric getMetric(String name, Object[] labels, Function<Map<String, String>, Metric> factory)
+	{
+		String key		= getKey(name, labels);
+		Metric metric	= metrics.get(key);
+
+		if (metric == null)
+		{
+			metric = metrics.computeIfAbsent(key, k -> {
+				Metric newMetric = factory.apply(getLabelsMap(labels));
+
+				export(newMetric);
+
+				return newMetric;
+			});
+		}
+
+		return metric;
+	}
+
+
+	/**
+	 * @param	name
+	 * @param	labels
+	 * @return	Registry key.
+	 */
+	private static String getKey(String name, Object[] labels)
+	{
+		if (labels.length == 0)
+		{
+			return name;
+		}
+
+		StringBuilder key = new StringBuilder(name);
+
+		for (Object label : labels)
+		{
+			key.append('\u0000').append(label);
+		}
+
+		return key.toString();
+	}
+
+
+	/**
+	 * @param	labels
+	 * @return	Labels map.
+	 */
+	private static Map<String, String> getLabelsMap(Object[] labels)
+	{
+		Map<String, String> labelsMap = new LinkedHashMap<>();
+
+		for (int i = 0; i + 1 < labels.length; i += 2)
+		{
+			labelsMap.put(String.valueOf(labels[i]), String.valueOf(labels[i + 1]));
+		}
+
+		return labelsMap;
+	}
+
+
+	/**
+	 * Exports the metric as the JMX MBean.
+	 *
+	 * @param metric
+	 */
+	private static void export(Metric metric)
+	{
+		try
+		{
+			StringBuilder objectName = new StringBuilder(JMX_DOMAIN);
+
+			objectName.append(":type=").append(metric.getType());
+			objectName.append(",name=").append(ObjectName.quote(metric.getName()));
+
+			for (Map.Entry<String, String> label : metric.getLabels().entrySet())
+			{
+				objectName.append(',').append(label.getKey()).append('=').append(ObjectName.quote(label.getValue()));
+			}
+
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+			server.registerMBean(new MetricMBean(metric), new ObjectName(objectName.toString()));
+		}
+		catch (Exception e)
+		{
+			Logger.logError("Cannot export metric " + metric.getName() + " to JMX: " + e.getMessage());
+		}
+	}
+}
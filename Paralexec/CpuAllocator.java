@@ -0,0 +1,331 @@
+package Paralexec;
+
+import Metrics.MetricsRegistry;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Allocator of the CPU sets of the running Execs.
+ *
+ * NUMA nodes are read from /sys/devices/system/node, every CPU set lies in one node,
+ * so all stages of the pipeline share the caches and the local memory. The Exec gets
+ * the exclusive cores of the node with the most free cores. If there are not enough
+ * free cores, the Exec shares the whole node with the fewest Execs.
+ * The spawned programs are pinned by taskset.
+ *
+ * Settings:
+ *
+ *  - paralexec.affinity - pinning of the Exec pipelines to the CPU sets (default false)
+ *  - paralexec.affinity.cpus - CPUs of one Exec, 0 = the whole NUMA node (default 0)
+ *
+ * @author oto
+ */
+final public class CpuAllocator
+{
+	/**
+	 * Pinning of the Exec pipelines.
+	 */
+	private static boolean AFFINITY = Settings.getBoolean("affinity", false);
+
+
+	/**
+	 * CPUs of one Exec (0 = the whole node).
+	 */
+	private static int CPUS_PER_EXEC = Math.max(0, Settings.getInt("affinity.cpus", 0));
+
+
+	/**
+	 * NUMA nodes directory.
+	 */
+	private static Path NODES_PATH = Paths.get("/sys/devices/system/node");
+
+
+	/**
+	 * Online CPUs file (used without the NUMA nodes).
+	 */
+	private static Path ONLINE_CPUS_PATH = Paths.get("/sys/devices/system/cpu/online");
+
+
+	/**
+	 * CPUs of the NUMA nodes (null if the pinning is not available).
+	 */
+	private static List<List<Integer>> nodes = null;
+
+
+	/**
+	 * Number of the Execs in the nodes.
+	 */
+	private static int[] nodeExecsCounts;
+
+
+	/**
+	 * CPUs reserved by the Execs.
+	 */
+	private static Set<Integer> usedCpus = new HashSet<>();
+
+
+	/**
+	 * Allocator has been already initialized.
+	 */
+	private static boolean initialized = false;
+
+
+	/**
+	 * Allocates the CPU set of the Exec.
+	 *
+	 * @param	processId
+	 * @return	CPU set (null if the pinning is disabled or not available).
+	 */
+	public static synchronized CpuSet allocate(int processId)
+	{
+		if (!AFFINITY || !initialize())
+		{
+			return null;
+		}
+
+		int node	= -1;
+		CpuSet set	= null;
+
+		if (CPUS_PER_EXEC > 0)
+		{
+			int maxFreeCpus = 0;
+
+			for (int i = 0; i < nodes.size(); i++)
+			{
+				int freeCpus = getFreeCpus(i).size();
+
+				if (freeCpus > maxFreeCpus || (freeCpus == maxFreeCpus && freeCpus > 0 && nodeExecsCounts[i] < nodeExecsCounts[node]))
+				{
+					maxFreeCpus	= freeCpus;
+					node		= i;
+				}
+			}
+
+			if (maxFreeCpus >= CPUS_PER_EXEC)
+			{
+				List<Integer> cpus = new ArrayList<>(getFreeCpus(node).subList(0, CPUS_PER_EXEC));
+
+				usedCpus.addAll(cpus);
+
+				set = new CpuSet(node, cpus, true);
+			}
+		}
+
+		// The whole node with the fewest Execs is shared.
+		if (set == null)
+		{
+			node = 0;
+
+			for (int i = 1; i < nodes.size(); i++)
+			{
+				if (nodeExecsCounts[i] < nodeExecsCounts[node])
+				{
+					node = i;
+				}
+			}
+
+			set = new CpuSet(node, nodes.get(node), false);
+		}
+
+		nodeExecsCounts[node]++;
+
+		Logger.debug("CPU set allocated.", "process", processId, "node", node, "cpus", set.getCpuList(), "exclusive", set.isExclusive());
+
+		return set;
+	}
+
+
+	/**
+	 * Releases the CPU set of the finished Exec.
+	 *
+	 * @param set
+	 */
+	public static synchronized void release(CpuSet set)
+	{
+		nodeExecsCounts[set.getNode()]--;
+
+		if (set.isExclusive())
+		{
+			usedCpus.removeAll(set.getCpus());
+		}
+	}
+
+
+	/**
+	 * @param	set
+	 * @return	Command prefix pinning the program to the CPU set.
+	 */
+	public static String[] getCommandPrefix(CpuSet set)
+	{
+		return new String[] {"taskset", "-c", set.getCpuList()};
+	}
+
+
+	/**
+	 * @param	node
+	 * @return	Free CPUs of the node.
+	 */
+	private static List<Integer> getFreeCpus(int node)
+	{
+		List<Integer> freeCpus = new ArrayList<>();
+
+		for (int cpu : nodes.get(node))
+		{
+			if (!usedCpus.contains(cpu))
+			{
+				freeCpus.add(cpu);
+			}
+		}
+
+		return freeCpus;
+	}
+
+
+	/**
+	 * Reads the NUMA topology (once).
+	 *
+	 * @return TRUE if the pinning is available.
+	 */
+	private static boolean initialize()
+	{
+		if (initialized)
+		{
+			return nodes != null;
+		}
+
+		initialized = true;
+
+		if (!isTasksetAvailable())
+		{
+			Logger.warn("Program taskset not found. Exec pipelines are not pinned.");
+
+			return false;
+		}
+
+		List<List<Integer>> topology = new ArrayList<>();
+
+		try
+		{
+			File[] nodeDirs = NODES_PATH.toFile().listFiles((dir, name) -> name.matches("node\\d+"));
+
+			if (nodeDirs != null)
+			{
+				Arrays.sort(nodeDirs, Comparator.comparingInt(dir -> Integer.parseInt(dir.getName().substring(4))));
+
+				for (File nodeDir : nodeDirs)
+				{
+					List<Integer> cpus = parseCpuList(read(nodeDir.toPath().resolve("cpulist")));
+
+					// Memory only nodes have no CPUs.
+					if (!cpus.isEmpty())
+					{
+						topology.add(cpus);
+					}
+				}
+			}
+
+			// Without the NUMA nodes all online CPUs are one node.
+			if (topology.isEmpty())
+			{
+				topology.add(parseCpuList(read(ONLINE_CPUS_PATH)));
+			}
+		}
+		catch (IOException | RuntimeException e)
+		{
+			Logger.warn("Cannot read the CPU topology. Exec pipelines are not pinned.", "error", e.getMessage());
+
+			return false;
+		}
+
+		nodes			= topology;
+		nodeExecsCounts	= new int[topology.size()];
+
+		for (int i = 0; i < topology.size(); i++)
+		{
+			int node = i;
+
+			MetricsRegistry.gauge("paralexec_numa_node_execs", "Execs pinned to the NUMA node.", () -> nodeExecsCounts[node], "node", node);
+		}
+
+		Logger.info("Exec pipelines are pinned to the CPU sets.", "nodes", topology.size(), "cpusPerExec", CPUS_PER_EXEC);
+
+		return true;
+	}
+
+
+	/**
+	 * @param	cpuList	CPU list in the kernel format (e.g. 0-3,8-11).
+	 * @return	CPU numbers.
+	 */
+	private static List<Integer> parseCpuList(String cpuList)
+	{
+		List<Integer> cpus = new ArrayList<>();
+
+		for (String range : cpuList.trim().split(","))
+		{
+			if (range.isEmpty())
+			{
+				continue;
+			}
+
+			int dash = range.indexOf('-');
+
+			if (dash < 0)
+			{
+				cpus.add(Integer.parseInt(range));
+			}
+			else
+			{
+				for (int cpu = Integer.parseInt(range.substring(0, dash)); cpu <= Integer.parseInt(range.substring(dash + 1)); cpu++)
+				{
+					cpus.add(cpu);
+				}
+			}
+		}
+
+		return cpus;
+	}
+
+
+	/**
+	 * @return TRUE if the taskset program is on the PATH.
+	 */
+	private static boolean isTasksetAvailable()
+	{
+		String path = System.getenv("PATH");
+
+		if (path != null)
+		{
+			for (String dir : path.split(File.pathSeparator))
+			{
+				if (new File(dir, "taskset").canExecute())
+				{
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+
+	/**
+	 * @param	path
+	 * @return	Trimmed file content.
+	 * @throws	IOException
+	 */
+	private static String read(Path path) throws IOException
+	{
+		return new String(Files.readAllBytes(path), StandardCharsets.UTF_8).trim();
+	}
+}
@@ -0,0 +1,89 @@
+package Paralexec;
+
+import java.util.List;
+
+/**
+ * CPU set assigned to the running Exec (see CpuAllocator).
+ *
+ * @author oto
+ */
+final public class CpuSet
+{
+	/**
+	 * NUMA node index.
+	 */
+	private int node;
+
+
+	/**
+	 * CPU numbers.
+	 */
+	private List<Integer> cpus;
+
+
+	/**
+	 * The CPUs are reserved only for this Exec.
+	 */
+	private boolean exclusive;
+
+
+	/**
+	 * @param node
+	 * @param cpus
+	 * @param exclusive
+	 */
+	public CpuSet(int node, List<Integer> cpus, boolean exclusive)
+	{
+		this.node		= node;
+		this.cpus		= cpus;
+		this.exclusive	= exclusive;
+	}
+
+
+	/**
+	 * @return NUMA node index.
+	 */
+	public int getNode()
+	{
+		return this.node;
+	}
+
+
+	/**
+	 * @return CPU numbers.
+	 */
+	public List<Integer> getCpus()
+	{
+		return this.cpus;
+	}
+
+
+	/**
+	 * @return TRUE if the CPUs are reserved only for this Exec.
+	 */
+	public boolean isExclusive()
+	{
+		return this.exclusive;
+	}
+
+
+	/**
+	 * @return CPU list in the taskset format (e.g. 0,1,2,3).
+	 */
+	public String getCpuList()
+	{
+		StringBuilder list = new StringBuilder();
+
+		for (int cpu : this.cpus)
+		{
+			if (list.length() > 0)
+			{
+				list.append(',');
+			}
+
+			list.append(cpu);
+		}
+
+		return list.toString();
+	}
+}
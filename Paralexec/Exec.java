@@ -1,23 +1,63 @@
 package Paralexec;
 
+import Metrics.MetricsRegistry;
 import Process.ProcessSetting;
 import TotemProcessBuilder.CommandParserException;
 import TotemProcessBuilder.InvalidCommandException;
 import TotemProcessBuilder.TotemProcessBuilder;
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Thread of the parallel execution.
  *
+ * Failed or stucked input file is retried with the exponential backoff. The file
+ * which fails all attempts is quarantined (recorded in the store) and the Exec
+ * continues with the rest of the files, the process ends with the error then.
+ *
+ * Processed input files are checkpointed in the store (by the name). Process
+ * restarted after the crash skips them and keeps their outputs.
+ *
+ * With the partial results the process with the quarantined files (or with
+ * the incomplete input) still runs its children, but it ends with the error
+ * and keeps its checkpoints. The rerun processes only the failed files and
+ * the children process only the new outputs. New output files of the failed
+ * attempt are removed, so the children never see them.
+ *
+ * Straggler file of the script process can get the backup run (requested by ExecMonitor).
+ * The backup writes into the scratch directory (the output directory is replaced
+ * in the rendered command), the first successfully finished run wins and the other one
+ * is killed. Outputs of the winning backup are moved into the output directory.
+ *
+ * Script process with the configured limits (or with the cgroup accounting) runs its pipelines
+ * (including the chained child and the backup runs) in its own cgroup, see ExecCgroup.
+ * OOM kill is the file error.
+ * With the affinity the pipelines are pinned to the CPU set of one NUMA node, see CpuAllocator.
+ *
+ * Settings:
+ *
+ *  - paralexec.partialResults - children use the partial results (default false)
+ *  - paralexec.retry.maxAttempts - attempts of one input file (default 3)
+ *  - paralexec.retry.backoff - first retry backoff in seconds, it's doubled up to 5 minutes (default 5)
+ *
  * @author oto
  */
 final public class Exec implements Runnable
@@ -26,6 +66,36 @@ final public class Exec implements Runnable
 	 * Maximum count of try to open a file.
 	 */
 	private static int FILE_OPENING_MAX_TRY_COUNT = 5;
+
+
+	/**
+	 * Attempts of one input file.
+	 */
+	private static int FILE_MAX_ATTEMPTS = Math.max(1, Settings.getInt("retry.maxAttempts", 3));
+
+
+	/**
+	 * First retry backoff (miliseconds).
+	 */
+	private static long RETRY_INITIAL_BACKOFF = Math.max(0, Settings.getLong("retry.backoff", 5)) * 1000;
+
+
+	/**
+	 * Maximum retry backoff (miliseconds).
+	 */
+	private static long RETRY_MAX_BACKOFF = 300000;
+
+
+	/**
+	 * Children use the results of the process with the failed files.
+	 */
+	private static boolean PARTIAL_RESULTS = Settings.getBoolean("partialResults", false);
+
+
+	/**
+	 * Maximum wait for the end of the recovered Exec thread (miliseconds).
+	 */
+	private static long RECOVERY_JOIN_TIMEOUT = 10000;
 	
 	
 	/**
@@ -58,6 +128,12 @@ final public class Exec implements Runnable
 	private int processedFilesCount = 0;
 
 
+	/**
+	 * Names of the processed input files (including the checkpoints of the previous runs).
+	 */
+	private Set<String> processedFiles = new HashSet<>();
+
+
 	/**
 	 * Interrupted flag.
 	 */
@@ -76,6 +152,96 @@ final public class Exec implements Runnable
 	private int attempts = 1;
 
 
+	/**
+	 * Java implementation of the process step (null for the scripts).
+	 */
+	private FileTask fileTask = null;
+
+
+	/**
+	 * Exec thread.
+	 */
+	private Thread thread = null;
+
+
+	/**
+	 * Time of the Exec insertion into the queue (System.nanoTime()).
+	 */
+	private long queuedTime = 0;
+
+
+	/**
+	 * Child process setting chained through the named pipes (null if not chained).
+	 */
+	private ProcessSetting chainedChild = null;
+
+
+	/**
+	 * OS process IDs of the running pipeline processes.
+	 */
+	private Set<Long> processIds = ConcurrentHashMap.newKeySet();
+
+
+	/**
+	 * Builders of the current input file (stopped before the processes are killed).
+	 */
+	private Set<TotemProcessBuilder> builders = ConcurrentHashMap.newKeySet();
+
+
+	/**
+	 * Monitor of the running Exec (null before the first file).
+	 */
+	private volatile ExecMonitor execMonitor = null;
+
+
+	/**
+	 * Time of the Exec start or the last processed file (miliseconds).
+	 */
+	private volatile long lastFileTime = System.currentTimeMillis();
+
+
+	/**
+	 * End of the Exec has been reported to the manager.
+	 */
+	private boolean ended = false;
+
+
+	/**
+	 * Attempt of the current input file.
+	 */
+	private volatile int fileAttempts = 0;
+
+
+	/**
+	 * Current input file processing has been killed (stucked).
+	 */
+	private volatile boolean fileKilled = false;
+
+
+	/**
+	 * Names of the quarantined input files.
+	 */
+	private List<String> quarantinedFiles = new ArrayList<>();
+
+
+	/**
+	 * Backup run of the current input file has been requested (straggler).
+	 */
+	private volatile boolean backupRunRequested = false;
+
+
+	/**
+	 * Cgroup of the pipelines (null if the process has no limits).
+	 */
+	private ExecCgroup cgroup = null;
+
+
+	/**
+	 * CPU set of the pipelines (null if they are not pinned).
+	 */
+	private CpuSet cpuSet = null;
+
+
 	/**
 	 * Constructor.
 	 *
@@ -85,9 +251,10 @@ final public class Exec implements Runnable
 	 */
 	public Exec(ProcessSetting process, Paralexec manager) throws IOException
 	{
-		this.process	= process;
-		this.manager	= manager;
-		this.scriptPath	= this.process.getScriptPath();
+		this.process		= process;
+		this.manager		= manager;
+		this.scriptPath		= this.process.getScriptPath();
+		this.chainedChild	= this.getFifoChainedChild();
 	}
 
 
@@ -105,7 +272,10 @@ final public class Exec implements Runnable
 		this.manager				= origin.manager;
 		this.error					= origin.error;
 		this.processedFilesCount	= origin.processedFilesCount;
+		this.processedFiles			= new HashSet<>(origin.processedFiles);
 		this.attempts				= origin.attempts + 1;
+		this.chainedChild			= origin.chainedChild;
+		this.quarantinedFiles		= origin.quarantinedFiles;
 	}
 
 
@@ -127,6 +297,60 @@ final public class Exec implements Runnable
 	}
 
 
+	/**
+	 * @return Child process setting chained through the named pipes (null if not chained).
+	 */
+	public ProcessSetting getChainedChild()
+	{
+		return this.chainedChild;
+	}
+
+
+	/**
+	 * Marks the Exec insertion into the queue.
+	 */
+	public void markQueued()
+	{
+		this.queuedTime = System.nanoTime();
+	}
+
+
+	/**
+	 * @return Time of the Exec insertion into the queue (System.nanoTime()).
+	 */
+	public long getQueuedTime()
+	{
+		return this.queuedTime;
+	}
+
+
+	/**
+	 * @return OS process IDs of the running pipeline processes.
+	 */
+	public Set<Long> getProcessIds()
+	{
+		return this.processIds;
+	}
+
+
+	/**
+	 * @return Number of processed input files.
+	 */
+	public int getProcessedFilesCount()
+	{
+		return this.processedFilesCount;
+	}
+
+
+	/**
+	 * @return Attempt of the current input file.
+	 */
+	public int getFileAttemptsCount()
+	{
+		return this.fileAttempts;
+	}
+
+
 	/**
 	 * @return Attempts count.
 	 */
@@ -136,12 +360,81 @@ final public class Exec implements Runnable
 	}
 
 
+	/**
+	 * @return Cgroup of the pipelines (null if the cgroups are not available).
+	 */
+	public ExecCgroup getCgroup()
+	{
+		return this.cgroup;
+	}
+
+
+	/**
+	 * @return CPU set of the pipelines (null if they are not pinned).
+	 */
+	public CpuSet getCpuSet()
+	{
+		return this.cpuSet;
+	}
+
+
+	/**
+	 * @return TRUE if the current file can get the backup run (only the script process without the chained child).
+	 */
+	public boolean canRunBackup()
+	{
+		return this.fileTask == null && this.chainedChild == null;
+	}
+
+
+	/**
+	 * Requests the backup run of the current input file.
+	 */
+	public void requestBackupRun()
+	{
+		this.backupRunRequested = true;
+	}
+
+
+	/**
+	 * @return Time without any progress of the Exec (miliseconds).
+	 */
+	public long getIdleTime()
+	{
+		long lastProgressTime	= this.lastFileTime;
+		ExecMonitor monitor		= this.execMonitor;
+
+		if (monitor != null)
+		{
+			lastProgressTime = Math.max(lastProgressTime, monitor.getLastProgressTime());
+		}
+
+		return System.currentTimeMillis() - lastProgressTime;
+	}
+
+
 	/**
 	 * Process the setting children.
+	 *
+	 * Child with more parents is started by its last finished parent.
 	 */
 	private void processChildren()
 	{
-		for (ProcessSetting child : this.process.getChildren())
+		// Children of the roots started during the tree load are linked after the load.
+		this.manager.awaitProcessTree();
+
+		// Process with the error has the partial results.
+		boolean partial						= this.error != null;
+		List<ProcessSetting> readyChildren	= this.manager.releaseChildren(this.process, partial);
+
+		// Chained child has been processed with this Exec, we continue with its children.
+		if (this.chainedChild != null)
+		{
+			readyChildren.remove(this.chainedChild);
+			readyChildren.addAll(this.manager.releaseChildren(this.chainedChild, partial));
+		}
+
+		for (ProcessSetting child : readyChildren)
 		{
 			try
 			{
@@ -159,7 +452,7 @@ final public class Exec implements Runnable
 	{
 		String ids = "";
 		
-		for (ProcessSetting child : this.process.getChildren())
+		for (ProcessSetting child : this.manager.getProcessChildren(this.process))
 		{
 			if (!ids.equals(""))
 			{
@@ -173,6 +466,138 @@ final public class Exec implements Runnable
 	}
 
 
+	/**
+	 * Returns the child which can consume the process output through the named pipes.
+	 *
+	 * FIFO mode has to be enabled (paralexec.fifo) and the process has to be
+	 * the part of the linear chain: its only child has no other parent and reads exactly its output directory.
+	 * New children of the chained process are deferred by the tree refresh.
+	 *
+	 * @return Chained child process setting or null.
+	 */
+	private ProcessSetting getFifoChainedChild()
+	{
+		if (!Settings.getBoolean("fifo", false) || this.process.isJavaTask())
+		{
+			return null;
+		}
+
+		Path outputDir = Paths.get(this.process.getOutputDirPath()).toAbsolutePath().normalize();
+
+		return this.manager.chainOnlyChild(this.process, child ->
+				!child.isJavaTask()
+				&& child.getParentsCount() == 1
+				&& outputDir.equals(Paths.get(child.getInputDirPath()).toAbsolutePath().normalize())
+		);
+	}
+
+
+	/**
+	 * Creates the named pipe.
+	 *
+	 * @param	path
+	 * @throws	IOException
+	 * @throws	InterruptedException
+	 */
+	private void createNamedPipe(File path) throws IOException, InterruptedException
+	{
+		Files.deleteIfExists(path.toPath());
+
+		Process mkfifo = new ProcessBuilder("mkfifo", path.getAbsolutePath()).start();
+
+		if (mkfifo.waitFor() != 0)
+		{
+			throw new IOException("Cannot create named pipe " + path.getAbsolutePath());
+		}
+	}
+
+
+	/**
+	 * Reads out the named pipe in the background.
+	 *
+	 * Prevents the writer from blocking forever when the reader is gone.
+	 *
+	 * @param namedPipe
+	 */
+	private void drainNamedPipe(final File namedPipe)
+	{
+		Thread drain = new Thread(() -> {
+			try (InputStream stream = new FileInputStream(namedPipe))
+			{
+				new BufferVomitor("fifo", stream).run();
+			}
+			catch (IOException e) {}
+		});
+
+		drain.setDaemon(true);
+		drain.start();
+	}
+
+
+	/**
+	 * @param	dirPath
+	 * @return	Names of the files in given directory.
+	 */
+	private Set<String> getFileNames(String dirPath)
+	{
+		Set<String> names	= new HashSet<>();
+		File[] files		= new File(dirPath).listFiles();
+
+		if (files != null)
+		{
+			for (File file : files)
+			{
+				names.add(file.getName());
+			}
+		}
+
+		return names;
+	}
+
+
+	/**
+	 * Creates the Java implementation of the process step.
+	 *
+	 * @return	File task instance.
+	 * @throws	Exception
+	 */
+	private FileTask createFileTask() throws Exception
+	{
+		String className	= this.process.getJavaTaskClassName();
+		Class<?> taskClass	= Class.forName(className);
+
+		if (!FileTask.class.isAssignableFrom(taskClass))
+		{
+			throw new Exception("Class " + className + " does not implement " + FileTask.class.getName());
+		}
+
+		return (FileTask) taskClass.getDeclaredConstructor().newInstance();
+	}
+
+
+	/**
+	 * Deletes the files which are not in the previous files of given directory.
+	 *
+	 * @param dirPath
+	 * @param previousFiles
+	 */
+	private void removeNewFiles(String dirPath, Set<String> previousFiles)
+	{
+		File[] files = new File(dirPath).listFiles();
+
+		if (files != null)
+		{
+			for (File file : files)
+			{
+				if (file.isFile() && !previousFiles.contains(file.getName()))
+				{
+					file.delete();
+				}
+			}
+		}
+	}
+
+
 	/**
 	 * Deletes all files in given directory.
 	 *
@@ -204,12 +629,27 @@ final public class Exec implements Runnable
 	 */
 	private String getFileExecutionCommand(File file) throws IOException, InterruptedException
 	{
-		String tmpPath		= this.scriptPath + ".tmp.sh";
-		Path shellPath		= Paths.get(this.scriptPath);
+		return this.getFileExecutionCommand(this.scriptPath, file, this.processedFilesCount + 1);
+	}
+
+
+	/**
+	 * It executes given shell script which echoes the CLI command.
+	 *
+	 * @param	scriptPath
+	 * @param	file
+	 * @param	fileNumber
+	 * @return	Command for input file execution.
+	 */
+	private String getFileExecutionCommand(String scriptPath, File file, int fileNumber) throws IOException, InterruptedException
+	{
+		long startTime		= System.nanoTime();
+		String tmpPath		= scriptPath + ".tmp.sh";
+		Path shellPath		= Paths.get(scriptPath);
 		Charset charset		= StandardCharsets.UTF_8;
 		String shellContent = new String(Files.readAllBytes(shellPath), charset);
 		shellContent		= shellContent.replace("[input_file_name]", file.getAbsolutePath());
-		shellContent		= shellContent.replace("[file-number]", Integer.toString(this.processedFilesCount + 1));
+		shellContent		= shellContent.replace("[file-number]", Integer.toString(fileNumber));
 
 		// TODO: this splitting is bad - it will also split the words ends with "echo"
 		String[] echoSplit	= shellContent.split("echo ");
@@ -248,6 +688,8 @@ final public class Exec implements Runnable
 		
 		tmpFile.delete();
 
+		MetricsRegistry.histogram("paralexec_template_render_seconds", "Script template render time.").observeNanos(System.nanoTime() - startTime);
+
 		return command;
 	}
 	
@@ -360,6 +802,8 @@ final public class Exec implements Runnable
 		ProcessBuilder pb	= new ProcessBuilder("sh", "-c", command);
 		Process process		= pb.start();
 
+		this.processIds.add(process.pid());
+
 		// We need to vomit outputs for prevent the OS buffer overflow.
 		BufferVomitor inputStreamVomit = new BufferVomitor("stdin", process.getInputStream());
 		BufferVomitor errorStreamVomit = new BufferVomitor("stderr", process.getErrorStream());
@@ -367,45 +811,773 @@ final public class Exec implements Runnable
 		inputStreamVomit.start();
 		errorStreamVomit.start();
 
-		process.waitFor();
-	}
-	
-	
-	/**
-	 * Executes process on given input file.
+		try
+		{
+			process.waitFor();
+		}
+		finally
+		{
+			this.processIds.remove(process.pid());
+		}
+	}
+	
+	
+	/**
+	 * Executes process on given input file.
+	 * 
+	 * @param	inputFile
+	 * @throws	IOException
+	 * @throws	InterruptedException
+	 * @throws	CommandParserException
+	 * @throws	InvalidCommandException 
+	 */
+	private void runProcessOnFileWithTotemProcessBuilder(File inputFile) throws IOException, InterruptedException, CommandParserException, InvalidCommandException
+	{
+		String command = this.getFileExecutionCommand(inputFile);
+
+		Logger.info("Executing cmd.", "process", this.process.getId(), "file", inputFile.getName(), "attempt", this.attempts, "cmd", command);
+		
+		TotemProcessBuilder builder = this.createBuilder(command, this.process);
+
+		this.backupRunRequested = false;
+
+		builder.start();
+		
+		this.waitForBuilderWithBackup(builder, command, inputFile);
+	}
+	
+	
+	/**
+	 * Waits on the builder processing end, the straggler gets the backup run.
+	 * 
+	 * The first successfully finished run wins, the other one is killed.
+	 * 
+	 * @param	builder
+	 * @param	command			Command of the builder.
+	 * @param	inputFile
+	 * @throws	IOException		If both runs have failed.
+	 */
+	private void waitForBuilderWithBackup(TotemProcessBuilder builder, String command, File inputFile) throws IOException
+	{
+		TotemProcessBuilder backup	= null;
+		Set<Long> backupProcessIds	= ConcurrentHashMap.newKeySet();
+		Path backupDir				= null;
+		boolean slotTaken			= false;
+		
+		try
+		{
+			while (builder.isRunning() || (backup != null && backup.isRunning()))
+			{
+				try
+				{
+					Thread.sleep(500);
+				}
+				catch (InterruptedException e) {}
+
+				if (!this.isRunning)
+				{
+					Logger.log("Stopping process " + this.process.getId());
+
+					builder.stop();
+
+					if (backup != null)
+					{
+						backup.stop();
+					}
+				}
+				// Stucked file processing is killed with all descendants.
+				else if (this.fileKilled)
+				{
+					builder.stop();
+					
+					this.killProcesses(this.processIds);
+
+					if (backup != null)
+					{
+						backup.stop();
+
+						this.killProcesses(backupProcessIds);
+					}
+				}
+				// Backup run in the idle slot.
+				else if (backup == null && this.backupRunRequested && builder.isRunning() && this.manager.acquireBackupSlot())
+				{
+					slotTaken				= true;
+					this.backupRunRequested	= false;
+					backupDir				= this.getBackupDirPath();
+					String backupCommand	= this.getBackupCommand(command, backupDir);
+
+					if (backupCommand == null)
+					{
+						Logger.info("Command does not contain the output directory. Backup run is not possible.", "process", this.process.getId(), "file", inputFile.getName());
+
+						this.manager.releaseBackupSlot();
+
+						slotTaken = false;
+
+						continue;
+					}
+
+					this.deleteDirectory(backupDir);
+
+					Files.createDirectories(backupDir);
+
+					Logger.info("Executing backup cmd.", "process", this.process.getId(), "file", inputFile.getName(), "attempt", this.attempts, "cmd", backupCommand);
+
+					MetricsRegistry.counter("paralexec_backup_runs", "Backup runs of the straggler files.", "process", this.process.getId()).increment();
+
+					try
+					{
+						backup = new TotemProcessBuilder(backupCommand);
+
+						backup.setListener(new ExecProcessListener(this.process.getId(), backupProcessIds));
+						this.setCommandPrefix(backup);
+
+						this.builders.add(backup);
+						backup.start();
+					}
+					catch (CommandParserException | InvalidCommandException | IOException e)
+					{
+						Logger.warn("Cannot start the backup run.", "process", this.process.getId(), "file", inputFile.getName(), "error", e.getMessage());
+
+						backup = null;
+					}
+				}
+
+				// The first successfully finished run wins.
+				if (backup != null && !builder.isRunning() && builder.getError() == null)
+				{
+					break;
+				}
+
+				if (backup != null && !backup.isRunning() && backup.getError() == null)
+				{
+					break;
+				}
+			}
+
+			boolean builderSucceeded	= !builder.isRunning() && builder.getError() == null;
+			boolean backupSucceeded		= backup != null && !backup.isRunning() && backup.getError() == null;
+
+			if (backup != null && this.isRunning && !this.fileKilled && !builderSucceeded && backupSucceeded)
+			{
+				Logger.info("Backup run has won.", "process", this.process.getId(), "file", inputFile.getName());
+
+				MetricsRegistry.counter("paralexec_backup_wins", "Backup runs finished before the original runs.", "process", this.process.getId()).increment();
+
+				builder.stop();
+
+				this.killProcesses(this.processIds);
+
+				// Partial outputs of the original run are replaced by the backup outputs (the same names).
+				this.moveBackupOutputs(backupDir);
+
+				return;
+			}
+
+			if (backup != null && backup.isRunning())
+			{
+				backup.stop();
+
+				this.killProcesses(backupProcessIds);
+			}
+
+			if (builder.getError() != null)
+			{
+				throw new IOException(builder.getError());
+			}
+		}
+		finally
+		{
+			if (slotTaken)
+			{
+				this.manager.releaseBackupSlot();
+			}
+
+			if (backupDir != null)
+			{
+				this.deleteDirectory(backupDir);
+			}
+		}
+	}
+
+
+	/**
+	 * @return Scratch directory of the backup runs (next to the output directory).
+	 */
+	private Path getBackupDirPath()
+	{
+		Path outputDir = Paths.get(this.process.getOutputDirPath()).toAbsolutePath().normalize();
+
+		return outputDir.resolveSibling("." + outputDir.getFileName() + ".backup");
+	}
+
+
+	/**
+	 * Replaces the output directory in the command by the backup directory.
+	 *
+	 * @param	command
+	 * @param	backupDir
+	 * @return	Backup command (null if the command does not contain the output directory).
+	 */
+	private String getBackupCommand(String command, Path backupDir)
+	{
+		String backupCommand = command;
+
+		for (String outputDirPath : new String[] {
+			Paths.get(this.process.getOutputDirPath()).toAbsolutePath().normalize().toString(),
+			Paths.get(this.process.getOutputDirPath()).normalize().toString()
+		})
+		{
+			backupCommand = backupCommand.replace(outputDirPath + File.separator, backupDir + File.separator);
+		}
+
+		return backupCommand.equals(command) ? null : backupCommand;
+	}
+
+
+	/**
+	 * Moves the outputs of the winning backup run into the output directory.
+	 *
+	 * @param	backupDir
+	 * @throws	IOException
+	 */
+	private void moveBackupOutputs(Path backupDir) throws IOException
+	{
+		File[] files = backupDir.toFile().listFiles();
+
+		if (files == null)
+		{
+			return;
+		}
+
+		for (File file : files)
+		{
+			Files.move(file.toPath(), Paths.get(this.process.getOutputDirPath(), file.getName()), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+
+	/**
+	 * Deletes the directory with its content.
+	 *
+	 * @param dirPath
+	 */
+	private void deleteDirectory(Path dirPath)
+	{
+		File[] files = dirPath.toFile().listFiles();
+
+		if (files != null)
+		{
+			for (File file : files)
+			{
+				if (file.isDirectory())
+				{
+					this.deleteDirectory(file.toPath());
+				}
+				else
+				{
+					file.delete();
+				}
+			}
+		}
+
+		dirPath.toFile().delete();
+	}
+	
+	
+	/**
+	 * @param	command
+	 * @param	process		Process setting of the command.
+	 * @return	Builder of given command.
+	 * @throws	CommandParserException
+	 * @throws	InvalidCommandException 
+	 */
+	private TotemProcessBuilder createBuilder(String command, ProcessSetting process) throws CommandParserException, InvalidCommandException
+	{
+		TotemProcessBuilder builder = new TotemProcessBuilder(command);
+		
+		builder.setListener(new ExecProcessListener(process.getId(), this.processIds));
+		
+		this.setCommandPrefix(builder);
+		
+		this.builders.add(builder);
+		
+		return builder;
+	}
+	
+	
+	/**
+	 * Pipelines of the process with the limits join its cgroup, pinned pipelines run on its CPU set.
+	 * 
+	 * @param builder 
+	 */
+	private void setCommandPrefix(TotemProcessBuilder builder)
+	{
+		List<String> prefix = new ArrayList<>();
+		
+		if (this.cgroup != null)
+		{
+			prefix.addAll(Arrays.asList(this.cgroup.getCommandPrefix()));
+		}
+		
+		if (this.cpuSet != null)
+		{
+			prefix.addAll(Arrays.asList(CpuAllocator.getCommandPrefix(this.cpuSet)));
+		}
+		
+		if (!prefix.isEmpty())
+		{
+			builder.setCommandPrefix(prefix.toArray(new String[0]));
+		}
+	}
+	
+	
+	/**
+	 * Waits on the builder processing end.
 	 * 
+	 * @param	builder 
+	 * @throws	IOException	If the processing has failed.
+	 */
+	private void waitForBuilder(TotemProcessBuilder builder) throws IOException
+	{
+		// Waiting on the process end.
+		while (builder.isRunning())
+		{
+			try
+			{
+				Thread.sleep(500);
+			}
+			catch (InterruptedException e) {}
+			
+			// If Exec has been interupted, stop the builder processing.
+			if (!this.isRunning)
+			{
+				Logger.log("Stopping process " + this.process.getId());
+				
+				builder.stop();
+			}
+			// Stucked file processing is killed with all descendants.
+			else if (this.fileKilled)
+			{
+				builder.stop();
+				
+				this.killProcesses();
+			}
+		}
+		
+		if (builder.getError() != null)
+		{
+			throw new IOException(builder.getError());
+		}
+	}
+	
+	
+	/**
+	 * Executes process and its chained child on given input file.
+	 * 
+	 * The process standard output file is replaced by the named pipe
+	 * and the child reads it concurrently, so the intermediate file never touches the disk.
+	 * 
+	 * @param	inputFile
+	 * @throws	IOException
+	 * @throws	InterruptedException
+	 * @throws	CommandParserException
+	 * @throws	InvalidCommandException 
+	 */
+	private void runChainedProcessesOnFile(File inputFile) throws IOException, InterruptedException, CommandParserException, InvalidCommandException
+	{
+		String command				= this.getFileExecutionCommand(inputFile);
+		TotemProcessBuilder builder	= this.createBuilder(command, this.process);
+		String intermediatePath		= builder.getStandardOutputFilePath();
+		
+		// Without the standard output file we do not know the intermediate file,
+		// so the child processes the new files after the process.
+		if (intermediatePath == null || !intermediatePath.endsWith("." + this.chainedChild.getInputExt()))
+		{
+			Set<String> previousFiles = this.getFileNames(this.chainedChild.getInputDirPath());
+			
+			Logger.info("Executing cmd.", "process", this.process.getId(), "file", inputFile.getName(), "attempt", this.attempts, "cmd", command);
+			
+			builder.start();
+			this.waitForBuilder(builder);
+			
+			File childInputDir	= new File(this.chainedChild.getInputDirPath());
+			File[] childFiles	= childInputDir.listFiles((dir, name) -> name.endsWith("." + this.chainedChild.getInputExt()));
+			
+			if (childFiles == null)
+			{
+				throw new IOException("Cannot load chained child input dir files (" + childInputDir.getAbsolutePath() + ")");
+			}
+			
+			// File number is the index in the sorted input files, so the retries do not shift it.
+			Arrays.sort(childFiles, Comparator.comparing(File::getName));
+			
+			for (int i = 0; i < childFiles.length; i++)
+			{
+				if (this.isRunning && !previousFiles.contains(childFiles[i].getName()))
+				{
+					this.runChainedChildOnFile(childFiles[i], i + 1);
+				}
+			}
+			
+			return;
+		}
+		
+		File namedPipe = new File(intermediatePath);
+		
+		this.createNamedPipe(namedPipe);
+		
+		try
+		{
+			// Child reads exactly the output of the current file, so it gets its number.
+			String childCommand					= this.getFileExecutionCommand(this.chainedChild.getScriptPath(), namedPipe, this.processedFilesCount + 1);
+			TotemProcessBuilder childBuilder	= this.createBuilder(childCommand, this.chainedChild);
+			
+			Logger.info("Executing chained cmd.", "process", this.chainedChild.getId(), "file", inputFile.getName(), "attempt", this.attempts, "cmd", childCommand);
+			
+			childBuilder.start();
+			
+			Logger.info("Executing cmd.", "process", this.process.getId(), "file", inputFile.getName(), "attempt", this.attempts, "cmd", command);
+			
+			AtomicReference<IOException> startError = new AtomicReference<>();
+			
+			// Opening the pipe for writing blocks until the child opens it, so the process
+			// is started in its own thread.
+			Thread writer = new Thread(() -> {
+				try
+				{
+					builder.start();
+				}
+				catch (IOException e)
+				{
+					Logger.logError("Cannot start process " + this.process.getId() + ": " + e.getMessage());
+					
+					// Builder is marked as running before the start.
+					startError.set(e);
+					builder.stop();
+				}
+			});
+			
+			writer.start();
+			
+			boolean draining = false;
+			
+			while (writer.isAlive() || builder.isRunning() || childBuilder.isRunning())
+			{
+				try
+				{
+					Thread.sleep(500);
+				}
+				catch (InterruptedException e) {}
+				
+				if (!this.isRunning)
+				{
+					Logger.log("Stopping process " + this.process.getId() + " and its chained child " + this.chainedChild.getId());
+					
+					childBuilder.stop();
+					builder.stop();
+				}
+				// Stucked file processing is killed with all descendants.
+				else if (this.fileKilled)
+				{
+					childBuilder.stop();
+					builder.stop();
+					
+					this.killProcesses();
+				}
+				
+				// Child does not read the pipe anymore - do not let the process wait for it.
+				if (!draining && !childBuilder.isRunning() && (writer.isAlive() || builder.isRunning()))
+				{
+					draining = true;
+					
+					this.drainNamedPipe(namedPipe);
+				}
+				
+				// Failed process never opens the pipe for writing - do not let the child wait for it.
+				if (childBuilder.isRunning() && !writer.isAlive() && !builder.isRunning() && (startError.get() != null || builder.getError() != null))
+				{
+					childBuilder.stop();
+				}
+			}
+			
+			if (startError.get() != null)
+			{
+				throw startError.get();
+			}
+			
+			if (builder.getError() != null || childBuilder.getError() != null)
+			{
+				throw new IOException(builder.getError() != null ? builder.getError() : childBuilder.getError());
+			}
+		}
+		finally
+		{
+			Files.deleteIfExists(namedPipe.toPath());
+		}
+	}
+	
+	
+	/**
+	 * Executes chained child process on given input file.
+	 * 
+	 * @param	inputFile
+	 * @param	fileNumber
+	 * @throws	IOException
+	 * @throws	InterruptedException
+	 * @throws	CommandParserException
+	 * @throws	InvalidCommandException 
+	 */
+	private void runChainedChildOnFile(File inputFile, int fileNumber) throws IOException, InterruptedException, CommandParserException, InvalidCommandException
+	{
+		String command = this.getFileExecutionCommand(this.chainedChild.getScriptPath(), inputFile, fileNumber);
+
+		Logger.info("Executing chained cmd.", "process", this.chainedChild.getId(), "file", inputFile.getName(), "attempt", this.attempts, "cmd", command);
+		
+		TotemProcessBuilder builder = this.createBuilder(command, this.chainedChild);
+
+		builder.start();
+		
+		this.waitForBuilder(builder);
+	}
+
+
+	/**
+	 * @return Reason of the partial results (null if the results are complete).
+	 */
+	private String getIncompleteReason()
+	{
+		if (!this.quarantinedFiles.isEmpty())
+		{
+			return this.quarantinedFiles.size() + " input files have been quarantined: " + String.join(", ", this.quarantinedFiles);
+		}
+
+		if (this.process.hasIncompleteInput())
+		{
+			return "Input of the process is incomplete (parent process has failed files).";
+		}
+
+		return null;
+	}
+
+
+	/**
+	 * Processes the input file, the failed attempts are retried with the backoff.
+	 *
 	 * @param	inputFile
-	 * @throws	IOException
-	 * @throws	InterruptedException
-	 * @throws	CommandParserException
-	 * @throws	InvalidCommandException 
+	 * @param	execMonitor
+	 * @return	TRUE if the file has been processed, FALSE if it has been quarantined.
+	 * @throws	Exception	If the Exec has been interrupted or stopped.
 	 */
-	private void runProcessOnFileWithTotemProcessBuilder(File inputFile) throws IOException, InterruptedException, CommandParserException, InvalidCommandException
+	private boolean processFileWithRetry(File inputFile, ExecMonitor execMonitor) throws Exception
 	{
-		String command = this.getFileExecutionCommand(inputFile);
+		long backoff = RETRY_INITIAL_BACKOFF;
 
-		Logger.log("Executing cmd: " + command);
-		
-		TotemProcessBuilder builder = new TotemProcessBuilder(command);
+		for (this.fileAttempts = 1; ; this.fileAttempts++)
+		{
+			Set<String> previousOutputs			= PARTIAL_RESULTS ? this.getFileNames(this.process.getOutputDirPath()) : null;
+			Set<String> previousChainedOutputs	= PARTIAL_RESULTS && this.chainedChild != null ? this.getFileNames(this.chainedChild.getOutputDirPath()) : null;
 
-		builder.start();
-		
-		// Waiting on the process end.
-		while (builder.isRunning())
+			execMonitor.reset(inputFile);
+
+			this.fileKilled = false;
+
+			try
+			{
+				this.processFile(inputFile);
+
+				return true;
+			}
+			catch (ExecInteruptedException e)
+			{
+				throw e;
+			}
+			catch (Exception e)
+			{
+				if (this.interrupted)
+				{
+					throw new ExecInteruptedException("Exec has been interrupted.");
+				}
+
+				if (!this.isRunning)
+				{
+					throw e;
+				}
+
+				// Partial outputs of the failed attempt must not get to the children.
+				if (previousOutputs != null)
+				{
+					this.removeNewFiles(this.process.getOutputDirPath(), previousOutputs);
+				}
+
+				if (previousChainedOutputs != null)
+				{
+					this.removeNewFiles(this.chainedChild.getOutputDirPath(), previousChainedOutputs);
+				}
+
+				if (this.fileAttempts >= FILE_MAX_ATTEMPTS)
+				{
+					this.quarantineFile(inputFile, e.getMessage());
+
+					return false;
+				}
+
+				Logger.warn("File processing failed. Retrying it.",
+						"process", this.process.getId(),
+						"file", inputFile.getName(),
+						"fileAttempt", this.fileAttempts,
+						"backoffMs", backoff,
+						"error", e.getMessage()
+				);
+
+				MetricsRegistry.counter("paralexec_file_retries", "Retried input file attempts.", "process", this.process.getId()).increment();
+			}
+
+			this.sleepBackoff(backoff);
+
+			backoff = Math.min(backoff * 2, RETRY_MAX_BACKOFF);
+		}
+	}
+
+
+	/**
+	 * Waits before the next file attempt.
+	 *
+	 * @param	backoff		Wait time (miliseconds).
+	 * @throws	ExecInteruptedException
+	 */
+	private void sleepBackoff(long backoff) throws ExecInteruptedException
+	{
+		long deadline = System.currentTimeMillis() + backoff;
+
+		// Interruption of the killed Java task must not break the backoff.
+		Thread.interrupted();
+
+		while (System.currentTimeMillis() < deadline)
 		{
+			if (this.interrupted || !this.isRunning)
+			{
+				throw new ExecInteruptedException("Exec has been interrupted.");
+			}
+
 			try
 			{
-				Thread.sleep(500);
+				Thread.sleep(Math.min(500, Math.max(1, deadline - System.currentTimeMillis())));
 			}
 			catch (InterruptedException e) {}
-			
-			// If Exec has been interupted, stop the builder processing.
-			if (!this.isRunning)
+		}
+	}
+
+
+	/**
+	 * Processes the input file (one attempt).
+	 *
+	 * @param	inputFile
+	 * @throws	Exception
+	 */
+	private void processFile(File inputFile) throws Exception
+	{
+		if (this.cgroup != null)
+		{
+			this.cgroup.fileStarted();
+		}
+
+		try
+		{
+			//this.runProcessOnFile(inputFile);
+			if (this.fileTask != null)
 			{
-				Logger.log("Stopping process " + this.process.getId());
-				
-				builder.stop();
+				this.runFileTaskOnFile(inputFile);
+			}
+			else if (this.chainedChild != null)
+			{
+				this.runChainedProcessesOnFile(inputFile);
+			}
+			else
+			{
+				this.runProcessOnFileWithTotemProcessBuilder(inputFile);
+			}
+		}
+		finally
+		{
+			this.builders.clear();
+
+			if (this.cgroup != null)
+			{
+				this.cgroup.fileFinished();
+			}
+		}
+
+		// Stopped pipeline ends without the error, but the file is not finished.
+		if (this.interrupted || !this.isRunning)
+		{
+			throw new ExecInteruptedException("Exec has been interrupted.");
+		}
+
+		if (this.fileKilled)
+		{
+			throw new IOException("File processing has been killed after the stall.");
+		}
+
+		// Killed program ends the pipeline without the error.
+		if (this.cgroup != null && this.cgroup.isOomKilled())
+		{
+			throw new IOException("File processing has been killed by the OOM killer (memory.max " + (this.cgroup.getMemoryMax() != null ? this.cgroup.getMemoryMax() : "max") + ").");
+		}
+	}
+
+
+	/**
+	 * Records the file which failed all attempts and lets the Exec continue.
+	 *
+	 * @param inputFile
+	 * @param error
+	 */
+	private void quarantineFile(File inputFile, String error)
+	{
+		Logger.error("File failed all attempts. Quarantining it.",
+				"process", this.process.getId(),
+				"file", inputFile.getName(),
+				"fileAttempts", this.fileAttempts,
+				"error", error
+		);
+
+		MetricsRegistry.counter("paralexec_quarantined_files", "Input files quarantined after the failed attempts.", "process", this.process.getId()).increment();
+
+		this.quarantinedFiles.add(inputFile.getName());
+
+		this.manager.quarantineFile(this.process, inputFile.getName(), this.fileAttempts, error);
+	}
+
+
+	/**
+	 * Executes the Java implementation of the process step on given input file.
+	 *
+	 * @param	inputFile
+	 * @throws	Exception
+	 */
+	private void runFileTaskOnFile(File inputFile) throws Exception
+	{
+		Logger.info("Executing task.", "process", this.process.getId(), "file", inputFile.getName(), "attempt", this.attempts, "task", this.process.getJavaTaskClassName());
+
+		try
+		{
+			this.fileTask.process(
+					inputFile.toPath(),
+					Paths.get(this.process.getOutputDirPath()),
+					this.processedFilesCount + 1
+			);
+		}
+		catch (Exception e)
+		{
+			// Task failure caused by the thread interruption is not an error.
+			if (this.interrupted)
+			{
+				throw new ExecInteruptedException("Exec has been interrupted.");
 			}
+
+			throw e;
 		}
 	}
 
@@ -413,11 +1585,24 @@ final public class Exec implements Runnable
 	@Override
 	public void run()
 	{
-		ExecMonitor execMonitor = null;
+		ExecMonitor execMonitor	= null;
+		boolean endClaimed		= false;
+
+		this.lastFileTime = System.currentTimeMillis();
 
 		try
 		{
-			Logger.log("Running process: " + this.process.getId());
+			Logger.info("Running process.", "process", this.process.getId(), "attempt", this.attempts);
+
+			if (this.process.isJavaTask())
+			{
+				this.fileTask = this.createFileTask();
+			}
+			else
+			{
+				this.cgroup = ExecCgroup.create(this.process, this.attempts);
+				this.cpuSet	= CpuAllocator.allocate(this.process.getId());
+			}
 
 			// Lets iterate through all files in input directory.
 			File inputDir			= new File(this.process.getInputDirPath());
@@ -428,19 +1613,40 @@ final public class Exec implements Runnable
 			{
 				throw new Exception("Cannot load input dir files (" + inputDir.getAbsolutePath() + ")");
 			}
+
+			// Files are processed in the stable order, so the file numbers are the same after the resume.
+			Arrays.sort(inputDirFiles, Comparator.comparing(File::getName));
+
+			// Checkpoints of the previous (crashed) run.
+			this.processedFiles.addAll(this.manager.getProcessedFiles(this.process));
 			
-			Logger.log("Input files count of process " + this.process.getId() + ": " + inputDirFiles.length);
+			Logger.info("Input files loaded.", "process", this.process.getId(), "count", inputDirFiles.length, "processed", this.processedFiles.size());
 
 			// We will clean the output file only if we'll not skip any input file.
-			if (this.processedFilesCount == 0)
+			if (this.processedFiles.isEmpty())
 			{
 				this.cleanOutputDir(this.process.getOutputDirPath());
+
+				if (this.chainedChild != null)
+				{
+					this.cleanOutputDir(this.chainedChild.getOutputDirPath());
+				}
+			}
+
+			if (this.chainedChild != null)
+			{
+				Logger.log("Process " + this.process.getId() + " is chained with child " + this.chainedChild.getId() + " through named pipes.");
+
+				this.manager.manageChainedProcessStart(this.chainedChild);
 			}
 
 			// Monitoring of the running processes.
-			execMonitor = new ExecMonitor(this);
+			execMonitor			= new ExecMonitor(this);
+			this.execMonitor	= execMonitor;
 			execMonitor.start();
 
+			this.processedFilesCount = 0;
+
 			for (int i = 0; i < inputDirFiles.length; i++)
 			{
 				// Break the cycle if the exec is stopped.
@@ -449,22 +1655,27 @@ final public class Exec implements Runnable
 					break;
 				}
 
-				// If we start the Exec with positive count of processed files,
-				// we will skip those.
-				if (i < this.processedFilesCount)
+				// Files processed before the restart are skipped.
+				if (this.processedFiles.contains(inputDirFiles[i].getName()))
 				{
+					this.processedFilesCount++;
+
 					continue;
 				}
 
 				// Input file must have also input extension.
-				if (inputDirFiles[i].getName().endsWith("." + this.process.getInputExt()))
+				if (inputDirFiles[i].getName().endsWith("." + this.process.getInputExt()) && this.processFileWithRetry(inputDirFiles[i], execMonitor))
 				{
-					execMonitor.reset(inputDirFiles[i]);
+					execMonitor.fileFinished();
 
-					//this.runProcessOnFile(inputDirFiles[i]);
-					this.runProcessOnFileWithTotemProcessBuilder(inputDirFiles[i]);
-					
+					this.processedFiles.add(inputDirFiles[i].getName());
+					this.manager.markFileAsProcessed(this.process, inputDirFiles[i].getName());
+
+					this.lastFileTime = System.currentTimeMillis();
 					this.manager.ping(); // indicates a change
+
+					MetricsRegistry.meter("paralexec_process_files", "Processed input files.", "process", this.process.getId()).mark(1);
+					MetricsRegistry.meter("paralexec_process_bytes", "Processed input bytes.", "process", this.process.getId()).mark(inputDirFiles[i].length());
 				}
 
 				if (this.interrupted)
@@ -478,6 +1689,21 @@ final public class Exec implements Runnable
 			// Closing monitor.
 			execMonitor.stop();
 
+			String incompleteReason = this.getIncompleteReason();
+
+			if (this.isRunning && incompleteReason != null)
+			{
+				if (!PARTIAL_RESULTS)
+				{
+					throw new Exception(incompleteReason);
+				}
+
+				// Checkpoints are kept for the rerun, the children use the partial results.
+				this.error = incompleteReason;
+
+				Logger.warn("Process finished with partial results.", "process", this.process.getId(), "reason", incompleteReason);
+			}
+
 			if (this.isRunning)
 			{
 				Logger.log("Exec for process " + this.process.getId() + " finished.");
@@ -487,12 +1713,15 @@ final public class Exec implements Runnable
 				Logger.log("Exec for process " + this.process.getId() + " has been stopped.");
 			}
 			
-			Logger.log("Process " + this.process.getId() + " children: " + this.getProcessChildrenIds());
+			Logger.debug("Process children.", "process", this.process.getId(), "children", this.getProcessChildrenIds());
 
 			// If we can run children, we'll do it.
-			if (this.manager.isRunning() && this.isRunning)
+			// The end is claimed before the children are released, so the finished Exec cannot be recovered.
+			if (this.manager.isRunning() && this.isRunning && this.markEnded())
 			{
-				Logger.log("Running process " + this.process.getId() + "children.");
+				endClaimed = true;
+
+				Logger.log("Running process " + this.process.getId() + " children.");
 				
 				this.processChildren();
 			}
@@ -506,7 +1735,13 @@ final public class Exec implements Runnable
 		{
 			this.error = e.getMessage();
 
-			Logger.logError("Script " + this.scriptPath + " finished with error: " + e.getMessage() + " (" + Arrays.toString(e.getStackTrace()) + ")");
+			Logger.error("Script finished with error.",
+					"process", this.process.getId(),
+					"script", this.scriptPath,
+					"attempt", this.attempts,
+					"error", e.getMessage(),
+					"trace", Arrays.toString(e.getStackTrace())
+			);
 		}
 		finally
 		{
@@ -515,7 +1750,23 @@ final public class Exec implements Runnable
 				execMonitor.stop();
 			}
 
-			if (this.isRunning)
+			if (this.cgroup != null)
+			{
+				this.cgroup.destroy();
+			}
+
+			if (this.cpuSet != null)
+			{
+				CpuAllocator.release(this.cpuSet);
+			}
+
+			if (endClaimed)
+			{
+				this.isRunning = false;
+
+				this.manager.manageExecEnd(this);
+			}
+			else if (this.isRunning)
 			{
 				this.stop();
 			}
@@ -528,24 +1779,129 @@ final public class Exec implements Runnable
 	 */
 	public void start()
 	{
-		Thread t = new Thread(this);
+		this.thread = new Thread(this);
+
+		this.thread.start();
+	}
+
+
+	/**
+	 * Kills the processing of the current input file (the file is retried).
+	 */
+	public void killCurrentFile()
+	{
+		this.fileKilled = true;
 
-		t.start();
+		// Java task is running in the Exec thread, so we have to interrupt the thread.
+		if (this.fileTask != null && this.thread != null)
+		{
+			this.thread.interrupt();
+		}
 	}
 
 
 	/**
-	 * Restarts the exec.
+	 * Recovers the stalled Exec.
+	 *
+	 * Running processes are killed and the current file is retried by the new Exec,
+	 * processed files are kept. Exec which has already ended (or released its children) is not recovered.
+	 *
+	 * @return FALSE if the Exec has already ended.
 	 */
-	public void restart()
+	public boolean recover()
 	{
+		// The end of the recovered Exec is reported by its clone.
+		if (!this.markEnded())
+		{
+			return false;
+		}
+
 		this.interrupt();
+		this.stopBuilders();
+		this.killProcesses();
+
+		// The old thread must not touch the processed files after the clone is created.
+		if (this.thread != null && this.thread != Thread.currentThread())
+		{
+			try
+			{
+				this.thread.join(RECOVERY_JOIN_TIMEOUT);
+			}
+			catch (InterruptedException e) {}
+
+			if (this.thread.isAlive())
+			{
+				Logger.warn("Recovered Exec thread has not ended.", "process", this.process.getId());
+			}
+		}
 
 		Exec clone = new Exec(this);
 
 		this.manager.manageExecRestart(clone);
 
 		clone.start();
+
+		return true;
+	}
+
+
+	/**
+	 * Ends the stalled Exec with the error (its children are not executed).
+	 *
+	 * @param error
+	 */
+	public void abort(String error)
+	{
+		if (!this.markEnded())
+		{
+			return;
+		}
+
+		this.error = error;
+
+		this.interrupt();
+		this.stopBuilders();
+		this.killProcesses();
+
+		this.manager.manageExecEnd(this);
+	}
+
+
+	/**
+	 * Stops the builders of the current file, so the killed stage does not start the next one.
+	 */
+	private void stopBuilders()
+	{
+		for (TotemProcessBuilder builder : this.builders)
+		{
+			builder.stop();
+		}
+	}
+
+
+	/**
+	 * Kills the running pipeline processes and their descendants.
+	 */
+	private void killProcesses()
+	{
+		this.killProcesses(this.processIds);
+	}
+
+
+	/**
+	 * Kills given pipeline processes and their descendants.
+	 *
+	 * @param processIds
+	 */
+	private void killProcesses(Set<Long> processIds)
+	{
+		for (long pid : processIds)
+		{
+			ProcessHandle.of(pid).ifPresent(handle -> {
+				handle.descendants().forEach(ProcessHandle::destroyForcibly);
+				handle.destroyForcibly();
+			});
+		}
 	}
 
 
@@ -554,12 +1910,33 @@ final public class Exec implements Runnable
 	 */
 	public void stop()
 	{
+		if (!this.markEnded())
+		{
+			return;
+		}
+
 		this.isRunning = false;
 
 		this.manager.manageExecEnd(this);
 	}
 
 
+	/**
+	 * @return FALSE if the end has been already reported.
+	 */
+	private synchronized boolean markEnded()
+	{
+		if (this.ended)
+		{
+			return false;
+		}
+
+		this.ended = true;
+
+		return true;
+	}
+
+
 	/**
 	 * Interrupts the running Exec.
 	 */
@@ -568,6 +1945,12 @@ final public class Exec implements Runnable
 		this.isRunning		= false;
 		this.interrupted	= true;
 
+		// Java task is running in the Exec thread, so we have to interrupt the thread.
+		if (this.fileTask != null && this.thread != null)
+		{
+			this.thread.interrupt();
+		}
+
 		this.manager.manageExecInterruption(this);
 	}
 
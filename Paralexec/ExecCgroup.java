@@ -0,0 +1,571 @@
+package Paralexec;
+
+import Metrics.MetricsRegistry;
+import Process.ProcessSetting;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cgroup v2 of the Exec pipelines.
+ *
+ * Every Exec gets its own cgroup, the spawned programs
+ * join it through the shell wrapper before the exec (so all their descendants are in it too).
+ * Paralexec itself is moved into the "supervisor" leaf of its cgroup, because the cgroup
+ * with the enabled controllers cannot contain the processes.
+ *
+ * OOM kills of the file processing are reported as the file error and the CPU
+ * and memory usage of the cgroup is recorded into the metrics.
+ *
+ * The cgroup counters include the programs which have already exited, so with the accounting
+ * enabled the cgroup is the exact file resource usage (see ExecMonitor) and the Exec without
+ * the limits gets the cgroup too. The I/O is the block I/O of io.stat and the peak
+ * memory is memory.peak of the whole Exec cgroup.
+ *
+ * Cgroup v2 has to be mounted and the Paralexec cgroup has to be delegated
+ * (writable), otherwise the limits are not applied.
+ *
+ * Settings (the process setting values paralexec.cgroup.<process ID>.* override the defaults):
+ *
+ *  - paralexec.cgroup.accounting - cgroup of the Exec without the limits for the resource accounting (default false)
+ *  - paralexec.cgroup.cpuMax - cpu.max of the Exec, e.g. "200000 100000" for 2 CPUs (default none)
+ *  - paralexec.cgroup.memoryMax - memory.max of the Exec, e.g. "4G" (default none)
+ *  - paralexec.cgroup.ioWeight - io.weight of the Exec, 1 - 10000 (default none)
+ *
+ * @author oto
+ */
+final public class ExecCgroup
+{
+	/**
+	 * Cgroup v2 mount point.
+	 */
+	private static Path CGROUP_ROOT = Paths.get("/sys/fs/cgroup");
+
+
+	/**
+	 * Leaf cgroup of the Paralexec process.
+	 */
+	private static String SUPERVISOR_CGROUP = "supervisor";
+
+
+	/**
+	 * Controllers of the limits.
+	 */
+	private static String[] CONTROLLERS = {"cpu", "memory", "io"};
+
+
+	/**
+	 * Cgroup of the Exec without the limits for the resource accounting.
+	 */
+	private static boolean ACCOUNTING = Settings.getBoolean("cgroup.accounting", false);
+
+
+	/**
+	 * Parent cgroup of the Exec cgroups (null if the cgroups are not available).
+	 */
+	private static Path baseDir = null;
+
+
+	/**
+	 * Base cgroup has been already initialized.
+	 */
+	private static boolean initialized = false;
+
+
+	/**
+	 * <process setting ID => memory peak of its last Exec cgroup (bytes)>
+	 */
+	private static Map<Integer, Long> memoryPeaks = new ConcurrentHashMap<>();
+
+
+	/**
+	 * Process setting ID.
+	 */
+	private int processId;
+
+
+	/**
+	 * Cgroup directory.
+	 */
+	private Path dir;
+
+
+	/**
+	 * Memory limit (null if not set).
+	 */
+	private String memoryMax;
+
+
+	/**
+	 * OOM kills count at the file start.
+	 */
+	private long fileStartOomKills = 0;
+
+
+	/**
+	 * CPU usage at the file start (microseconds).
+	 */
+	private long fileStartCpuUsage = 0;
+
+
+	/**
+	 * User CPU usage at the file start (microseconds).
+	 */
+	private long fileStartUserUsage = 0;
+
+
+	/**
+	 * System CPU usage at the file start (microseconds).
+	 */
+	private long fileStartSystemUsage = 0;
+
+
+	/**
+	 * Read bytes at the file start.
+	 */
+	private long fileStartReadBytes = 0;
+
+
+	/**
+	 * Written bytes at the file start.
+	 */
+	private long fileStartWrittenBytes = 0;
+
+
+	/**
+	 * CPU throttled time at the file start (microseconds).
+	 */
+	private long fileStartThrottledTime = 0;
+
+
+	/**
+	 * Current file processing has been killed by the OOM killer.
+	 */
+	private boolean oomKilled = false;
+
+
+	/**
+	 * @param processId
+	 * @param dir
+	 * @param memoryMax
+	 */
+	private ExecCgroup(int processId, Path dir, String memoryMax)
+	{
+		this.processId	= processId;
+		this.dir		= dir;
+		this.memoryMax	= memoryMax;
+	}
+
+
+	/**
+	 * Creates the cgroup of the Exec.
+	 *
+	 * @param	process
+	 * @param	attempt		Exec attempt.
+	 * @return	Exec cgroup (null if the process has no limits without the accounting or the cgroups are not available).
+	 */
+	public static ExecCgroup create(ProcessSetting process, int attempt)
+	{
+		String cpuMax		= getLimit(process, "cpuMax");
+		String memoryMax	= getLimit(process, "memoryMax");
+		String ioWeight		= getLimit(process, "ioWeight");
+
+		if (cpuMax == null && memoryMax == null && ioWeight == null && !ACCOUNTING)
+		{
+			return null;
+		}
+
+		Path base = getBaseDir();
+
+		if (base == null)
+		{
+			return null;
+		}
+
+		Path dir = base.resolve("exec-" + process.getId() + "-" + attempt);
+
+		try
+		{
+			Files.createDirectories(dir);
+
+			if (cpuMax != null)
+			{
+				write(dir.resolve("cpu.max"), cpuMax);
+			}
+
+			if (memoryMax != null)
+			{
+				write(dir.resolve("memory.max"), memoryMax);
+			}
+
+			if (ioWeight != null)
+			{
+				write(dir.resolve("io.weight"), "default " + ioWeight);
+			}
+		}
+		catch (IOException e)
+		{
+			Logger.warn("Cannot create the Exec cgroup. Limits are not applied.", "process", process.getId(), "cgroup", dir, "error", e.getMessage());
+
+			deleteCgroup(dir);
+
+			return null;
+		}
+
+		Logger.info("Exec cgroup created.", "process", process.getId(), "cgroup", dir, "cpuMax", cpuMax, "memoryMax", memoryMax, "ioWeight", ioWeight);
+
+		return new ExecCgroup(process.getId(), dir, memoryMax);
+	}
+
+
+	/**
+	 * @param	process
+	 * @param	name
+	 * @return	Limit of the process setting (null if not set).
+	 */
+	private static String getLimit(ProcessSetting process, String name)
+	{
+		return Settings.getString("cgroup." + process.getId() + "." + name, Settings.getString("cgroup." + name, null));
+	}
+
+
+	/**
+	 * Initializes the base cgroup (once).
+	 *
+	 * @return Parent cgroup of the Exec cgroups (null if the cgroups are not available).
+	 */
+	private static synchronized Path getBaseDir()
+	{
+		if (initialized)
+		{
+			return baseDir;
+		}
+
+		initialized = true;
+
+		try
+		{
+			if (!Files.exists(CGROUP_ROOT.resolve("cgroup.controllers")))
+			{
+				throw new IOException("Cgroup v2 is not mounted on " + CGROUP_ROOT);
+			}
+
+			Path base = getOwnCgroup();
+
+			// Paralexec has to leave the cgroup with the enabled controllers.
+			if (!base.equals(CGROUP_ROOT))
+			{
+				Path supervisor = base.resolve(SUPERVISOR_CGROUP);
+
+				Files.createDirectories(supervisor);
+
+				write(supervisor.resolve("cgroup.procs"), Long.toString(ProcessHandle.current().pid()));
+			}
+
+			String controllers = read(base.resolve("cgroup.controllers"));
+
+			for (String controller : CONTROLLERS)
+			{
+				if (Arrays.asList(controllers.split("\\s+")).contains(controller))
+				{
+					write(base.resolve("cgroup.subtree_control"), "+" + controller);
+				}
+				else
+				{
+					Logger.warn("Cgroup controller is not available.", "controller", controller, "cgroup", base);
+				}
+			}
+
+			baseDir = base;
+
+			Logger.info("Exec cgroups enabled.", "cgroup", base);
+		}
+		catch (IOException e)
+		{
+			Logger.warn("Cgroups are not available. Exec limits and accounting are not applied.", "error", e.getMessage());
+		}
+
+		return baseDir;
+	}
+
+
+	/**
+	 * @return	Cgroup of the Paralexec process.
+	 * @throws	IOException
+	 */
+	private static Path getOwnCgroup() throws IOException
+	{
+		List<String> lines = Files.readAllLines(Paths.get("/proc/self/cgroup"), StandardCharsets.UTF_8);
+
+		for (String line : lines)
+		{
+			// Cgroup v2 line: 0::/path
+			if (line.startsWith("0::"))
+			{
+				Path cgroup = CGROUP_ROOT.resolve(line.substring(4)).normalize();
+
+				// Paralexec restarted inside its own supervisor leaf.
+				if (cgroup.getFileName() != null && cgroup.getFileName().toString().equals(SUPERVISOR_CGROUP))
+				{
+					cgroup = cgroup.getParent();
+				}
+
+				return cgroup;
+			}
+		}
+
+		throw new IOException("Cgroup v2 of the Paralexec process not found.");
+	}
+
+
+	/**
+	 * @return Command prefix joining the cgroup before the program exec.
+	 */
+	public String[] getCommandPrefix()
+	{
+		String procsPath = this.dir.resolve("cgroup.procs").toString().replace("'", "'\\''");
+
+		return new String[] {"sh", "-c", "echo $$ > '" + procsPath + "' && exec \"$@\"", "paralexec-cgroup"};
+	}
+
+
+	/**
+	 * Takes the cgroup counters at the file start.
+	 */
+	public void fileStarted()
+	{
+		this.fileStartOomKills		= this.readKeyValue("memory.events", "oom_kill");
+		this.fileStartCpuUsage		= this.readKeyValue("cpu.stat", "usage_usec");
+		this.fileStartUserUsage		= this.readKeyValue("cpu.stat", "user_usec");
+		this.fileStartSystemUsage	= this.readKeyValue("cpu.stat", "system_usec");
+		this.fileStartReadBytes		= this.readIoBytes("rbytes");
+		this.fileStartWrittenBytes	= this.readIoBytes("wbytes");
+		this.fileStartThrottledTime	= this.readKeyValue("cpu.stat", "throttled_usec");
+		this.oomKilled				= false;
+	}
+
+
+	/**
+	 * Records the cgroup usage of the file and checks the OOM kills.
+	 */
+	public void fileFinished()
+	{
+		long oomKills		= this.readKeyValue("memory.events", "oom_kill") - this.fileStartOomKills;
+		long cpuUsage		= this.readKeyValue("cpu.stat", "usage_usec") - this.fileStartCpuUsage;
+		long throttledTime	= this.readKeyValue("cpu.stat", "throttled_usec") - this.fileStartThrottledTime;
+
+		MetricsRegistry.histogram("paralexec_cgroup_cpu_seconds", "CPU time of the file in the Exec cgroup.", "process", this.processId).observe(Math.max(0, cpuUsage) / 1e6);
+
+		if (throttledTime > 0)
+		{
+			MetricsRegistry.counter("paralexec_cgroup_throttled_microseconds", "CPU throttled time of the Exec cgroup (cpu.max).", "process", this.processId).add(throttledTime);
+		}
+
+		long memoryPeak	= this.readValue("memory.peak");
+		int processId	= this.processId;
+
+		if (memoryPeak > 0)
+		{
+			memoryPeaks.put(processId, memoryPeak);
+
+			MetricsRegistry.gauge("paralexec_cgroup_memory_peak_bytes", "Memory peak of the last Exec cgroup.", () -> memoryPeaks.get(processId), "process", processId);
+		}
+
+		if (oomKills > 0)
+		{
+			this.oomKilled = true;
+
+			MetricsRegistry.counter("paralexec_cgroup_oom_kills", "Programs killed by the OOM killer in the Exec cgroup.", "process", this.processId).add(oomKills);
+		}
+	}
+
+
+	/**
+	 * @return TRUE if the cgroups are the source of the file resource usage.
+	 */
+	public static boolean isAccountingEnabled()
+	{
+		return ACCOUNTING;
+	}
+
+
+	/**
+	 * @param	wallTime	File wall time (in seconds).
+	 * @return	Resource usage of the file since the file start (including the exited programs).
+	 */
+	public FileResourceUsage getFileResourceUsage(double wallTime)
+	{
+		return new FileResourceUsage(
+				wallTime,
+				Math.max(0, this.readKeyValue("cpu.stat", "user_usec") - this.fileStartUserUsage) / 1e6,
+				Math.max(0, this.readKeyValue("cpu.stat", "system_usec") - this.fileStartSystemUsage) / 1e6,
+				this.readValue("memory.peak") / 1024,
+				Math.max(0, this.readIoBytes("rbytes") - this.fileStartReadBytes),
+				Math.max(0, this.readIoBytes("wbytes") - this.fileStartWrittenBytes)
+		);
+	}
+
+
+	/**
+	 * @return TRUE if the current file processing has been killed by the OOM killer.
+	 */
+	public boolean isOomKilled()
+	{
+		return this.oomKilled;
+	}
+
+
+	/**
+	 * @return Memory limit (null if not set).
+	 */
+	public String getMemoryMax()
+	{
+		return this.memoryMax;
+	}
+
+
+	/**
+	 * Kills the remaining processes and removes the cgroup.
+	 */
+	public void destroy()
+	{
+		Path killPath = this.dir.resolve("cgroup.kill");
+
+		if (Files.exists(killPath))
+		{
+			try
+			{
+				write(killPath, "1");
+			}
+			catch (IOException e) {}
+		}
+
+		deleteCgroup(this.dir);
+	}
+
+
+	/**
+	 * Removes the cgroup (it has to be empty).
+	 *
+	 * @param dir
+	 */
+	private static void deleteCgroup(Path dir)
+	{
+		// Killed processes leave the cgroup asynchronously.
+		for (int i = 0; i < 10; i++)
+		{
+			try
+			{
+				Files.deleteIfExists(dir);
+
+				return;
+			}
+			catch (IOException e)
+			{
+				try
+				{
+					Thread.sleep(100);
+				}
+				catch (InterruptedException ie) {}
+			}
+		}
+
+		Logger.warn("Cannot remove the Exec cgroup.", "cgroup", dir);
+	}
+
+
+	/**
+	 * @param	fileName	Flat keyed file of the cgroup (e.g. cpu.stat).
+	 * @param	key
+	 * @return	Value of the key (0 if not available).
+	 */
+	private long readKeyValue(String fileName, String key)
+	{
+		try
+		{
+			for (String line : Files.readAllLines(this.dir.resolve(fileName), StandardCharsets.UTF_8))
+			{
+				if (line.startsWith(key + " "))
+				{
+					return Long.parseLong(line.substring(key.length() + 1).trim());
+				}
+			}
+		}
+		catch (IOException | NumberFormatException e) {}
+
+		return 0;
+	}
+
+
+	/**
+	 * @param	key		Key of io.stat (rbytes or wbytes).
+	 * @return	Bytes of all devices (0 if not available).
+	 */
+	private long readIoBytes(String key)
+	{
+		long bytes = 0;
+
+		try
+		{
+			// Device line: 8:0 rbytes=1 wbytes=2 rios=3 wios=4 ...
+			for (String line : Files.readAllLines(this.dir.resolve("io.stat"), StandardCharsets.UTF_8))
+			{
+				for (String field : line.split(" "))
+				{
+					if (field.startsWith(key + "="))
+					{
+						bytes += Long.parseLong(field.substring(key.length() + 1));
+					}
+				}
+			}
+		}
+		catch (IOException | NumberFormatException e) {}
+
+		return bytes;
+	}
+
+
+	/**
+	 * @param	fileName	Single value file of the cgroup (e.g. memory.peak).
+	 * @return	Value (0 if not available).
+	 */
+	private long readValue(String fileName)
+	{
+		try
+		{
+			return Long.parseLong(read(this.dir.resolve(fileName)));
+		}
+		catch (IOException | NumberFormatException e)
+		{
+			return 0;
+		}
+	}
+
+
+	/**
+	 * @param	path
+	 * @return	Trimmed file content.
+	 * @throws	IOException
+	 */
+	private static String read(Path path) throws IOException
+	{
+		return new String(Files.readAllBytes(path), StandardCharsets.UTF_8).trim();
+	}
+
+
+	/**
+	 * @param	path	Cgroup interface file.
+	 * @param	value
+	 * @throws	IOException
+	 */
+	private static void write(Path path, String value) throws IOException
+	{
+		Files.write(path, value.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -1,34 +1,47 @@
 package Paralexec;
 
+import Metrics.MetricsRegistry;
 import java.io.File;
 
 /**
  * Exec monitor is monitoring the Exec activity.
  *
- * It will restart the Exec if it's not working.
+ * It will kill the current file processing if it's not working
+ * (the Exec retries the file, see Exec).
+ *
+ * The file is allowed to run up to the runtime model bound at the configured
+ * confidence (times the margin). Over that bound the file is killed only
+ * if it has no progress (no CPU or I/O of the running processes and no output growth) for the hang timeout - slow files
+ * which are still progressing are not killed, up to the hard limit.
+ *
+ * With the speculation the file running over the lower runtime bound (the straggler)
+ * gets the backup run in the idle thread slot, the first finished run wins (see Exec).
+ *
+ * Settings:
+ *
+ *  - paralexec.speculation - backup runs of the straggler files (default false)
+ *  - paralexec.speculation.confidence - confidence of the straggler runtime bound (default 0.9)
+ *  - paralexec.stall.confidence - confidence of the runtime bound (default 0.99)
+ *  - paralexec.stall.margin - multiple of the runtime bound (default 2)
+ *  - paralexec.stall.minTime - minimal allowed running time in seconds (default 30)
+ *  - paralexec.stall.hardLimitMultiple - multiple of the bound killing even progressing files (default 10)
  *
  * @author oto
  */
 final public class ExecMonitor implements Runnable
 {
-	/**
-	 * Maximum attempts.
-	 *
-	 * No restart after that.
-	 */
-	private static int MAX_ATTEMPTS_COUNT = 3;
-
-
 	/**
 	 * Maximum presumed finish time (in seconds).
+	 *
+	 * Used until the runtime model has enough observations.
 	 */
 	private static int MAX_PRESUMED_FINISH_TIME = 60 * 60 * 1; // 1 hour
 	
 	
 	/**
-	 * Minimal allowed running time without output file change.
+	 * Minimal allowed running time without output file change (in seconds).
 	 */
-	private static int MINIMAL_ALLOWED_RUNNING_TIME = 30; // 30 seconds
+	private static long MINIMAL_ALLOWED_RUNNING_TIME = Settings.getLong("stall.minTime", 30);
 
 
 	/**
@@ -38,9 +51,45 @@ final public class ExecMonitor implements Runnable
 
 
 	/**
-	 * File rate reserve multiple.
+	 * Minimal number of the model observations for the runtime bound.
+	 */
+	private static int MIN_MODEL_OBSERVATIONS = 5;
+
+
+	/**
+	 * Confidence of the runtime bound.
+	 */
+	private static double CONFIDENCE = Math.min(0.999, Math.max(0.5, Settings.getDouble("stall.confidence", 0.99)));
+
+
+	/**
+	 * Multiple of the runtime bound.
 	 */
-	private static int FILE_RATE_RESERVE_MULTIPLE = 3;
+	private static double MARGIN = Settings.getDouble("stall.margin", 2);
+
+
+	/**
+	 * Part of the presumed finish time allowed without progress after the bound is crossed.
+	 */
+	private static double HANG_TIMEOUT_FRACTION = 0.25;
+
+
+	/**
+	 * Multiple of the presumed finish time killing the Exec regardless of the progress.
+	 */
+	private static double HARD_LIMIT_MULTIPLE = Settings.getDouble("stall.hardLimitMultiple", 10);
+
+
+	/**
+	 * Backup runs of the straggler files.
+	 */
+	private static boolean SPECULATION = Settings.getBoolean("speculation", false);
+
+
+	/**
+	 * Confidence of the straggler runtime bound.
+	 */
+	private static double SPECULATION_CONFIDENCE = Math.min(0.999, Math.max(0.5, Settings.getDouble("speculation.confidence", 0.9)));
 
 
 	/**
@@ -70,9 +119,9 @@ final public class ExecMonitor implements Runnable
 
 
 	/**
-	 * Exec current processing input file size (in KB).
+	 * Exec current processing input file size (in KB, fractional, so the small files are not zero).
 	 */
-	private long monitoredFileSize = 0;
+	private double monitoredFileSize = 0;
 
 
 	/**
@@ -81,12 +130,54 @@ final public class ExecMonitor implements Runnable
 	private long presumedMaxFinishedTime = MAX_PRESUMED_FINISH_TIME;
 
 
+	/**
+	 * Running time of the straggler file (in seconds, 0 = unknown).
+	 */
+	private long stragglerTime = 0;
+
+
+	/**
+	 * Backup run of the current file has been already requested.
+	 */
+	private boolean backupRequested = false;
+
+
+	/**
+	 * Time of the last Exec progress.
+	 */
+	private volatile long lastProgressTime;
+
+
+	/**
+	 * Slow file has been already reported.
+	 */
+	private boolean slowFileReported = false;
+
+
+	/**
+	 * Current file has been already killed.
+	 */
+	private volatile boolean fileKilled = false;
+
+
+	/**
+	 * Running processes activity monitor (null if /proc is not available).
+	 */
+	private ProcessActivityMonitor processActivityMonitor = null;
+
+
 	/**
 	 * Exec output directory monitor.
 	 */
 	private DirectoryMonitor outputDirectoryMonitor;
 
 
+	/**
+	 * Chained child output directory monitor (null if the Exec has no chained child).
+	 */
+	private DirectoryMonitor chainedOutputDirectoryMonitor = null;
+
+
 	/**
 	 * Constructor - getting Exec and resetting the state.
 	 *
@@ -99,47 +190,85 @@ final public class ExecMonitor implements Runnable
 				new File(this.exec.getProcess().getOutputDirPath())
 		);
 		this.startTime				= System.currentTimeMillis();
+		this.lastProgressTime		= this.startTime;
+
+		if (ProcessActivityMonitor.isAvailable())
+		{
+			this.processActivityMonitor = new ProcessActivityMonitor(this.exec.getProcessIds());
+		}
+
+		// Intermediate files of the chained Exec are named pipes, so the progress is visible in the child output.
+		if (this.exec.getChainedChild() != null)
+		{
+			this.chainedOutputDirectoryMonitor = new DirectoryMonitor(
+					new File(this.exec.getChainedChild().getOutputDirPath())
+			);
+		}
 	}
 
 
 	@Override
 	public void run()
 	{
-		// We will not block the exec which across the maximum number of attempts.
-		if (this.exec.getAttemptsCount() <= MAX_ATTEMPTS_COUNT)
+		while (this.isRunning())
 		{
-			while (this.isRunning())
+			try
 			{
-				try
-				{
-					Thread.sleep(LOOP_TIMEOUT);
-				}
-				catch (InterruptedException e) {}
+				Thread.sleep(LOOP_TIMEOUT);
+			}
+			catch (InterruptedException e) {}
 
-				// If data are changing, we ceep continue.
-				if (this.outputDirectoryMonitor.hasDirectoryChanged())
-				{
-					continue;
-				}
+			// If data are changing, the Exec is progressing.
+			if (this.hasProgressed())
+			{
+				this.lastProgressTime = System.currentTimeMillis();
+			}
 
-				// Restart the Exec if it's stucked.
-				if (this.isExecOverTime())
-				{
-					Logger.log("Process setting " + this.getProcessSettingId() + " is stucked. Paralexec is restarting it.");
+			// Kill the file processing if it's stucked, the Exec retries the file.
+			if (!this.fileKilled && this.isExecStalled())
+			{
+				Logger.warn("File processing is stucked. Paralexec is killing it.",
+						"process", this.getProcessSettingId(),
+						"file", this.monitoredFile != null ? this.monitoredFile.getName() : "",
+						"fileAttempt", this.exec.getFileAttemptsCount(),
+						"duration", this.getRunningTime(),
+						"idle", this.getIdleTime(),
+						"presumedFinishTime", this.presumedMaxFinishedTime
+				);
 
-					this.exec.restart();
+				MetricsRegistry.counter("paralexec_file_kills", "Stucked file attempts killed by ExecMonitor.").increment();
 
-					break;
-				}
+				this.fileKilled = true;
+
+				this.exec.killCurrentFile();
+			}
+			// Straggler gets the backup run.
+			else if (!this.fileKilled && !this.backupRequested && this.isFileStraggling())
+			{
+				Logger.info("File is straggling. Requesting the backup run.",
+						"process", this.getProcessSettingId(),
+						"file", this.monitoredFile != null ? this.monitoredFile.getName() : "",
+						"duration", this.getRunningTime(),
+						"stragglerTime", this.stragglerTime
+				);
+
+				this.backupRequested = true;
+
+				this.exec.requestBackupRun();
 			}
-		}
-		else
-		{
-			Logger.log("Process " + this.exec.getProcess().getId() + " accrossed maximum number of restarts (" + MAX_ATTEMPTS_COUNT + ").");
 		}
 	}
 
 
+	/**
+	 * @return Time of the last Exec progress (miliseconds).
+	 */
+	public long getLastProgressTime()
+	{
+		return this.lastProgressTime;
+	}
+
+
 	/**
 	 * @return Exec process setting ID.
 	 */
@@ -150,22 +279,105 @@ final public class ExecMonitor implements Runnable
 
 
 	/**
-	 * Checks if the Exec is processing the current file over maximum allowed time.
+	 * @return Runtime model key of the Exec process setting (script path).
+	 */
+	private String getModelKey()
+	{
+		return this.exec.getProcess().getScriptPath();
+	}
+
+
+	/**
+	 * Checks the Exec progress.
+	 *
+	 * The cheap /proc sample of the running processes goes first,
+	 * the output directories are listed only if the processes are idle.
+	 *
+	 * @return TRUE if the processes are active or any monitored output has changed since the last check.
+	 */
+	private boolean hasProgressed()
+	{
+		if (this.processActivityMonitor != null && this.processActivityMonitor.hasProcessActivity())
+		{
+			return true;
+		}
+
+		boolean progressed = this.outputDirectoryMonitor.hasDirectoryChanged();
+
+		// Intermediate files of the chained Exec are named pipes, so the progress is visible in the child output.
+		if (this.chainedOutputDirectoryMonitor != null && this.chainedOutputDirectoryMonitor.hasDirectoryChanged())
+		{
+			progressed = true;
+		}
+
+		return progressed;
+	}
+
+
+	/**
+	 * Checks if the Exec is stalled on the current file.
+	 *
+	 * It's over the presumed finish time and it has no progress for the hang timeout,
+	 * or it's over the hard limit.
 	 *
 	 * @return
 	 */
-	private Boolean isExecOverTime()
+	private Boolean isExecStalled()
 	{
+		long runningTime = this.getRunningTime();
+
 		// The script can run at least for the minimal allowed running time.
-		if (this.getRunningTime() < MINIMAL_ALLOWED_RUNNING_TIME)
+		if (runningTime < MINIMAL_ALLOWED_RUNNING_TIME || runningTime <= this.presumedMaxFinishedTime)
 		{
 			return false;
 		}
 
-		//Logger.log("checking running time: " + this.getRunningTime() + " > " + this.presumedMaxFinishedTime);
+		if (runningTime > this.presumedMaxFinishedTime * HARD_LIMIT_MULTIPLE)
+		{
+			return true;
+		}
 
-		// Return TRUE if the running funning time is bigger then presumed finish time.
-		return this.getRunningTime() > this.presumedMaxFinishedTime;
+		long hangTimeout = Math.max(MINIMAL_ALLOWED_RUNNING_TIME, (long) (this.presumedMaxFinishedTime * HANG_TIMEOUT_FRACTION));
+
+		if (this.getIdleTime() > hangTimeout)
+		{
+			return true;
+		}
+
+		if (!this.slowFileReported)
+		{
+			this.slowFileReported = true;
+
+			Logger.info("Process setting is slow but progressing.",
+					"process", this.getProcessSettingId(),
+					"file", this.monitoredFile != null ? this.monitoredFile.getName() : "",
+					"duration", runningTime,
+					"presumedFinishTime", this.presumedMaxFinishedTime
+			);
+		}
+
+		return false;
+	}
+
+
+	/**
+	 * @return TRUE if the current file is running over the straggler runtime bound.
+	 */
+	private boolean isFileStraggling()
+	{
+		return SPECULATION
+				&& this.stragglerTime > 0
+				&& this.getRunningTime() > this.stragglerTime
+				&& this.exec.canRunBackup();
+	}
+
+
+	/**
+	 * @return Time without progress in seconds.
+	 */
+	private long getIdleTime()
+	{
+		return (System.currentTimeMillis() - this.lastProgressTime) / 1000;
 	}
 
 
@@ -185,7 +397,16 @@ final public class ExecMonitor implements Runnable
 	 */
 	private void resetTime()
 	{
-		this.startTime = System.currentTimeMillis();
+		this.startTime			= System.currentTimeMillis();
+		this.lastProgressTime	= this.startTime;
+		this.slowFileReported	= false;
+		this.fileKilled			= false;
+		this.backupRequested	= false;
+
+		if (this.processActivityMonitor != null)
+		{
+			this.processActivityMonitor.reset();
+		}
 	}
 
 
@@ -203,25 +424,52 @@ final public class ExecMonitor implements Runnable
 	 */
 	private long getPresumedFinishTime()
 	{
-		if (ExecStatistics.isProcessRegistered(this.getProcessSettingId()))
+		try
 		{
-			try
+			ProcessStatistics statistics = ExecStatistics.getProcessStatistics(this.getModelKey());
+
+			if (statistics.getCount() >= MIN_MODEL_OBSERVATIONS)
 			{
-				double fileAvarageRate	= ExecStatistics.getProcessFileAvarageRate(this.getProcessSettingId());
-				long fileRate			= (long) Math.ceil(fileAvarageRate * FILE_RATE_RESERVE_MULTIPLE);
-				long finishTime			= fileRate * this.monitoredFileSize;
+				double bound	= statistics.getRunningTimeUpperBound(this.monitoredFileSize, CONFIDENCE);
+				long finishTime	= Math.max(MINIMAL_ALLOWED_RUNNING_TIME, (long) Math.ceil(bound * MARGIN));
 
-				Logger.log("Calculated finish time for process setting " + this.getProcessSettingId() + " is " + finishTime);
+				if (Logger.isDebugEnabled())
+				{
+					Logger.debug("Presumed finish time calculated.", "process", this.getProcessSettingId(), "finishTime", finishTime);
+				}
 
 				return finishTime;
 			}
-			catch (ExecStatisticsException e) {}
 		}
+		catch (ExecStatisticsException e) {}
 
 		return MAX_PRESUMED_FINISH_TIME;
 	}
 
 
+	/**
+	 * @return Straggler running time of the current file (in seconds, 0 = unknown).
+	 */
+	private long getStragglerTime()
+	{
+		try
+		{
+			ProcessStatistics statistics = ExecStatistics.getProcessStatistics(this.getModelKey());
+
+			// Without the model we do not know the normal running time.
+			if (statistics.getCount() >= MIN_MODEL_OBSERVATIONS)
+			{
+				double bound = statistics.getRunningTimeUpperBound(this.monitoredFileSize, SPECULATION_CONFIDENCE);
+
+				return Math.max(MINIMAL_ALLOWED_RUNNING_TIME, (long) Math.ceil(bound));
+			}
+		}
+		catch (ExecStatisticsException e) {}
+
+		return 0;
+	}
+
+
 	/**
 	 * Resets the state and sets new Exec current file.
 	 *
@@ -230,35 +478,81 @@ final public class ExecMonitor implements Runnable
 	 */
 	public void reset(File newMonitoredFile) throws ExecMonitorException
 	{
-		// If this is not first reset then save the last completed file rate.
-		if (this.monitoredFile != null && this.monitoredFileSize > 0)
-		{
-			Logger.log("last monitored file size = " + this.monitoredFileSize);
-			
-			double runningTime	= this.getRunningTime();
-			double fileRate		= runningTime / this.monitoredFileSize;
+		this.monitoredFile		= newMonitoredFile;
+		long fileSize			= newMonitoredFile.length();
+		this.monitoredFileSize	= fileSize / 1024.0;
 
-			Logger.log("Adding process setting " + this.getProcessSettingId()
-					+ " file rate: " + fileRate
-					+ " (running time: " + runningTime + ", file size: " + this.monitoredFileSize + ")");
+		// Runtime model does not cover the empty file, its running time is not known.
+		if (fileSize == 0)
+		{
+			Logger.warn("Monitored Exec input file is empty.", "process", this.getProcessSettingId(), "file", newMonitoredFile.getAbsolutePath());
 
-			ExecStatistics.addProcessFileRate(this.getProcessSettingId(), fileRate);
+			this.presumedMaxFinishedTime	= MAX_PRESUMED_FINISH_TIME;
+			this.stragglerTime				= 0;
+		}
+		else
+		{
+			this.presumedMaxFinishedTime	= this.getPresumedFinishTime();
+			this.stragglerTime				= SPECULATION ? this.getStragglerTime() : 0;
 		}
 
-		this.monitoredFile	= newMonitoredFile;
-		long fileSize		= newMonitoredFile.length() / 1024;
+		this.resetTime();
+	}
 
-		if (fileSize == 0)
+
+	/**
+	 * Records the resource usage of the successfully processed current file.
+	 *
+	 * With the cgroup accounting (see ExecCgroup) the Exec cgroup counts also the programs
+	 * which have exited between the /proc samples, otherwise the process activity monitor is used.
+	 *
+	 * @return File resource usage.
+	 */
+	public FileResourceUsage fileFinished()
+	{
+		double wallTime			= (System.currentTimeMillis() - this.startTime) / 1000.0;
+		ExecCgroup cgroup		= this.exec.getCgroup();
+		FileResourceUsage usage;
+
+		if (cgroup != null && ExecCgroup.isAccountingEnabled())
 		{
-			Logger.logError("Monitored Exec input file " + newMonitoredFile.getAbsolutePath() + " is empty.");
+			usage = cgroup.getFileResourceUsage(wallTime);
+		}
+		else if (this.processActivityMonitor != null)
+		{
+			usage = this.processActivityMonitor.getResourceUsage(wallTime);
 		}
 		else
 		{
-			this.monitoredFileSize			= fileSize;
-			this.presumedMaxFinishedTime	= this.getPresumedFinishTime();
+			usage = new FileResourceUsage(wallTime, 0, 0, 0, 0, 0);
 		}
 
-		this.resetTime();
+		if (Logger.isDebugEnabled())
+		{
+			Logger.debug("File resources measured.",
+					"process", this.getProcessSettingId(),
+					"file", this.monitoredFile != null ? this.monitoredFile.getName() : "",
+					"attempt", this.exec.getAttemptsCount(),
+					"duration", wallTime,
+					"sizeKB", this.monitoredFileSize,
+					"userCpu", usage.getUserCpuTime(),
+					"systemCpu", usage.getSystemCpuTime(),
+					"peakRssKB", usage.getPeakRss(),
+					"readBytes", usage.getReadBytes(),
+					"writtenBytes", usage.getWrittenBytes()
+			);
+		}
+
+		MetricsRegistry.histogram("paralexec_file_cpu_seconds", "CPU time of the processed file.", "process", this.getProcessSettingId()).observe(usage.getCpuTime());
+		MetricsRegistry.meter("paralexec_process_io_bytes", "Bytes read and written by the pipeline.", "process", this.getProcessSettingId(), "direction", "read").mark(usage.getReadBytes());
+		MetricsRegistry.meter("paralexec_process_io_bytes", "Bytes read and written by the pipeline.", "process", this.getProcessSettingId(), "direction", "write").mark(usage.getWrittenBytes());
+
+		if (this.monitoredFileSize > 0)
+		{
+			ExecStatistics.addProcessFile(this.getModelKey(), usage, this.monitoredFileSize);
+		}
+
+		return usage;
 	}
 
 
@@ -267,9 +561,14 @@ final public class ExecMonitor implements Runnable
 	 */
 	public void stop()
 	{
+		if (!this.isRunning)
+		{
+			return;
+		}
+
 		this.isRunning = false;
 
-		ExecStatistics.deleteProcess(this.getProcessSettingId());
+		ExecStatistics.saveProcess(this.getModelKey());
 	}
 
 
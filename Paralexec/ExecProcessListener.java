@@ -0,0 +1,70 @@
+package Paralexec;
+
+import Metrics.MetricsRegistry;
+import TotemProcessBuilder.TotemProcess;
+import TotemProcessBuilder.TotemProcessListener;
+import java.io.File;
+import java.util.Set;
+
+/**
+ * Listener of the processes spawned by the Exec.
+ *
+ * It records the spawn latency and the stage runtime metrics
+ * and keeps the set of the running OS process IDs.
+ *
+ * @author oto
+ */
+final public class ExecProcessListener implements TotemProcessListener
+{
+	/**
+	 * Process setting ID.
+	 */
+	private int processSettingId;
+
+
+	/**
+	 * Running OS process IDs (shared with the Exec).
+	 */
+	private Set<Long> processIds;
+
+
+	/**
+	 * @param processSettingId
+	 * @param processIds		Set of the running OS process IDs to maintain.
+	 */
+	public ExecProcessListener(int processSettingId, Set<Long> processIds)
+	{
+		this.processSettingId	= processSettingId;
+		this.processIds			= processIds;
+	}
+
+
+	@Override
+	public void processStarted(TotemProcess process, long spawnTime)
+	{
+		MetricsRegistry.histogram("paralexec_spawn_seconds", "Process spawn latency.").observeNanos(spawnTime);
+
+		if (process.getPid() > 0)
+		{
+			this.processIds.add(process.getPid());
+		}
+	}
+
+
+	@Override
+	public void processFinished(TotemProcess process, long runTime)
+	{
+		this.processIds.remove(process.getPid());
+
+		MetricsRegistry.histogram(
+				"paralexec_stage_seconds",
+				"Runtime of the pipeline stage.",
+				"program", new File(process.getCommand()[0]).getName()
+		).observeNanos(runTime);
+
+		if (Logger.isDebugEnabled())
+		{
+			Logger.debug("Stage finished.", "process", this.processSettingId, "program", process.getCommand()[0], "duration", runTime / 1e9);
+		}
+	}
+}
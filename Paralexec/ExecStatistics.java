@@ -1,99 +1,159 @@
 package Paralexec;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import Database.DatabaseException;
+import Database.ModelStore;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Runtime statistics of the process settings.
+ *
+ * Models are kept per script (process settings of the different runs
+ * share the script), they are loaded at the start and saved after every Exec,
+ * so the history is not lost between the runs.
+ *
+ * It's updated concurrently from the ExecMonitor threads.
  *
  * @author oto
  */
 final public class ExecStatistics
 {
 	/**
-	 * <ProcessSettingId => <file1runRate, file2runRate, ...>>
+	 * <ModelKey (script path) => runtime model>
+	 */
+	private static Map<String, ProcessStatistics> statistics = new ConcurrentHashMap<>();
+
+
+	/**
+	 * Models storage (null = no persistence).
 	 */
-	private static Map<Integer, List> statistics = new HashMap<>();
+	private static ModelStore storage = null;
+
+
+	/**
+	 * Loads the models from given storage and keeps it for saving.
+	 *
+	 * @param modelStore
+	 */
+	public static void load(ModelStore modelStore)
+	{
+		storage = modelStore;
+
+		try
+		{
+			storage.initialize();
+
+			for (Map.Entry<String, String> model : storage.getModels().entrySet())
+			{
+				try
+				{
+					statistics.put(model.getKey(), ProcessStatistics.deserialize(model.getValue()));
+				}
+				catch (IllegalArgumentException e)
+				{
+					Logger.warn("Invalid process statistics model skipped.", "model", model.getKey());
+				}
+			}
+
+			Logger.info("Process statistics loaded.", "models", statistics.size());
+		}
+		catch (DatabaseException e)
+		{
+			Logger.logError("Cannot load process statistics: " + e.getMessage());
+		}
+	}
 
 
 	/**
 	 * Checks if give process setting is registered in statistics.
 	 *
-	 * @param processSettingId
+	 * @param modelKey
 	 * @return
 	 */
-	public static Boolean isProcessRegistered(int processSettingId)
+	public static Boolean isProcessRegistered(String modelKey)
 	{
-		return statistics.containsKey(processSettingId);
+		return statistics.containsKey(modelKey);
 	}
 
 
 	/**
-	 * Adds new process setting file rate.
+	 * Adds new processed file of the process setting with the resource usage.
 	 *
-	 * @param processSettingId
-	 * @param fileRate
+	 * @param modelKey
+	 * @param usage		File resource usage.
+	 * @param fileSize	File size (in KB).
 	 */
-	public static void addProcessFileRate(int processSettingId, double fileRate)
+	public static void addProcessFile(String modelKey, FileResourceUsage usage, double fileSize)
 	{
-		Logger.log("registering process setting " + processSettingId + " into the statistics");
-
-		if (!isProcessRegistered(processSettingId))
+		if (Logger.isDebugEnabled())
 		{
-			List<Double> fileRates = new ArrayList<>();
+			Logger.debug("Registering process file rate.", "model", modelKey, "rate", usage.getWallTime() / fileSize);
+		}
 
-			fileRates.add(fileRate);
+		statistics.computeIfAbsent(modelKey, key -> new ProcessStatistics()).addObservation(usage, fileSize);
+	}
 
-			statistics.put(processSettingId, fileRates);
-		}
-		else
-		{
-			statistics.get(processSettingId).add(fileRate);
-		}
+
+	/**
+	 * @param	modelKey
+	 * @return	Process setting runtime model (null if not registered).
+	 */
+	public static ProcessStatistics findProcessStatistics(String modelKey)
+	{
+		return statistics.get(modelKey);
 	}
 
 
 	/**
-	 * @param	processSettingId
-	 * @return	Process setting file average rate.
+	 * @param	modelKey
+	 * @return	Process setting runtime model.
 	 * @throws	ExecStatisticsException
 	 */
-	public static double getProcessFileAvarageRate(int processSettingId) throws ExecStatisticsException
+	public static ProcessStatistics getProcessStatistics(String modelKey) throws ExecStatisticsException
 	{
-		if (!isProcessRegistered(processSettingId))
-		{
-			throw new ExecStatisticsException("Cannot get file avarage rate from non-existing process.");
-		}
-
-		int i				= 0;
-		double avarageRate	= 0;
+		ProcessStatistics processStatistics = statistics.get(modelKey);
 
-		for (Object rate : statistics.get(processSettingId))
+		if (processStatistics == null || processStatistics.getCount() == 0)
 		{
-			avarageRate += (Double) rate;
-			i++;
+			throw new ExecStatisticsException("Cannot get statistics of non-existing process.");
 		}
 
-		if (i == 0)
-		{
-			throw new ExecStatisticsException("Cannot get file avarage from empty avarages list.");
-		}
+		return processStatistics;
+	}
 
-		return avarageRate / i;
+
+	/**
+	 * @param	modelKey
+	 * @return	Process setting file average rate (EWMA).
+	 * @throws	ExecStatisticsException
+	 */
+	public static double getProcessFileAvarageRate(String modelKey) throws ExecStatisticsException
+	{
+		return getProcessStatistics(modelKey).getEwmaRate();
 	}
 
 
 	/**
-	 * Deletes given process setting from the statistics.
+	 * Saves the model into the storage.
 	 *
-	 * @param processSettingId
+	 * @param modelKey
 	 */
-	public static void deleteProcess(int processSettingId)
+	public static void saveProcess(String modelKey)
 	{
-		if (isProcessRegistered(processSettingId))
+		ProcessStatistics processStatistics = statistics.get(modelKey);
+
+		if (storage == null || processStatistics == null)
+		{
+			return;
+		}
+
+		try
+		{
+			storage.saveModel(modelKey, processStatistics.serialize());
+		}
+		catch (DatabaseException e)
 		{
-			statistics.remove(processSettingId);
+			Logger.logError("Cannot save process statistics of " + modelKey + ": " + e.getMessage());
 		}
 	}
 }
@@ -0,0 +1,139 @@
+package Paralexec;
+
+/**
+ * Resources consumed by the pipeline on one input file.
+ *
+ * @author oto
+ */
+final public class FileResourceUsage
+{
+	/**
+	 * Wall time (in seconds).
+	 */
+	private double wallTime;
+
+
+	/**
+	 * User CPU time (in seconds).
+	 */
+	private double userCpuTime;
+
+
+	/**
+	 * System CPU time (in seconds).
+	 */
+	private double systemCpuTime;
+
+
+	/**
+	 * Peak resident set size of the pipeline processes (in KB).
+	 */
+	private long peakRss;
+
+
+	/**
+	 * Read bytes.
+	 */
+	private long readBytes;
+
+
+	/**
+	 * Written bytes.
+	 */
+	private long writtenBytes;
+
+
+	/**
+	 * @param wallTime		Wall time (in seconds).
+	 * @param userCpuTime	User CPU time (in seconds).
+	 * @param systemCpuTime	System CPU time (in seconds).
+	 * @param peakRss		Peak resident set size (in KB).
+	 * @param readBytes
+	 * @param writtenBytes
+	 */
+	public FileResourceUsage(double wallTime, double userCpuTime, double systemCpuTime, long peakRss, long readBytes, long writtenBytes)
+	{
+		this.wallTime		= wallTime;
+		this.userCpuTime	= userCpuTime;
+		this.systemCpuTime	= systemCpuTime;
+		this.peakRss		= peakRss;
+		this.readBytes		= readBytes;
+		this.writtenBytes	= writtenBytes;
+	}
+
+
+	/**
+	 * @return Wall time (in seconds).
+	 */
+	public double getWallTime()
+	{
+		return this.wallTime;
+	}
+
+
+	/**
+	 * @return User CPU time (in seconds).
+	 */
+	public double getUserCpuTime()
+	{
+		return this.userCpuTime;
+	}
+
+
+	/**
+	 * @return System CPU time (in seconds).
+	 */
+	public double getSystemCpuTime()
+	{
+		return this.systemCpuTime;
+	}
+
+
+	/**
+	 * @return User and system CPU time (in seconds).
+	 */
+	public double getCpuTime()
+	{
+		return this.userCpuTime + this.systemCpuTime;
+	}
+
+
+	/**
+	 * @return Peak resident set size (in KB).
+	 */
+	public long getPeakRss()
+	{
+		return this.peakRss;
+	}
+
+
+	/**
+	 * @return Read bytes.
+	 */
+	public long getReadBytes()
+	{
+		return this.readBytes;
+	}
+
+
+	/**
+	 * @return Written bytes.
+	 */
+	public long getWrittenBytes()
+	{
+		return this.writtenBytes;
+	}
+
+
+	/**
+	 * CPU utilization of the file (number of busy cores).
+	 *
+	 * Values near 1 (or more) mean CPU bound step, values near 0 mean I/O (or sleep) bound step.
+	 *
+	 * @return CPU time per wall time.
+	 */
+	public double getCpuUtilization()
+	{
+		return this.wallTime > 0 ? this.getCpuTime() / this.wallTime : 0;
+	}
+}
@@ -0,0 +1,29 @@
+package Paralexec;
+
+import java.nio.file.Path;
+
+/**
+ * Process step implemented in Java.
+ *
+ * Process setting refers to the implementation by the script path
+ * in the form "java:fully.qualified.ClassName". The class needs a public
+ * constructor without parameters. One instance is created per Exec and it is
+ * called for every input file from the Exec thread - no process is spawned.
+ *
+ * @author oto
+ */
+public interface FileTask
+{
+	/**
+	 * Processes one input file.
+	 *
+	 * The task should check Thread.interrupted() in long loops,
+	 * the Exec thread is interrupted when the Exec is stopped.
+	 *
+	 * @param	inputFile	Input file path.
+	 * @param	outputDir	Output directory path.
+	 * @param	fileNumber	Number of the file in the input directory (from 1).
+	 * @throws	Exception
+	 */
+	public void process(Path inputFile, Path outputDir, int fileNumber) throws Exception;
+}
@@ -0,0 +1,23 @@
+package Paralexec;
+
+/**
+ * Logger message levels.
+ *
+ * @author oto
+ */
+public enum LogLevel
+{
+	DEBUG,
+	INFO,
+	WARN,
+	ERROR;
+
+
+	/**
+	 * @return Level name used in the log records.
+	 */
+	public String getName()
+	{
+		return this.name().toLowerCase();
+	}
+}
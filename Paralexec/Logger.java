@@ -2,19 +2,103 @@ package Paralexec;
 
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Paralexec events logger.
  *
+ * Messages are put into the lock-free ring buffer and written in batches
+ * by the single writer thread. Error messages and the JVM shutdown flush the log file.
+ *
+ * Records have the level and optional key=value fields, e.g.:
+ *
+ *	Logger.debug("File rate registered.", "process", 12, "file", "a.csv", "duration", 3.5);
+ *
+ * Log file is rotated by size and at midnight, rolled files are compressed (gzip)
+ * and only the newest ones are kept.
+ *
+ * Settings:
+ *
+ *  - paralexec.log.level - debug, info, warn or error (default info)
+ *  - paralexec.log.format - text or json (default text)
+ *  - paralexec.log.maxSize - log file size limit in MB (default 100)
+ *  - paralexec.log.maxFiles - number of kept rolled files (default 20)
+ *  - paralexec.log.rotateDaily - rotate the log file at midnight (default true)
+ *
  * @author oto
  */
 final public class Logger
 {
+	/**
+	 * Ring buffer capacity (power of 2).
+	 */
+	private static int BUFFER_CAPACITY = 1 << 13;
+
+
+	/**
+	 * Writer thread idle wait (nanoseconds).
+	 */
+	private static long WRITER_IDLE_WAIT = 50 * 1000 * 1000L; // 50 ms
+
+
+	/**
+	 * Maximum time of waiting for the flush (milliseconds).
+	 */
+	private static long FLUSH_MAX_WAIT = 5000;
+
+
+	/**
+	 * Time format.
+	 */
+	private static DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss");
+
+
+	/**
+	 * Minimal logged level.
+	 */
+	private static volatile LogLevel level = parseLevel(Settings.getString("log.level", "info"));
+
+
+	/**
+	 * JSON records flag.
+	 */
+	private static boolean jsonFormat = Settings.getString("log.format", "text").equalsIgnoreCase("json");
+
+
+	/**
+	 * Log file size limit (in bytes).
+	 */
+	private static long maxFileSize = parseLong(Settings.getString("log.maxSize", null), 100) * 1024 * 1024;
+
+
+	/**
+	 * Number of kept rolled log files.
+	 */
+	private static long maxRolledFiles = parseLong(Settings.getString("log.maxFiles", null), 20);
+
+
+	/**
+	 * Rotate the log file at midnight.
+	 */
+	private static boolean rotateDaily = !Settings.getString("log.rotateDaily", "true").equalsIgnoreCase("false");
+
+
 	/**
 	 * Log file path.
 	 */
@@ -22,9 +106,168 @@ final public class Logger
 
 
 	/**
-	 * Log file writer.
+	 * Log file writer (used only by the writer thread).
+	 */
+	private static Writer writer = null;
+
+
+	/**
+	 * Size of the current log file (used only by the writer thread).
+	 */
+	private static long writtenSize = 0;
+
+
+	/**
+	 * Opening date of the current log file (used only by the writer thread).
+	 */
+	private static LocalDate writerDate = null;
+
+
+	/**
+	 * Number of the last rolled log file (used only by the writer thread).
 	 */
-	private static PrintWriter writer = null;
+	private static int rolledFilesCount = 0;
+
+
+	/**
+	 * Compressor of the rolled log files.
+	 */
+	private static ExecutorService compressor = null;
+
+
+	/**
+	 * Ring buffer messages.
+	 */
+	private static String[] buffer = new String[BUFFER_CAPACITY];
+
+
+	/**
+	 * Ring buffer slots sequences.
+	 *
+	 * Slot is writable for the producer of sequence S if it holds S,
+	 * and readable for the writer thread if it holds S + 1.
+	 */
+	private static AtomicLongArray sequences = createSequences();
+
+
+	/**
+	 * Next sequence claimed by producers.
+	 */
+	private static AtomicLong tail = new AtomicLong();
+
+
+	/**
+	 * Next sequence read by the writer thread (used only by the writer thread).
+	 */
+	private static long head = 0;
+
+
+	/**
+	 * All messages below this sequence are flushed to the log file.
+	 */
+	private static volatile long flushedSequence = 0;
+
+
+	/**
+	 * Cached time string of the current second.
+	 */
+	private static volatile CachedTime cachedTime = new CachedTime(-1, "");
+
+
+	/**
+	 * Writer thread.
+	 */
+	private static Thread writerThread = startWriterThread();
+
+
+	/**
+	 * Time string cached for one second.
+	 */
+	private static final class CachedTime
+	{
+		private final long second;
+
+
+		private final String time;
+
+
+		private CachedTime(long second, String time)
+		{
+			this.second	= second;
+			this.time	= time;
+		}
+	}
+
+
+	/**
+	 * @param	value
+	 * @return	Log level of the given name (INFO for invalid names).
+	 */
+	private static LogLevel parseLevel(String value)
+	{
+		try
+		{
+			return LogLevel.valueOf(value.toUpperCase());
+		}
+		catch (IllegalArgumentException e)
+		{
+			return LogLevel.INFO;
+		}
+	}
+
+
+	/**
+	 * Logger cannot use Settings.getLong() - it logs invalid values.
+	 *
+	 * @param	value
+	 * @param	defaultValue
+	 * @return	Parsed long value.
+	 */
+	private static long parseLong(String value, long defaultValue)
+	{
+		try
+		{
+			return value == null ? defaultValue : Long.parseLong(value);
+		}
+		catch (NumberFormatException e)
+		{
+			return defaultValue;
+		}
+	}
+
+
+	/**
+	 * @return Initialized ring buffer sequences.
+	 */
+	private static AtomicLongArray createSequences()
+	{
+		AtomicLongArray newSequences = new AtomicLongArray(BUFFER_CAPACITY);
+
+		for (int i = 0; i < BUFFER_CAPACITY; i++)
+		{
+			newSequences.set(i, i);
+		}
+
+		return newSequences;
+	}
+
+
+	/**
+	 * Starts the writer thread and registers the flush on the JVM shutdown.
+	 *
+	 * @return Writer thread.
+	 */
+	private static Thread startWriterThread()
+	{
+		Thread thread = new Thread(Logger::writeMessages, "Paralexec-Logger");
+
+		thread.setDaemon(true);
+		thread.start();
+
+		Runtime.getRuntime().addShutdownHook(new Thread(Logger::flush));
+
+		return thread;
+	}
 
 
 	/**
@@ -35,7 +278,7 @@ final public class Logger
 		if (logFile == null)
 		{
 			File currentDir = new File(".");
-			
+
 			logFile = currentDir.getAbsolutePath() + File.separator + "log_" + getTime();
 		}
 
@@ -47,48 +290,451 @@ final public class Logger
 	 * @return	Log file writer.
 	 * @throws	IOException
 	 */
-	private static PrintWriter getWriter() throws IOException
+	private static Writer getWriter() throws IOException
 	{
 		if (writer == null)
 		{
-			FileWriter fw		= new FileWriter(getLogFile(), true);
-			BufferedWriter bw	= new BufferedWriter(fw);
-			writer				= new PrintWriter(bw);
+			File file	= new File(getLogFile());
+			writer		= new BufferedWriter(new FileWriter(file, true), 1 << 16);
+			writtenSize	= file.length();
+			writerDate	= LocalDate.now();
 		}
 
 		return writer;
 	}
 
 
+	/**
+	 * Writes the line to the log file, the file is rotated if needed.
+	 *
+	 * @param	line
+	 * @throws	IOException
+	 */
+	private static void writeLine(String line) throws IOException
+	{
+		Writer fileWriter = getWriter();
+
+		if (writtenSize > 0 && (writtenSize + line.length() >= maxFileSize || (rotateDaily && !LocalDate.now().equals(writerDate))))
+		{
+			rotate();
+
+			fileWriter = getWriter();
+		}
+
+		fileWriter.write(line);
+		fileWriter.write('\n');
+
+		writtenSize += line.length() + 1;
+	}
+
+
+	/**
+	 * Closes the current log file and hands it over to the compressor.
+	 *
+	 * @throws IOException
+	 */
+	private static void rotate() throws IOException
+	{
+		writer.close();
+		writer = null;
+
+		File rolledFile = new File(getLogFile() + "." + (++rolledFilesCount));
+
+		if (!new File(getLogFile()).renameTo(rolledFile))
+		{
+			throw new IOException("Cannot rotate log file " + getLogFile());
+		}
+
+		if (compressor == null)
+		{
+			compressor = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "Paralexec-Logger-Compressor");
+
+				thread.setDaemon(true);
+
+				return thread;
+			});
+		}
+
+		compressor.execute(() -> compressRolledFile(rolledFile));
+	}
+
+
+	/**
+	 * Compresses the rolled log file and deletes the oldest rolled files.
+	 *
+	 * @param rolledFile
+	 */
+	private static void compressRolledFile(File rolledFile)
+	{
+		File compressedFile = new File(rolledFile.getPath() + ".gz");
+
+		try (InputStream input = new FileInputStream(rolledFile); OutputStream output = new GZIPOutputStream(new FileOutputStream(compressedFile)))
+		{
+			byte[] chunk = new byte[1 << 16];
+			int length;
+
+			while ((length = input.read(chunk)) > 0)
+			{
+				output.write(chunk, 0, length);
+			}
+		}
+		catch (IOException e)
+		{
+			System.out.println("Cannot compress log file " + rolledFile.getPath() + ": " + e.getMessage());
+			return;
+		}
+
+		rolledFile.delete();
+
+		File logDir			= new File(getLogFile()).getParentFile();
+		String prefix		= new File(getLogFile()).getName() + ".";
+		File[] rolledFiles	= logDir.listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(".gz"));
+
+		if (rolledFiles != null && rolledFiles.length > maxRolledFiles)
+		{
+			// The oldest files have the lowest numbers.
+			Arrays.sort(rolledFiles, (a, b) -> Long.compare(getRolledFileNumber(a, prefix), getRolledFileNumber(b, prefix)));
+
+			for (int i = 0; i < rolledFiles.length - maxRolledFiles; i++)
+			{
+				rolledFiles[i].delete();
+			}
+		}
+	}
+
+
+	/**
+	 * @param	rolledFile
+	 * @param	prefix
+	 * @return	Number of the rolled log file.
+	 */
+	private static long getRolledFileNumber(File rolledFile, String prefix)
+	{
+		String name = rolledFile.getName();
+
+		return parseLong(name.substring(prefix.length(), name.length() - ".gz".length()), 0);
+	}
+
+
 	/**
 	 * @return Current time string.
 	 */
 	private static String getTime()
 	{
-		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss");
+		long second				= System.currentTimeMillis() / 1000;
+		CachedTime currentTime	= cachedTime;
+
+		if (currentTime.second != second)
+		{
+			currentTime = new CachedTime(second, LocalDateTime.now().format(TIME_FORMAT));
+			cachedTime	= currentTime;
+		}
 
-		return dateFormat.format(new Date());
+		return currentTime.time;
 	}
 
 
 	/**
-	 * Writes message to the log file.
+	 * Puts message into the ring buffer.
 	 *
-	 * @param Message
+	 * If the buffer is full, the caller waits for the writer thread.
+	 *
+	 * @param message
 	 */
 	private static void writeMessage(String message)
 	{
-		try
+		while (true)
 		{
-			PrintWriter fileWriter = getWriter();
+			long sequence	= tail.get();
+			int index		= (int) (sequence & (BUFFER_CAPACITY - 1));
+			long difference	= sequences.get(index) - sequence;
 
-			fileWriter.println(message);
-			fileWriter.flush();
+			if (difference == 0)
+			{
+				if (tail.compareAndSet(sequence, sequence + 1))
+				{
+					buffer[index] = message;
+					sequences.set(index, sequence + 1);
+
+					return;
+				}
+			}
+			// Buffer is full.
+			else if (difference < 0)
+			{
+				LockSupport.unpark(writerThread);
+				Thread.yield();
+			}
 		}
-		catch (IOException e)
+	}
+
+
+	/**
+	 * Writer thread life cycle - writes the buffered messages in batches.
+	 */
+	private static void writeMessages()
+	{
+		while (true)
+		{
+			int written = 0;
+
+			try
+			{
+				while (true)
+				{
+					int index = (int) (head & (BUFFER_CAPACITY - 1));
+
+					if (sequences.get(index) != head + 1)
+					{
+						break;
+					}
+
+					String message	= buffer[index];
+					buffer[index]	= null;
+
+					sequences.set(index, head + BUFFER_CAPACITY);
+					head++;
+
+					writeLine(message);
+
+					written++;
+				}
+
+				if (written > 0)
+				{
+					getWriter().flush();
+				}
+			}
+			catch (IOException e)
+			{
+				System.out.println(e.getMessage());
+			}
+
+			flushedSequence = head;
+
+			if (written == 0)
+			{
+				LockSupport.parkNanos(WRITER_IDLE_WAIT);
+			}
+		}
+	}
+
+
+	/**
+	 * Waits until all messages logged so far are written to the log file.
+	 */
+	public static void flush()
+	{
+		long sequence	= tail.get();
+		long deadline	= System.currentTimeMillis() + FLUSH_MAX_WAIT;
+
+		while (flushedSequence < sequence && System.currentTimeMillis() < deadline && writerThread.isAlive())
+		{
+			LockSupport.unpark(writerThread);
+			LockSupport.parkNanos(1000 * 1000L);
+		}
+	}
+
+
+	/**
+	 * Sets the minimal logged level.
+	 *
+	 * @param newLevel
+	 */
+	public static void setLevel(LogLevel newLevel)
+	{
+		level = newLevel;
+	}
+
+
+	/**
+	 * @param	messageLevel
+	 * @return	TRUE if the messages of given level are logged.
+	 */
+	public static boolean isEnabled(LogLevel messageLevel)
+	{
+		return messageLevel.ordinal() >= level.ordinal();
+	}
+
+
+	/**
+	 * @return TRUE if the debug messages are logged.
+	 */
+	public static boolean isDebugEnabled()
+	{
+		return LogLevel.DEBUG.ordinal() >= level.ordinal();
+	}
+
+
+	/**
+	 * Logs the record.
+	 *
+	 * @param messageLevel
+	 * @param message
+	 * @param fields		Record fields as key, value pairs.
+	 */
+	public static void log(LogLevel messageLevel, String message, Object... fields)
+	{
+		if (!isEnabled(messageLevel))
+		{
+			return;
+		}
+
+		writeMessage(jsonFormat ? formatJsonRecord(messageLevel, message, fields) : formatTextRecord(messageLevel, message, fields));
+
+		if (messageLevel == LogLevel.ERROR)
+		{
+			flush();
+		}
+	}
+
+
+	/**
+	 * @param	messageLevel
+	 * @param	message
+	 * @param	fields
+	 * @return	Text record: time - [level] message key=value ...
+	 */
+	private static String formatTextRecord(LogLevel messageLevel, String message, Object[] fields)
+	{
+		StringBuilder record = new StringBuilder(64 + message.length() + fields.length * 16);
+
+		record.append(getTime()).append(" - [").append(messageLevel.getName()).append("] ").append(message);
+
+		for (int i = 0; i + 1 < fields.length; i += 2)
 		{
-			System.out.println(e.getMessage());
+			String value = String.valueOf(fields[i + 1]);
+
+			record.append(' ').append(fields[i]).append('=');
+
+			if (value.indexOf(' ') >= 0 || value.indexOf('"') >= 0 || value.isEmpty())
+			{
+				record.append('"').append(value.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+			}
+			else
+			{
+				record.append(value);
+			}
 		}
+
+		return record.toString();
+	}
+
+
+	/**
+	 * @param	messageLevel
+	 * @param	message
+	 * @param	fields
+	 * @return	JSON record.
+	 */
+	private static String formatJsonRecord(LogLevel messageLevel, String message, Object[] fields)
+	{
+		StringBuilder record = new StringBuilder(64 + message.length() + fields.length * 16);
+
+		record.append("{\"time\":\"").append(getTime())
+				.append("\",\"level\":\"").append(messageLevel.getName())
+				.append("\",\"message\":");
+
+		appendJsonValue(record, message);
+
+		for (int i = 0; i + 1 < fields.length; i += 2)
+		{
+			record.append(',');
+			appendJsonValue(record, String.valueOf(fields[i]));
+			record.append(':');
+			appendJsonValue(record, fields[i + 1]);
+		}
+
+		return record.append('}').toString();
+	}
+
+
+	/**
+	 * Appends the JSON value - numbers and booleans as they are, the rest as strings.
+	 *
+	 * @param record
+	 * @param value
+	 */
+	public static void appendJsonValue(StringBuilder record, Object value)
+	{
+		if (value instanceof Number || value instanceof Boolean)
+		{
+			record.append(value);
+			return;
+		}
+
+		String string = String.valueOf(value);
+
+		record.append('"');
+
+		for (int i = 0; i < string.length(); i++)
+		{
+			char c = string.charAt(i);
+
+			if (c == '"' || c == '\\')
+			{
+				record.append('\\').append(c);
+			}
+			else if (c < 0x20)
+			{
+				record.append(String.format("\\u%04x", (int) c));
+			}
+			else
+			{
+				record.append(c);
+			}
+		}
+
+		record.append('"');
+	}
+
+
+	/**
+	 * Logs given debug message.
+	 *
+	 * @param message
+	 * @param fields	Record fields as key, value pairs.
+	 */
+	public static void debug(String message, Object... fields)
+	{
+		log(LogLevel.DEBUG, message, fields);
+	}
+
+
+	/**
+	 * Logs given message.
+	 *
+	 * @param message
+	 * @param fields	Record fields as key, value pairs.
+	 */
+	public static void info(String message, Object... fields)
+	{
+		log(LogLevel.INFO, message, fields);
+	}
+
+
+	/**
+	 * Logs given warning message.
+	 *
+	 * @param message
+	 * @param fields	Record fields as key, value pairs.
+	 */
+	public static void warn(String message, Object... fields)
+	{
+		log(LogLevel.WARN, message, fields);
+	}
+
+
+	/**
+	 * Logs given error message.
+	 *
+	 * @param message
+	 * @param fields	Record fields as key, value pairs.
+	 */
+	public static void error(String message, Object... fields)
+	{
+		log(LogLevel.ERROR, message, fields);
 	}
 
 
@@ -99,7 +745,7 @@ final public class Logger
 	 */
 	public static void log(String message)
 	{
-		writeMessage(getTime() + " - " + message);
+		log(LogLevel.INFO, message);
 	}
 
 
@@ -110,6 +756,6 @@ final public class Logger
 	 */
 	public static void logError(String message)
 	{
-		writeMessage(getTime() + " - [error]: " + message);
+		log(LogLevel.ERROR, message);
 	}
-}
\ No newline at end of file
+}
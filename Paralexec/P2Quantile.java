@@ -0,0 +1,233 @@
+package Paralexec;
+
+import java.util.Arrays;
+
+/**
+ * Streaming quantile estimate (P-square algorithm by Jain and Chlamtac).
+ *
+ * It keeps only five markers, so the update is O(1) and the memory is constant.
+ * Not thread-safe - the owner synchronizes the access.
+ *
+ * @author oto
+ */
+final public class P2Quantile
+{
+	/**
+	 * Estimated quantile (0 - 1).
+	 */
+	private final double quantile;
+
+
+	/**
+	 * Marker heights.
+	 */
+	private final double[] heights = new double[5];
+
+
+	/**
+	 * Marker positions.
+	 */
+	private final double[] positions = {1, 2, 3, 4, 5};
+
+
+	/**
+	 * Desired marker positions.
+	 */
+	private final double[] desiredPositions;
+
+
+	/**
+	 * Desired marker positions increments.
+	 */
+	private final double[] increments;
+
+
+	/**
+	 * Observations count.
+	 */
+	private long count = 0;
+
+
+	/**
+	 * @param quantile Estimated quantile (0 - 1).
+	 */
+	public P2Quantile(double quantile)
+	{
+		this.quantile			= quantile;
+		this.desiredPositions	= new double[] {1, 1 + 2 * quantile, 1 + 4 * quantile, 3 + 2 * quantile, 5};
+		this.increments			= new double[] {0, quantile / 2, quantile, (1 + quantile) / 2, 1};
+	}
+
+
+	/**
+	 * @return Estimated quantile (0 - 1).
+	 */
+	public double getQuantile()
+	{
+		return this.quantile;
+	}
+
+
+	/**
+	 * @return Observations count.
+	 */
+	public long getCount()
+	{
+		return this.count;
+	}
+
+
+	/**
+	 * Adds the observation.
+	 *
+	 * @param value
+	 */
+	public void add(double value)
+	{
+		if (this.count < 5)
+		{
+			this.heights[(int) this.count++] = value;
+
+			if (this.count == 5)
+			{
+				Arrays.sort(this.heights);
+			}
+
+			return;
+		}
+
+		this.count++;
+
+		int cell;
+
+		if (value < this.heights[0])
+		{
+			this.heights[0]	= value;
+			cell			= 0;
+		}
+		else if (value >= this.heights[4])
+		{
+			this.heights[4]	= Math.max(this.heights[4], value);
+			cell			= 3;
+		}
+		else
+		{
+			cell = 0;
+
+			while (value >= this.heights[cell + 1])
+			{
+				cell++;
+			}
+		}
+
+		for (int i = cell + 1; i < 5; i++)
+		{
+			this.positions[i]++;
+		}
+
+		for (int i = 0; i < 5; i++)
+		{
+			this.desiredPositions[i] += this.increments[i];
+		}
+
+		// Adjust the middle markers.
+		for (int i = 1; i < 4; i++)
+		{
+			double difference = this.desiredPositions[i] - this.positions[i];
+
+			if ((difference >= 1 && this.positions[i + 1] - this.positions[i] > 1) || (difference <= -1 && this.positions[i - 1] - this.positions[i] < -1))
+			{
+				int direction	= difference > 0 ? 1 : -1;
+				double height	= this.getParabolicHeight(i, direction);
+
+				if (this.heights[i - 1] < height && height < this.heights[i + 1])
+				{
+					this.heights[i] = height;
+				}
+				else
+				{
+					this.heights[i] += direction * (this.heights[i + direction] - this.heights[i]) / (this.positions[i + direction] - this.positions[i]);
+				}
+
+				this.positions[i] += direction;
+			}
+		}
+	}
+
+
+	/**
+	 * @param	i
+	 * @param	direction
+	 * @return	Piecewise-parabolic prediction of the marker height.
+	 */
+	private double getParabolicHeight(int i, int direction)
+	{
+		double[] n = this.positions;
+		double[] q = this.heights;
+
+		return q[i] + direction / (n[i + 1] - n[i - 1]) * (
+				(n[i] - n[i - 1] + direction) * (q[i + 1] - q[i]) / (n[i + 1] - n[i])
+				+ (n[i + 1] - n[i] - direction) * (q[i] - q[i - 1]) / (n[i] - n[i - 1])
+		);
+	}
+
+
+	/**
+	 * @return Estimator state (count, heights, positions, desired positions).
+	 */
+	public double[] getState()
+	{
+		double[] state = new double[16];
+
+		state[0] = this.count;
+
+		System.arraycopy(this.heights, 0, state, 1, 5);
+		System.arraycopy(this.positions, 0, state, 6, 5);
+		System.arraycopy(this.desiredPositions, 0, state, 11, 5);
+
+		return state;
+	}
+
+
+	/**
+	 * Restores the estimator state.
+	 *
+	 * @param state	State returned by getState().
+	 */
+	public void setState(double[] state)
+	{
+		if (state.length != 16)
+		{
+			throw new IllegalArgumentException("Invalid quantile estimator state.");
+		}
+
+		this.count = (long) state[0];
+
+		System.arraycopy(state, 1, this.heights, 0, 5);
+		System.arraycopy(state, 6, this.positions, 0, 5);
+		System.arraycopy(state, 11, this.desiredPositions, 0, 5);
+	}
+
+
+	/**
+	 * @return Estimated quantile value (0 if there is no observation).
+	 */
+	public double getValue()
+	{
+		if (this.count == 0)
+		{
+			return 0;
+		}
+
+		if (this.count < 5)
+		{
+			double[] sorted = Arrays.copyOf(this.heights, (int) this.count);
+
+			Arrays.sort(sorted);
+
+			return sorted[(int) Math.min(sorted.length - 1, Math.round(this.quantile * (sorted.length - 1)))];
+		}
+
+		return this.heights[2];
+	}
+}
@@ -1,8 +1,13 @@
 package Paralexec;
 
 import Database.DatabaseException;
-import Database.Drivers.DbDriverException;
+import Database.Journal.JournalProcessStore;
+import Database.ModelStore;
+import Database.ProcessStore;
 import Database.Tables.ExecutedProcessesTable;
+import Database.Tables.ProcessStatisticsTable;
+import Metrics.MetricsHttpServer;
+import Metrics.MetricsRegistry;
 import Process.ProcessSetting;
 import Process.ProcessSettingException;
 import Process.ProcessSettingTree;
@@ -11,10 +16,15 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * Main class for parallel executing of the tree structure processes.
@@ -27,14 +37,49 @@ import java.util.Queue;
  *
  *  - maximum number of running threads (optional)
  *
+ * Import of the new processes into the journal store (see JournalProcessStore),
+ * the running Paralexec attaches them on the next refresh:
+ *
+ *	java -Dparalexec.store=journal -jar Paralexec.jar import processes.tsv
+ *
+ * Settings (Java system properties, see Settings):
+ *
+ *  - paralexec.affinity.* - pinning of the Exec pipelines to the CPU sets of the NUMA nodes (see CpuAllocator)
+ *  - paralexec.cgroup.* - cgroup v2 limits and accounting of the Exec pipelines (see ExecCgroup)
+ *  - paralexec.db.flushInterval - maximal delay of the process state write in milliseconds (default 200)
+ *  - paralexec.db.poolSize, paralexec.db.reconnectAttempts - database connection pool (see DbConnectionPool)
+ *  - paralexec.fifo - chain linear parent and child processes through named pipes (default false)
+ *  - paralexec.log.* - log level, format and rotation (see Logger)
+ *  - paralexec.metrics.port - port of the localhost HTTP metrics server, /metrics and /status (default 0 = disabled)
+ *  - paralexec.partialResults - children use the results of the process with the failed files, reruns process only the failed files (default false, see Exec)
+ *  - paralexec.refresh.interval - attaching of the new waiting processes (see ProcessTreeRefresher)
+ *  - paralexec.speculation.* - backup runs of the straggler files in the idle slots (see ExecMonitor)
+ *  - paralexec.stall.* - adaptive stall detection (see ExecMonitor)
+ *  - paralexec.store - process store, mysql or journal (embedded, no database server needed, default mysql)
+ *  - paralexec.store.path - directory of the journal store (default store in the current directory)
+ *  - paralexec.store.sync - force the journal records to the disk (default true)
+ *  - paralexec.watchdog.execStallTime - recovery of the stucked Execs (see ParalexecMonitor)
+ *
  * @author oto
  */
 final public class Paralexec
 {
 	/**
-	 * Executed processes table.
+	 * Executed processes store.
+	 */
+	private ProcessStore processStore;
+
+
+	/**
+	 * Embedded journal store (null if the MySQL store is used).
+	 */
+	private JournalProcessStore journalStore = null;
+
+
+	/**
+	 * Write-behind writer of the process states.
 	 */
-	private ExecutedProcessesTable processTable;
+	private ProcessStateWriter stateWriter;
 
 
 	/**
@@ -63,12 +108,24 @@ final public class Paralexec
 	private int runningThreadsMaxCount = 0;
 
 
+	/**
+	 * Number of running backup runs of the straggler files (they take the thread slots).
+	 */
+	private int backupRunsCount = 0;
+
+
 	/**
 	 * Path to the running flag file.
 	 */
 	private Path runningFlagFilePath;
 
 
+	/**
+	 * Path to the refresh flag file (it triggers the process tree refresh).
+	 */
+	private Path refreshFlagFilePath;
+
+
 	/**
 	 * Processing queue flag.
 	 */
@@ -95,6 +152,12 @@ final public class Paralexec
 	private long lastChangeTime;
 
 
+	/**
+	 * HTTP metrics server (null if disabled).
+	 */
+	private MetricsHttpServer metricsServer = null;
+
+
 	/**
 	 * Constructor.
 	 *
@@ -103,12 +166,31 @@ final public class Paralexec
 	public Paralexec() throws Exception
 	{
 		this.lastChangeTime			= System.currentTimeMillis();
-		this.processTable			= this.getExecutedProcessesTableInstance();
 		this.currentDir				= this.getCurrentDir();
+		this.processStore			= this.getProcessStoreInstance();
+		this.stateWriter			= new ProcessStateWriter(this.processStore);
 		this.runningFlagFilePath	= Paths.get(this.currentDir + File.separator + "running");
+		this.refreshFlagFilePath	= Paths.get(this.currentDir + File.separator + "refresh");
 		this.execQueue				= new LinkedList();
 
-		this.loadProcessTree();
+		this.registerMetrics();
+
+		this.stateWriter.start();
+
+		ExecStatistics.load(this.getModelStoreInstance());
+	}
+
+
+	/**
+	 * Registers the scheduler gauges.
+	 */
+	private void registerMetrics()
+	{
+		MetricsRegistry.gauge("paralexec_running_execs", "Running Execs.", () -> this.runningExecs.size());
+		MetricsRegistry.gauge("paralexec_queued_execs", "Execs waiting in the queue.", () -> this.execQueue.size());
+		MetricsRegistry.gauge("paralexec_running_threads", "Running threads.", () -> this.runningThreads);
+		MetricsRegistry.gauge("paralexec_running_backup_runs", "Running backup runs of the straggler files.", () -> this.backupRunsCount);
+		MetricsRegistry.gauge("paralexec_pending_state_changes", "Process state changes waiting for the write.", () -> this.stateWriter.getPendingCount());
 	}
 	
 	
@@ -118,7 +200,7 @@ final public class Paralexec
 	 * @param runMonitor
 	 * @throws Exception 
 	 */
-	public void restart(boolean runMonitor) throws Exception
+	public synchronized void restart(boolean runMonitor) throws Exception
 	{
 		this.stopProcessing();
 		this.deleteRunningFile();
@@ -129,7 +211,6 @@ final public class Paralexec
 		this.runningExecs				= new HashMap<>();
 		this.lastChangeTime				= System.currentTimeMillis();
 		
-		this.loadProcessTree();
 		this.processSettings(runMonitor);
 	}
 
@@ -141,6 +222,13 @@ final public class Paralexec
 	{
 		Paralexec paralexec = null;
 
+		if (args.length >= 1 && args[0].equals("import"))
+		{
+			importProcesses(args);
+
+			return;
+		}
+
 		try
 		{
 			paralexec = new Paralexec();
@@ -151,6 +239,8 @@ final public class Paralexec
 				paralexec.setRunningThreadsMaxCount(Integer.parseInt(args[0]));
 			}
 
+			paralexec.startMetricsServer();
+
 			// Execute the process tree.
 			paralexec.processSettings(true);
 		}
@@ -162,8 +252,146 @@ final public class Paralexec
 			if (paralexec != null)
 			{
 				paralexec.deleteRunningFile();
+				paralexec.stopMetricsServer();
+			}
+		}
+	}
+
+
+	/**
+	 * Imports the processes from the file into the journal store.
+	 *
+	 * The refresh flag file is created, so the running Paralexec attaches them immediately.
+	 *
+	 * @param args Command line arguments (import file).
+	 */
+	private static void importProcesses(String[] args)
+	{
+		if (args.length < 2)
+		{
+			Logger.logError("Import file is not provided.");
+
+			return;
+		}
+
+		if (!Settings.getString("store", "mysql").equalsIgnoreCase("journal"))
+		{
+			Logger.logError("Processes can be imported only into the journal store (paralexec.store=journal).");
+
+			return;
+		}
+
+		String currentDir	= new File(".").getAbsolutePath();
+		Path directory		= Paths.get(Settings.getString("store.path", currentDir + File.separator + "store"));
+
+		try
+		{
+			// The journals of the running Paralexec must not be compacted.
+			JournalProcessStore store	= new JournalProcessStore(directory, Settings.getBoolean("store.sync", true), false);
+			int processesCount			= store.importProcesses(Paths.get(args[1]));
+
+			Logger.info("Processes imported.", "file", args[1], "count", processesCount, "store", directory.toAbsolutePath());
+
+			Files.write(Paths.get(currentDir + File.separator + "refresh"), new byte[0]);
+		}
+		catch (Exception e)
+		{
+			Logger.logError("Process import error: " + e.getMessage());
+		}
+	}
+
+
+	/**
+	 * Starts the HTTP metrics server if it's enabled.
+	 *
+	 * @throws IOException
+	 */
+	private void startMetricsServer() throws IOException
+	{
+		int port = Settings.getInt("metrics.port", 0);
+
+		if (port > 0)
+		{
+			this.metricsServer = new MetricsHttpServer(port, this::getStatusJson);
+			this.metricsServer.start();
+		}
+	}
+
+
+	/**
+	 * Stops the HTTP metrics server.
+	 */
+	public void stopMetricsServer()
+	{
+		if (this.metricsServer != null)
+		{
+			this.metricsServer.stop();
+			this.metricsServer = null;
+		}
+	}
+
+
+	/**
+	 * @return JSON status of the running Execs and the Exec queue.
+	 */
+	public synchronized String getStatusJson()
+	{
+		StringBuilder json	= new StringBuilder();
+		long now			= System.nanoTime();
+		String separator	= "";
+
+		json.append("{\"running\":").append(this.isRunning());
+		json.append(",\"runningThreads\":").append(this.runningThreads);
+		json.append(",\"runningThreadsMaxCount\":").append(this.runningThreadsMaxCount);
+		json.append(",\"backupRuns\":").append(this.backupRunsCount);
+		json.append(",\"lastChangeSeconds\":").append(this.getLastChangeTime() / 1000);
+		json.append(",\"runningExecs\":[");
+
+		for (Exec exec : this.runningExecs.values())
+		{
+			json.append(separator).append("{\"process\":").append(exec.getProcess().getId());
+			json.append(",\"script\":");
+			Logger.appendJsonValue(json, exec.getProcess().getScriptPath());
+			json.append(",\"attempt\":").append(exec.getAttemptsCount());
+			json.append(",\"processedFiles\":").append(exec.getProcessedFilesCount());
+
+			if (exec.getCpuSet() != null)
+			{
+				json.append(",\"numaNode\":").append(exec.getCpuSet().getNode());
+				json.append(",\"cpus\":");
+				Logger.appendJsonValue(json, exec.getCpuSet().getCpuList());
+			}
+
+			ProcessStatistics statistics = ExecStatistics.findProcessStatistics(exec.getProcess().getScriptPath());
+
+			if (statistics != null && statistics.getResourceCount() > 0)
+			{
+				json.append(",\"cpuUtilization\":").append(statistics.getCpuUtilization());
+				json.append(",\"systemCpuShare\":").append(statistics.getSystemCpuShare());
+				json.append(",\"maxPeakRssKB\":").append(statistics.getMaxPeakRss());
+				json.append(",\"avgReadBytes\":").append((long) statistics.getAverageReadBytes());
+				json.append(",\"avgWrittenBytes\":").append((long) statistics.getAverageWrittenBytes());
 			}
+			json.append('}');
+
+			separator = ",";
 		}
+
+		json.append("],\"execQueue\":[");
+		separator = "";
+
+		for (Object item : this.execQueue)
+		{
+			Exec exec = (Exec) item;
+
+			json.append(separator).append("{\"process\":").append(exec.getProcess().getId());
+			json.append(",\"queuedSeconds\":").append((now - exec.getQueuedTime()) / 1000000000L);
+			json.append('}');
+
+			separator = ",";
+		}
+
+		return json.append("]}").toString();
 	}
 
 
@@ -177,40 +405,232 @@ final public class Paralexec
 
 
 	/**
-	 * @return Executed processes table instance.
+	 * @return TRUE if the embedded journal store is selected.
+	 */
+	private boolean isJournalStoreSelected()
+	{
+		return Settings.getString("store", "mysql").equalsIgnoreCase("journal");
+	}
+
+
+	/**
+	 * @return	Embedded journal store.
+	 * @throws	DatabaseException
+	 */
+	private JournalProcessStore getJournalStore() throws DatabaseException
+	{
+		if (this.journalStore == null)
+		{
+			Path directory = Paths.get(Settings.getString("store.path", this.currentDir + File.separator + "store"));
+
+			this.journalStore = new JournalProcessStore(directory, Settings.getBoolean("store.sync", true));
+
+			Logger.info("Journal store opened.", "path", directory.toAbsolutePath());
+		}
+
+		return this.journalStore;
+	}
+
+
+	/**
+	 * @return	Executed processes store instance.
+	 * @throws	DatabaseException
+	 */
+	private ProcessStore getProcessStoreInstance() throws DatabaseException
+	{
+		return this.isJournalStoreSelected() ? this.getJournalStore() : new ExecutedProcessesTable();
+	}
+
+
+	/**
+	 * @return	Runtime models store instance.
+	 * @throws	DatabaseException
 	 */
-	private ExecutedProcessesTable getExecutedProcessesTableInstance() throws DbDriverException
+	private ModelStore getModelStoreInstance() throws DatabaseException
 	{
-		return new ExecutedProcessesTable();
+		return this.isJournalStoreSelected() ? this.getJournalStore() : new ProcessStatisticsTable();
 	}
 
 
 	/**
-	 * @return Executed processes table.
+	 * @return Executed processes store.
 	 */
-	public ExecutedProcessesTable getProcessTable()
+	public ProcessStore getProcessStore()
 	{
-		return this.processTable;
+		return this.processStore;
 	}
 
 
 	/**
 	 * Loads the process setting tree.
 	 *
-	 * @throws Exception
+	 * @param	rootListener	Called for every root as soon as it's loaded (null if not needed).
+	 * @throws	Exception
 	 */
-	private void loadProcessTree() throws Exception
+	private void loadProcessTree(Consumer<ProcessSetting> rootListener) throws Exception
 	{
 		Logger.log("Loading process tree.");
 
+		long startTime		= System.nanoTime();
+		this.processTree	= new ProcessSettingTree(this.processStore);
+
+		List<ProcessSetting> cycle;
+
 		try
 		{
-			this.processTree = new ProcessSettingTree(this.processTable);
+			cycle = this.processTree.load(rootListener);
 		}
 		catch (ProcessSettingException e)
 		{
 			throw new Exception(e.getMessage());
 		}
+
+		this.rejectCycle(cycle);
+
+		Logger.info("Process tree loaded.", "duration", (System.nanoTime() - startTime) / 1e9);
+	}
+
+
+	/**
+	 * Marks the processes in the dependency cycle as finished with the error.
+	 *
+	 * They are never ready, the other processes are scheduled.
+	 *
+	 * @param cycle
+	 */
+	private void rejectCycle(List<ProcessSetting> cycle)
+	{
+		for (ProcessSetting process : cycle)
+		{
+			Logger.error("Process is in the dependency cycle. It's not executed.", "process", process.getId());
+
+			this.markProcessAsFinished(process, "Dependency cycle between processes " + this.getProcessIds(cycle));
+		}
+	}
+
+
+	/**
+	 * @param	processes
+	 * @return	Comma separated IDs of the processes.
+	 */
+	private String getProcessIds(List<ProcessSetting> processes)
+	{
+		StringBuilder ids = new StringBuilder();
+
+		for (ProcessSetting process : processes)
+		{
+			if (ids.length() > 0)
+			{
+				ids.append(", ");
+			}
+
+			ids.append(process.getId());
+		}
+
+		return ids.toString();
+	}
+
+
+	/**
+	 * Waits for the end of the process tree load (children of the running Execs are complete after it).
+	 */
+	public void awaitProcessTree()
+	{
+		this.processTree.awaitLoaded();
+	}
+
+
+	/**
+	 * Releases the children of the finished process.
+	 *
+	 * @param	process
+	 * @param	partial		Process has finished with the partial results.
+	 * @return	Children ready for the execution.
+	 */
+	public List<ProcessSetting> releaseChildren(ProcessSetting process, boolean partial)
+	{
+		return this.processTree.releaseChildren(process, partial);
+	}
+
+
+	/**
+	 * @param	process
+	 * @return	Snapshot of the process children.
+	 */
+	public List<ProcessSetting> getProcessChildren(ProcessSetting process)
+	{
+		return this.processTree.getChildren(process);
+	}
+
+
+	/**
+	 * Chains the only child of the process through the named pipes.
+	 *
+	 * @param	process
+	 * @param	condition	Chaining condition of the only child.
+	 * @return	Chained child (null if it cannot be chained).
+	 */
+	public ProcessSetting chainOnlyChild(ProcessSetting process, Predicate<ProcessSetting> condition)
+	{
+		return this.processTree.chainOnlyChild(process, condition);
+	}
+
+
+	/**
+	 * Attaches new waiting processes to the process tree and starts the ready ones.
+	 *
+	 * Running Execs are not affected.
+	 *
+	 * @throws Exception
+	 */
+	public void refreshProcessTree() throws Exception
+	{
+		List<ProcessSetting> readyProcesses	= new ArrayList<>();
+		List<ProcessSetting> deferred		= new ArrayList<>();
+
+		try
+		{
+			this.rejectCycle(this.processTree.refresh(readyProcesses::add, deferred));
+
+			if (!deferred.isEmpty())
+			{
+				Logger.info("New children of the chained processes are deferred.", "deferred", deferred.size());
+			}
+		}
+		finally
+		{
+			for (ProcessSetting process : readyProcesses)
+			{
+				this.startRootProcess(process);
+			}
+
+			if (!readyProcesses.isEmpty())
+			{
+				Logger.info("New processes attached.", "ready", readyProcesses.size());
+
+				MetricsRegistry.counter("paralexec_attached_processes", "New ready processes attached by the tree refresh.").add(readyProcesses.size());
+			}
+		}
+	}
+
+
+	/**
+	 * Consumes the refresh flag file.
+	 *
+	 * @return TRUE if the refresh flag file existed.
+	 */
+	public boolean isRefreshRequested()
+	{
+		try
+		{
+			return Files.deleteIfExists(this.refreshFlagFilePath);
+		}
+		catch (IOException e)
+		{
+			Logger.logError("Paralexec error while deleting refresh file: " + e.getMessage());
+
+			return false;
+		}
 	}
 
 
@@ -244,11 +664,15 @@ final public class Paralexec
 
 
 	/**
-	 * Process root processes.
+	 * Loads the process tree and processes the root processes.
+	 * 
+	 * Roots are started while the tree is still loading. With the named pipe chaining
+	 * they are started after the load (chaining depends on the children).
 	 * 
-	 * @param runMonitor 
+	 * @param	runMonitor 
+	 * @throws	Exception
 	 */
-	private void processSettings(boolean runMonitor)
+	private void processSettings(boolean runMonitor) throws Exception
 	{
 		this.createRunningFile();
 		
@@ -257,28 +681,57 @@ final public class Paralexec
 			this.startMonitor();
 		}
 
-		// We will fill the queue with the root processes.
-		for (ProcessSetting process : this.processTree.getRootItems())
+		if (Settings.getBoolean("fifo", false))
 		{
-			try
-			{
-				this.addExecToQeue(new Exec(process, this));
-			}
-			catch (Exception e)
+			this.loadProcessTree(null);
+
+			for (ProcessSetting process : this.processTree.getRootItems())
 			{
-				Logger.logError("Cannot create execution for process setting " + process.getId() + ": " + e.getMessage());
+				this.startRootProcess(process);
 			}
 		}
+		else
+		{
+			this.loadProcessTree(this::startRootProcess);
+		}
+
+		this.manageTreeLoaded();
 
-		// If the queue is empty, we are done.
-		if (this.execQueue.isEmpty())
+		if (runMonitor)
 		{
-			this.deleteRunningFile();
+			this.startRefresher();
 		}
-		// Otherwise, let's start the process.
-		else
+	}
+
+
+	/**
+	 * Adds the root process to the queue and processes the queue.
+	 * 
+	 * @param process 
+	 */
+	private synchronized void startRootProcess(ProcessSetting process)
+	{
+		try
 		{
-			this.processQueue();
+			this.addExecToQeue(new Exec(process, this));
+		}
+		catch (Exception e)
+		{
+			Logger.logError("Cannot create execution for process setting " + process.getId() + ": " + e.getMessage());
+		}
+
+		this.processQueue();
+	}
+
+
+	/**
+	 * Ends the processing if there is nothing to run after the tree load.
+	 */
+	private synchronized void manageTreeLoaded()
+	{
+		if (this.runningThreads == 0 && this.execQueue.isEmpty())
+		{
+			this.deleteRunningFile();
 		}
 	}
 
@@ -294,6 +747,17 @@ final public class Paralexec
 	}
 
 
+	/**
+	 * Starts the process tree refresher.
+	 */
+	private void startRefresher()
+	{
+		ProcessTreeRefresher refresher = new ProcessTreeRefresher(this);
+
+		refresher.start();
+	}
+
+
 	/**
 	 * Creates the running file.
 	 */
@@ -344,8 +808,10 @@ final public class Paralexec
 	 *
 	 * @param exec
 	 */
-	private void addExecToQeue(Exec exec)
+	private synchronized void addExecToQeue(Exec exec)
 	{
+		exec.markQueued();
+
 		this.execQueue.add(exec);
 	}
 
@@ -353,7 +819,7 @@ final public class Paralexec
 	/**
 	 * Processes the Exec queue.
 	 */
-	private void processQueue()
+	private synchronized void processQueue()
 	{
 		if (!this.isRunning())
 		{
@@ -365,14 +831,16 @@ final public class Paralexec
 		{
 			this.processingQueue = true;
 
-			while ((this.runningThreadsMaxCount == 0 || this.runningThreads < this.runningThreadsMaxCount) && !this.execQueue.isEmpty() && this.isRunning())
+			while ((this.runningThreadsMaxCount == 0 || this.runningThreads + this.backupRunsCount < this.runningThreadsMaxCount) && !this.execQueue.isEmpty() && this.isRunning())
 			{
 				this.runningThreads++;
 
-				Logger.log("Executing process (threads count = " + this.runningThreads + ").");
+				Logger.info("Executing process.", "threads", this.runningThreads, "queued", this.execQueue.size());
 
 				Exec exec = (Exec) this.execQueue.poll();
 
+				MetricsRegistry.histogram("paralexec_queue_wait_seconds", "Time of the Exec in the queue.").observeNanos(System.nanoTime() - exec.getQueuedTime());
+
 				this.addRunningExec(exec);
 				this.markProcessAsRunning(exec.getProcess());
 
@@ -389,7 +857,7 @@ final public class Paralexec
 	 *
 	 * @param exec
 	 */
-	private void addRunningExec(Exec exec)
+	private synchronized void addRunningExec(Exec exec)
 	{
 		this.runningExecs.put(exec.getProcess().getId(), exec);
 	}
@@ -400,20 +868,30 @@ final public class Paralexec
 	 *
 	 * @param exec
 	 */
-	private void deleteRunningExec(Exec exec)
+	private synchronized void deleteRunningExec(Exec exec)
 	{
 		this.runningExecs.remove(exec.getProcess().getId());
 	}
 
 
+	/**
+	 * @return Running Execs (copy).
+	 */
+	public synchronized List<Exec> getRunningExecs()
+	{
+		return new ArrayList<>(this.runningExecs.values());
+	}
+
+
 	/**
 	 * Stops all execs from the list of running execs.
 	 */
-	private void interruptAllRunningExecs()
+	private synchronized void interruptAllRunningExecs()
 	{
-		for (Map.Entry<Integer, Exec> item : this.runningExecs.entrySet())
+		// Interrupted Execs remove themselves from the map.
+		for (Exec exec : new ArrayList<>(this.runningExecs.values()))
 		{
-			item.getValue().interrupt();
+			exec.interrupt();
 		}
 	}
 
@@ -421,18 +899,21 @@ final public class Paralexec
 	/**
 	 * Stops processing.
 	 */
-	public void stopProcessing()
+	public synchronized void stopProcessing()
 	{
 		Logger.log("Interrupting Execs.");
 		this.interruptAllRunningExecs();
 
+		// Pending transitions have to be written before the running processes are reset.
+		this.stateWriter.flush();
+
 		try
 		{
-			this.processTable.stopRunningProcesses();
+			this.processStore.stopRunningProcesses();
 		}
 		catch (DatabaseException e)
 		{
-			Logger.log("Unable to mark running processes as waiting: " + e.getMessage());
+			Logger.logError("Unable to mark running processes as waiting: " + e.getMessage());
 		}
 	}
 
@@ -444,14 +925,7 @@ final public class Paralexec
 	 */
 	private void markProcessAsRunning(ProcessSetting process)
 	{
-		try
-		{
-			this.processTable.markProcessAsRunning(process.getId());
-		}
-		catch (DatabaseException e)
-		{
-			Logger.logError("Unable to mark process " + process.getId() + " as running: " + e.getMessage());
-		}
+		this.stateWriter.markProcessAsRunning(process.getId());
 	}
 
 
@@ -461,14 +935,51 @@ final public class Paralexec
 	 * @param process
 	 */
 	private void markProcessAsFinished(ProcessSetting process, String error)
+	{
+		this.stateWriter.markProcessAsFinished(process.getId(), error);
+	}
+
+
+	/**
+	 * @param	process
+	 * @return	Names of the input files processed by the previous runs (checkpoints).
+	 * @throws	DatabaseException
+	 */
+	public Set<String> getProcessedFiles(ProcessSetting process) throws DatabaseException
+	{
+		return this.processStore.getProcessedFiles(process.getId());
+	}
+
+
+	/**
+	 * Enqueues the checkpoint of the processed input file.
+	 *
+	 * @param process
+	 * @param fileName
+	 */
+	public void markFileAsProcessed(ProcessSetting process, String fileName)
+	{
+		this.stateWriter.markFileAsProcessed(process.getId(), fileName);
+	}
+
+
+	/**
+	 * Records the quarantined input file of the process.
+	 *
+	 * @param process
+	 * @param fileName
+	 * @param attempts
+	 * @param error
+	 */
+	public void quarantineFile(ProcessSetting process, String fileName, int attempts, String error)
 	{
 		try
 		{
-			this.processTable.markProcessAsFinished(process.getId(), error);
+			this.processStore.quarantineFile(process.getId(), fileName, attempts, error);
 		}
 		catch (DatabaseException e)
 		{
-			Logger.logError("Unable to mark process " + process.getId() + " as finished: " + e.getMessage());
+			Logger.logError("Unable to record quarantined file " + fileName + " of process " + process.getId() + ": " + e.getMessage());
 		}
 	}
 
@@ -478,19 +989,68 @@ final public class Paralexec
 	 *
 	 * @param exec
 	 */
-	public void manageExecStart(Exec exec)
+	public synchronized void manageExecStart(Exec exec)
 	{
 		this.addExecToQeue(exec);
 		this.processQueue();
 	}
 
 
+	/**
+	 * Takes the idle thread slot for the backup run of the straggler file.
+	 *
+	 * @return TRUE if the slot has been taken (it has to be released).
+	 */
+	public synchronized boolean acquireBackupSlot()
+	{
+		// Waiting Execs go first.
+		if (!this.isRunning() || !this.execQueue.isEmpty())
+		{
+			return false;
+		}
+
+		if (this.runningThreadsMaxCount > 0 && this.runningThreads + this.backupRunsCount >= this.runningThreadsMaxCount)
+		{
+			return false;
+		}
+
+		this.backupRunsCount++;
+
+		return true;
+	}
+
+
+	/**
+	 * Releases the slot of the finished backup run.
+	 */
+	public synchronized void releaseBackupSlot()
+	{
+		this.backupRunsCount--;
+
+		if (!this.execQueue.isEmpty())
+		{
+			this.processQueue();
+		}
+	}
+
+
+	/**
+	 * Manages start of the process chained with the running Exec.
+	 *
+	 * @param process
+	 */
+	public void manageChainedProcessStart(ProcessSetting process)
+	{
+		this.markProcessAsRunning(process);
+	}
+
+
 	/**
 	 * Manages the exec restart.
 	 *
 	 * @param newExec
 	 */
-	public void manageExecRestart(Exec newExec)
+	public synchronized void manageExecRestart(Exec newExec)
 	{
 		// Rewrite the old exec with the new one.
 		this.addRunningExec(newExec);
@@ -502,18 +1062,33 @@ final public class Paralexec
 	 *
 	 * @param exec
 	 */
-	public void manageExecEnd(Exec exec)
+	public synchronized void manageExecEnd(Exec exec)
 	{
 		this.runningThreads--;
 
 		this.deleteRunningExec(exec);
 		this.markProcessAsFinished(exec.getProcess(), exec.getError());
 
-		Logger.log("Ending process (threads count = " + this.runningThreads + ").");
+		// Checkpoints are kept for the rerun of the failed process.
+		if (exec.getError() == null)
+		{
+			this.stateWriter.clearProcessedFiles(exec.getProcess().getId());
+		}
+
+		if (exec.getChainedChild() != null)
+		{
+			this.markProcessAsFinished(exec.getChainedChild(), exec.getError());
+		}
+
+		Logger.info("Ending process.", "process", exec.getProcess().getId(), "threads", this.runningThreads, "queued", this.execQueue.size());
 
+		// Processing can't end while the tree is loading (more roots can come).
 		if (this.runningThreads == 0 && this.execQueue.isEmpty())
 		{
-			this.deleteRunningFile();
+			if (this.processTree.isLoaded())
+			{
+				this.deleteRunningFile();
+			}
 		}
 		else
 		{
@@ -527,7 +1102,7 @@ final public class Paralexec
 	 *
 	 * @param exec
 	 */
-	public void manageExecInterruption(Exec exec)
+	public synchronized void manageExecInterruption(Exec exec)
 	{
 		this.deleteRunningExec(exec);
 	}
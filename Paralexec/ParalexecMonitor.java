@@ -1,10 +1,25 @@
 package Paralexec;
 
+import Metrics.MetricsRegistry;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Paralexec monitor.
  *
  * Monitor is permanent checker of the Paralexec condition.
  *
+ * Execs without any progress (no processed file, no activity of the processes
+ * and no output change) are recovered one by one - their processes are killed
+ * and the current file is retried, other Execs keep running. Exec which stalls
+ * again after the maximum number of recoveries is ended with the error.
+ * Paralexec is restarted only if the scheduler itself is stucked (no running Exec
+ * and no change).
+ *
+ * Settings:
+ *
+ *  - paralexec.watchdog.execStallTime - Exec time without progress before the recovery in seconds (default 7200)
+ *
  * @author oto
  */
 final public class ParalexecMonitor implements Runnable
@@ -19,6 +34,18 @@ final public class ParalexecMonitor implements Runnable
 	 * Paralexec minimal running time.
 	 */
 	private static long PARALEXEC_UNCHANGED_STATE_MAX_TIME = 1000 * 3600 * 2; // 2h
+
+
+	/**
+	 * Exec maximal time without progress (miliseconds).
+	 */
+	private static long EXEC_UNCHANGED_STATE_MAX_TIME = Math.max(60, Settings.getLong("watchdog.execStallTime", 7200)) * 1000;
+
+
+	/**
+	 * Exec max recoveries count (per process).
+	 */
+	private static int EXEC_RECOVERIES_MAX_COUNT = 3;
 	
 	
 	/**
@@ -33,6 +60,12 @@ final public class ParalexecMonitor implements Runnable
 	private int paralexecRestarts = 0;
 
 
+	/**
+	 * <Process ID => Exec recoveries count>
+	 */
+	private Map<Integer, Integer> execRecoveries = new HashMap<>();
+
+
 	/**
 	 * Getting mister Paralexec through construnctor.
 	 *
@@ -50,9 +83,11 @@ final public class ParalexecMonitor implements Runnable
 		// Loop checking of the running file.
 		while (this.paralexec.isRunning())
 		{
+			this.recoverStalledExecs();
+
 			if (this.paralexecRestarts <= PARALEXEC_RESTARTS_MAX_COUNT && this.isParalexecStucked())
 			{
-				Logger.log("Paralexec seems to be stucked. Restarting it.");
+				Logger.log("Paralexec scheduler seems to be stucked. Restarting it.");
 				
 				try
 				{
@@ -64,10 +99,13 @@ final public class ParalexecMonitor implements Runnable
 					Logger.log("Stopping Paralexec.");
 					
 					this.paralexec.stopProcessing();
+					this.paralexec.stopMetricsServer();
 					return;
 				}
 				
 				this.paralexecRestarts++;
+
+				MetricsRegistry.counter("paralexec_restarts", "Paralexec restarts triggered by ParalexecMonitor.").increment();
 			}
 			
 			try
@@ -80,17 +118,63 @@ final public class ParalexecMonitor implements Runnable
 		Logger.log("Running file disappeared. Stopping Paralexec.");
 
 		this.paralexec.stopProcessing();
+		this.paralexec.stopMetricsServer();
 	}
 	
 	
 	/**
-	 * Checks if the Paralexec is stucked. 
+	 * Recovers the running Execs without progress.
+	 */
+	private void recoverStalledExecs()
+	{
+		for (Exec exec : this.paralexec.getRunningExecs())
+		{
+			long idleTime = exec.getIdleTime();
+
+			if (idleTime <= EXEC_UNCHANGED_STATE_MAX_TIME)
+			{
+				continue;
+			}
+
+			int processId	= exec.getProcess().getId();
+			int recoveries	= this.execRecoveries.getOrDefault(processId, 0);
+
+			if (recoveries >= EXEC_RECOVERIES_MAX_COUNT)
+			{
+				Logger.error("Exec is stucked after the maximum number of recoveries. Ending it.", "process", processId, "idle", idleTime / 1000, "recoveries", recoveries);
+
+				exec.abort("Exec has been stucked for " + (idleTime / 1000) + " seconds.");
+
+				MetricsRegistry.counter("paralexec_exec_aborts", "Stucked Execs ended by ParalexecMonitor.").increment();
+
+				continue;
+			}
+
+			Logger.warn("Exec seems to be stucked. Recovering it.", "process", processId, "attempt", exec.getAttemptsCount(), "idle", idleTime / 1000);
+
+			// Exec has finished meanwhile.
+			if (!exec.recover())
+			{
+				continue;
+			}
+
+			this.execRecoveries.put(processId, recoveries + 1);
+
+			MetricsRegistry.counter("paralexec_exec_recoveries", "Stucked Execs recovered by ParalexecMonitor.").increment();
+		}
+	}
+
+
+	/**
+	 * Checks if the Paralexec scheduler is stucked - nothing is running and nothing has changed.
+	 *
+	 * Running Execs are recovered individually.
 	 *
 	 * @return 
 	 */
 	private boolean isParalexecStucked()
 	{	
-		return this.paralexec.getLastChangeTime() > PARALEXEC_UNCHANGED_STATE_MAX_TIME;
+		return this.paralexec.getLastChangeTime() > PARALEXEC_UNCHANGED_STATE_MAX_TIME && this.paralexec.getRunningExecs().isEmpty();
 	}
 
 
@@ -0,0 +1,332 @@
+package Paralexec;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Process activity monitor.
+ *
+ * It can tell if the running processes (and their descendants) are consuming
+ * the CPU or doing the I/O. It samples /proc/<pid>/stat (user and system CPU ticks)
+ * and /proc/<pid>/io (read and written characters), which is much cheaper
+ * than listing the output directory.
+ *
+ * The samples are also accumulated into the file resource usage (CPU time,
+ * peak RSS from /proc/<pid>/status and I/O). Processes are sampled on every check,
+ * so the usage of the last check interval before the process end is not counted.
+ * The cgroup accounting (see ExecCgroup) replaces it, the cgroup counters
+ * include the exited programs.
+ *
+ * On systems without /proc it never reports any activity.
+ *
+ * @author oto
+ */
+final public class ProcessActivityMonitor
+{
+	/**
+	 * Proc file system root.
+	 */
+	private static Path PROC_PATH = Paths.get("/proc");
+
+
+	/**
+	 * Index of the utime field in /proc/<pid>/stat (counted from the field after the command name).
+	 */
+	private static int STAT_UTIME_INDEX = 11;
+
+
+	/**
+	 * Clock ticks per second of the /proc/<pid>/stat times (USER_HZ).
+	 */
+	private static double CLOCK_TICKS = 100.0;
+
+
+	/**
+	 * Sample fields.
+	 */
+	private static int USER_TICKS = 0;
+
+
+	private static int SYSTEM_TICKS = 1;
+
+
+	private static int READ_BYTES = 2;
+
+
+	private static int WRITTEN_BYTES = 3;
+
+
+	private static int PEAK_RSS = 4;
+
+
+	/**
+	 * Monitored root process IDs.
+	 */
+	private Set<Long> processIds;
+
+
+	/**
+	 * Last samples of the running processes.
+	 */
+	private Map<Long, long[]> processActivity = new HashMap<>();
+
+
+	/**
+	 * Accumulated usage of the finished processes.
+	 */
+	private long[] finishedUsage = new long[PEAK_RSS + 1];
+
+
+	/**
+	 * @param processIds Monitored root process IDs (can change between checks).
+	 */
+	public ProcessActivityMonitor(Set<Long> processIds)
+	{
+		this.processIds = processIds;
+	}
+
+
+	/**
+	 * @return TRUE if /proc file system is available.
+	 */
+	public static boolean isAvailable()
+	{
+		return Files.isDirectory(PROC_PATH.resolve("self"));
+	}
+
+
+	/**
+	 * Samples the processes activity.
+	 *
+	 * @return TRUE if any process consumed the CPU or did the I/O since the last check.
+	 */
+	public synchronized boolean hasProcessActivity()
+	{
+		Map<Long, long[]> activity	= new HashMap<>();
+		boolean isActive			= false;
+
+		for (Long pid : this.processIds)
+		{
+			this.sampleProcess(pid, activity);
+
+			ProcessHandle.of(pid).ifPresent(handle ->
+					handle.descendants().forEach(descendant -> this.sampleProcess(descendant.pid(), activity))
+			);
+		}
+
+		for (Map.Entry<Long, long[]> entry : activity.entrySet())
+		{
+			long[] last		= this.processActivity.get(entry.getKey());
+			long[] current	= entry.getValue();
+
+			// New process or growth of the CPU time or the I/O.
+			if (last == null || this.getCpuTicks(current) > this.getCpuTicks(last) || this.getIoBytes(current) > this.getIoBytes(last))
+			{
+				isActive = true;
+			}
+		}
+
+		// Last samples of the finished processes are accumulated.
+		for (Map.Entry<Long, long[]> entry : this.processActivity.entrySet())
+		{
+			if (!activity.containsKey(entry.getKey()))
+			{
+				this.addUsage(this.finishedUsage, entry.getValue());
+			}
+		}
+
+		this.processActivity = activity;
+
+		return isActive;
+	}
+
+
+	/**
+	 * Samples the processes and returns the usage accumulated since the last reset.
+	 *
+	 * @param	wallTime	File wall time (in seconds).
+	 * @return	File resource usage.
+	 */
+	public synchronized FileResourceUsage getResourceUsage(double wallTime)
+	{
+		this.hasProcessActivity();
+
+		long[] usage = this.finishedUsage.clone();
+
+		for (long[] sample : this.processActivity.values())
+		{
+			this.addUsage(usage, sample);
+		}
+
+		return new FileResourceUsage(
+				wallTime,
+				usage[USER_TICKS] / CLOCK_TICKS,
+				usage[SYSTEM_TICKS] / CLOCK_TICKS,
+				usage[PEAK_RSS],
+				usage[READ_BYTES],
+				usage[WRITTEN_BYTES]
+		);
+	}
+
+
+	/**
+	 * Forgets the accumulated usage (new file start).
+	 */
+	public synchronized void reset()
+	{
+		this.processActivity	= new HashMap<>();
+		this.finishedUsage		= new long[PEAK_RSS + 1];
+	}
+
+
+	/**
+	 * Adds the process sample to the usage.
+	 *
+	 * CPU time and I/O are summed, the peak RSS is the maximum (pipeline programs run one after another).
+	 *
+	 * @param usage
+	 * @param sample
+	 */
+	private void addUsage(long[] usage, long[] sample)
+	{
+		for (int i = 0; i < PEAK_RSS; i++)
+		{
+			usage[i] += sample[i];
+		}
+
+		usage[PEAK_RSS] = Math.max(usage[PEAK_RSS], sample[PEAK_RSS]);
+	}
+
+
+	/**
+	 * @param	sample
+	 * @return	User and system CPU ticks of the sample.
+	 */
+	private long getCpuTicks(long[] sample)
+	{
+		return sample[USER_TICKS] + sample[SYSTEM_TICKS];
+	}
+
+
+	/**
+	 * @param	sample
+	 * @return	Read and written bytes of the sample.
+	 */
+	private long getIoBytes(long[] sample)
+	{
+		return sample[READ_BYTES] + sample[WRITTEN_BYTES];
+	}
+
+
+	/**
+	 * Reads the process activity into the map.
+	 *
+	 * @param pid
+	 * @param activity
+	 */
+	private void sampleProcess(long pid, Map<Long, long[]> activity)
+	{
+		if (activity.containsKey(pid))
+		{
+			return;
+		}
+
+		long[] sample = new long[PEAK_RSS + 1];
+
+		// Process has already finished.
+		if (!this.readCpuTicks(pid, sample))
+		{
+			return;
+		}
+
+		this.readIoBytes(pid, sample);
+		this.readPeakRss(pid, sample);
+
+		activity.put(pid, sample);
+	}
+
+
+	/**
+	 * Reads user and system CPU ticks of the process into the sample.
+	 *
+	 * @param	pid
+	 * @param	sample
+	 * @return	FALSE if the process stat is not readable.
+	 */
+	private boolean readCpuTicks(long pid, long[] sample)
+	{
+		try
+		{
+			String stat = new String(Files.readAllBytes(PROC_PATH.resolve(pid + "/stat")), StandardCharsets.US_ASCII);
+
+			// Command name can contain spaces, so the fields are counted from its end.
+			String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+
+			sample[USER_TICKS]		= Long.parseLong(fields[STAT_UTIME_INDEX]);
+			sample[SYSTEM_TICKS]	= Long.parseLong(fields[STAT_UTIME_INDEX + 1]);
+
+			return true;
+		}
+		catch (IOException | RuntimeException e)
+		{
+			return false;
+		}
+	}
+
+
+	/**
+	 * Reads read and written characters (including pipes) of the process into the sample.
+	 *
+	 * @param pid
+	 * @param sample
+	 */
+	private void readIoBytes(long pid, long[] sample)
+	{
+		try
+		{
+			for (String line : Files.readAllLines(PROC_PATH.resolve(pid + "/io"), StandardCharsets.US_ASCII))
+			{
+				if (line.startsWith("rchar:"))
+				{
+					sample[READ_BYTES] = Long.parseLong(line.substring(6).trim());
+				}
+				else if (line.startsWith("wchar:"))
+				{
+					sample[WRITTEN_BYTES] = Long.parseLong(line.substring(6).trim());
+				}
+			}
+		}
+		// The io file is readable only for the process owner.
+		catch (IOException | RuntimeException e) {}
+	}
+
+
+	/**
+	 * Reads peak resident set size (VmHWM in KB) of the process into the sample.
+	 *
+	 * @param pid
+	 * @param sample
+	 */
+	private void readPeakRss(long pid, long[] sample)
+	{
+		try
+		{
+			for (String line : Files.readAllLines(PROC_PATH.resolve(pid + "/status"), StandardCharsets.US_ASCII))
+			{
+				if (line.startsWith("VmHWM:"))
+				{
+					sample[PEAK_RSS] = Long.parseLong(line.substring(6).replace("kB", "").trim());
+
+					break;
+				}
+			}
+		}
+		catch (IOException | RuntimeException e) {}
+	}
+}
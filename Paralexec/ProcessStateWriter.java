@@ -0,0 +1,351 @@
+package Paralexec;
+
+import Database.DatabaseException;
+import Database.ProcessStateChange;
+import Database.ProcessStore;
+import Metrics.MetricsRegistry;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Write-behind writer of the executed process states.
+ *
+ * The scheduler only enqueues the state transitions (with the event time),
+ * the background thread coalesces them per process and flushes them
+ * in JDBC batches.
+ *
+ * Transitions of one process are written in their order - RUNNING after
+ * FINISHED is not coalesced, it waits for the next batch round.
+ * Failed batches are kept and retried.
+ *
+ * Processed input files (checkpoints) are written in the same way, one batch
+ * per flush. Lost checkpoint only means the file is processed again.
+ *
+ * Settings:
+ *
+ *  - paralexec.db.flushInterval - maximal delay of the state write in milliseconds (default 200)
+ *
+ * @author oto
+ */
+final public class ProcessStateWriter implements Runnable
+{
+	/**
+	 * Maximal delay of the state write (miliseconds).
+	 */
+	private static long FLUSH_INTERVAL = Math.max(1, Settings.getLong("db.flushInterval", 200));
+
+
+	/**
+	 * Executed processes store.
+	 */
+	private ProcessStore processStore;
+
+
+	/**
+	 * <Process ID => pending changes in their order>
+	 */
+	private Map<Integer, LinkedList<ProcessStateChange>> pendingChanges = new LinkedHashMap<>();
+
+
+	/**
+	 * <Process ID => pending processed input file names>
+	 */
+	private Map<Integer, List<String>> pendingFiles = new LinkedHashMap<>();
+
+
+	/**
+	 * Processes with the pending removal of the processed files.
+	 */
+	private Set<Integer> clearedProcesses = new LinkedHashSet<>();
+
+
+	/**
+	 * Lock of the flush (keeps the batches in order).
+	 */
+	private final Object flushLock = new Object();
+
+
+	/**
+	 * Running flag.
+	 */
+	private volatile boolean isRunning = false;
+
+
+	/**
+	 * @param processStore
+	 */
+	public ProcessStateWriter(ProcessStore processStore)
+	{
+		this.processStore = processStore;
+	}
+
+
+	/**
+	 * Creates and starts the writer thread.
+	 */
+	public void start()
+	{
+		Thread thread = new Thread(this, "paralexec-state-writer");
+
+		this.isRunning = true;
+
+		thread.setDaemon(true);
+		thread.start();
+
+		// Pending changes are written also on the JVM exit.
+		Runtime.getRuntime().addShutdownHook(new Thread(this::flush));
+	}
+
+
+	/**
+	 * Enqueues the RUNNING transition.
+	 *
+	 * @param processId
+	 */
+	public void markProcessAsRunning(int processId)
+	{
+		this.enqueue(ProcessStateChange.running(processId, new Timestamp(System.currentTimeMillis())));
+	}
+
+
+	/**
+	 * Enqueues the FINISHED transition.
+	 *
+	 * @param processId
+	 * @param error
+	 */
+	public void markProcessAsFinished(int processId, String error)
+	{
+		this.enqueue(ProcessStateChange.finished(processId, new Timestamp(System.currentTimeMillis()), error));
+	}
+
+
+	/**
+	 * Enqueues the checkpoint of the processed input file.
+	 *
+	 * @param processId
+	 * @param fileName
+	 */
+	public synchronized void markFileAsProcessed(int processId, String fileName)
+	{
+		this.pendingFiles.computeIfAbsent(processId, id -> new ArrayList<>()).add(fileName);
+	}
+
+
+	/**
+	 * Enqueues the removal of the process checkpoints (the process has finished).
+	 *
+	 * @param processId
+	 */
+	public synchronized void clearProcessedFiles(int processId)
+	{
+		this.pendingFiles.remove(processId);
+		this.clearedProcesses.add(processId);
+	}
+
+
+	/**
+	 * Adds the change to the pending changes of the process.
+	 *
+	 * @param change
+	 */
+	private synchronized void enqueue(ProcessStateChange change)
+	{
+		LinkedList<ProcessStateChange> changes = this.pendingChanges.computeIfAbsent(change.getProcessId(), id -> new LinkedList<>());
+
+		if (changes.isEmpty() || !changes.getLast().coalesce(change))
+		{
+			changes.add(change);
+		}
+	}
+
+
+	/**
+	 * @return Number of the pending changes.
+	 */
+	public synchronized int getPendingCount()
+	{
+		int count = 0;
+
+		for (List<ProcessStateChange> changes : this.pendingChanges.values())
+		{
+			count += changes.size();
+		}
+
+		return count;
+	}
+
+
+	/**
+	 * Writes all pending changes synchronously.
+	 *
+	 * Batch round contains the first pending change of every process,
+	 * so the order of one process changes is kept.
+	 */
+	public void flush()
+	{
+		synchronized (this.flushLock)
+		{
+			List<ProcessStateChange> round;
+
+			while (!(round = this.getNextRound()).isEmpty())
+			{
+				try
+				{
+					List<Integer> missing = this.processStore.updateProcessStates(round);
+
+					for (Integer processId : missing)
+					{
+						Logger.warn("No affected rows after process marking.", "process", processId);
+					}
+
+					MetricsRegistry.counter("paralexec_db_state_changes", "Written process state changes.").add(round.size());
+				}
+				catch (DatabaseException e)
+				{
+					Logger.logError("Unable to write process states: " + e.getMessage());
+
+					this.returnRound(round);
+
+					return;
+				}
+			}
+
+			this.flushFiles();
+		}
+	}
+
+
+	/**
+	 * Writes the pending checkpoints.
+	 */
+	private void flushFiles()
+	{
+		Set<Integer> clearedProcesses;
+		Map<Integer, List<String>> files;
+
+		synchronized (this)
+		{
+			if (this.clearedProcesses.isEmpty() && this.pendingFiles.isEmpty())
+			{
+				return;
+			}
+
+			clearedProcesses		= this.clearedProcesses;
+			files					= this.pendingFiles;
+			this.clearedProcesses	= new LinkedHashSet<>();
+			this.pendingFiles		= new LinkedHashMap<>();
+		}
+
+		try
+		{
+			for (Integer processId : clearedProcesses)
+			{
+				this.processStore.clearProcessedFiles(processId);
+			}
+
+			clearedProcesses.clear();
+
+			if (!files.isEmpty())
+			{
+				this.processStore.markFilesAsProcessed(files);
+
+				MetricsRegistry.counter("paralexec_db_file_checkpoints", "Written processed file checkpoints.").add(files.values().stream().mapToLong(List::size).sum());
+			}
+		}
+		catch (DatabaseException e)
+		{
+			Logger.logError("Unable to write processed files: " + e.getMessage());
+
+			this.returnFiles(clearedProcesses, files);
+		}
+	}
+
+
+	/**
+	 * Returns the failed checkpoints before the newer pending ones.
+	 *
+	 * @param clearedProcesses
+	 * @param files
+	 */
+	private synchronized void returnFiles(Set<Integer> clearedProcesses, Map<Integer, List<String>> files)
+	{
+		for (Map.Entry<Integer, List<String>> processFiles : files.entrySet())
+		{
+			// Process has been finished meanwhile.
+			if (this.clearedProcesses.contains(processFiles.getKey()))
+			{
+				continue;
+			}
+
+			List<String> newerFiles = this.pendingFiles.remove(processFiles.getKey());
+
+			if (newerFiles != null)
+			{
+				processFiles.getValue().addAll(newerFiles);
+			}
+
+			this.pendingFiles.put(processFiles.getKey(), processFiles.getValue());
+		}
+
+		clearedProcesses.addAll(this.clearedProcesses);
+
+		this.clearedProcesses = clearedProcesses;
+	}
+
+
+	/**
+	 * Takes the first pending change of every process.
+	 *
+	 * @return Changes of the batch round.
+	 */
+	private synchronized List<ProcessStateChange> getNextRound()
+	{
+		List<ProcessStateChange> round = new ArrayList<>();
+
+		for (LinkedList<ProcessStateChange> changes : this.pendingChanges.values())
+		{
+			round.add(changes.removeFirst());
+		}
+
+		this.pendingChanges.values().removeIf(List::isEmpty);
+
+		return round;
+	}
+
+
+	/**
+	 * Returns the failed round before the newer pending changes.
+	 *
+	 * @param round
+	 */
+	private synchronized void returnRound(List<ProcessStateChange> round)
+	{
+		for (ProcessStateChange change : round)
+		{
+			this.pendingChanges.computeIfAbsent(change.getProcessId(), id -> new LinkedList<>()).addFirst(change);
+		}
+	}
+
+
+	@Override
+	public void run()
+	{
+		while (this.isRunning)
+		{
+			try
+			{
+				Thread.sleep(FLUSH_INTERVAL);
+			}
+			catch (InterruptedException e) {}
+
+			this.flush();
+		}
+	}
+}
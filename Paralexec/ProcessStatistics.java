@@ -0,0 +1,530 @@
+package Paralexec;
+
+import java.util.Arrays;
+
+/**
+ * Streaming runtime model of one process setting.
+ *
+ * Every update is O(1) and the model keeps only primitives:
+ *
+ *  - EWMA of the file rate (seconds per KB)
+ *  - P-square estimates of the file rate quantiles (p50, p95, p99)
+ *  - least squares regression of the running time on the file size
+ *  - resource usage aggregates (CPU time, CPU utilization, peak RSS, I/O)
+ *
+ * The model can be serialized, so the history survives the Paralexec runs.
+ *
+ * @author oto
+ */
+final public class ProcessStatistics
+{
+	/**
+	 * EWMA smoothing factor.
+	 */
+	private static double EWMA_ALPHA = 0.2;
+
+
+	/**
+	 * Minimal number of the observations for the regression.
+	 */
+	private static int REGRESSION_MIN_COUNT = 3;
+
+
+	/**
+	 * Observations count.
+	 */
+	private long count = 0;
+
+
+	/**
+	 * EWMA of the file rate (seconds per KB).
+	 */
+	private double ewmaRate = 0;
+
+
+	/**
+	 * File rate median estimate.
+	 */
+	private final P2Quantile rateP50 = new P2Quantile(0.5);
+
+
+	/**
+	 * File rate 95th percentile estimate.
+	 */
+	private final P2Quantile rateP95 = new P2Quantile(0.95);
+
+
+	/**
+	 * File rate 99th percentile estimate.
+	 */
+	private final P2Quantile rateP99 = new P2Quantile(0.99);
+
+
+	/**
+	 * Serialization format version.
+	 */
+	private static String FORMAT_VERSION = "2";
+
+
+	/**
+	 * Serialization format version without the resource usage.
+	 */
+	private static String FORMAT_VERSION_1 = "1";
+
+
+	/**
+	 * Regression sums - x is the file size (KB), y is the running time (seconds).
+	 */
+	private double sumX = 0;
+
+
+	private double sumY = 0;
+
+
+	private double sumXX = 0;
+
+
+	private double sumXY = 0;
+
+
+	private double sumYY = 0;
+
+
+	/**
+	 * Observations count with the resource usage.
+	 */
+	private long resourceCount = 0;
+
+
+	/**
+	 * Resource usage sums - CPU times (seconds) and I/O (bytes).
+	 */
+	private double sumUserCpuTime = 0;
+
+
+	private double sumSystemCpuTime = 0;
+
+
+	private double sumReadBytes = 0;
+
+
+	private double sumWrittenBytes = 0;
+
+
+	/**
+	 * Maximum peak RSS (KB).
+	 */
+	private double maxPeakRss = 0;
+
+
+	/**
+	 * EWMA of the CPU utilization (CPU time per wall time).
+	 */
+	private double ewmaCpuUtilization = 0;
+
+
+	/**
+	 * Adds the processed file observation.
+	 *
+	 * @param runningTime	File running time (in seconds).
+	 * @param fileSize		File size (in KB).
+	 */
+	public synchronized void addObservation(double runningTime, double fileSize)
+	{
+		double rate = runningTime / fileSize;
+
+		this.ewmaRate = this.count == 0 ? rate : this.ewmaRate + EWMA_ALPHA * (rate - this.ewmaRate);
+
+		this.rateP50.add(rate);
+		this.rateP95.add(rate);
+		this.rateP99.add(rate);
+
+		this.sumX	+= fileSize;
+		this.sumY	+= runningTime;
+		this.sumXX	+= fileSize * fileSize;
+		this.sumXY	+= fileSize * runningTime;
+		this.sumYY	+= runningTime * runningTime;
+
+		this.count++;
+	}
+
+
+	/**
+	 * Adds the processed file observation with the resource usage.
+	 *
+	 * @param usage		File resource usage.
+	 * @param fileSize	File size (in KB).
+	 */
+	public synchronized void addObservation(FileResourceUsage usage, double fileSize)
+	{
+		this.addObservation(usage.getWallTime(), fileSize);
+
+		this.ewmaCpuUtilization = this.resourceCount == 0
+				? usage.getCpuUtilization()
+				: this.ewmaCpuUtilization + EWMA_ALPHA * (usage.getCpuUtilization() - this.ewmaCpuUtilization);
+
+		this.sumUserCpuTime			+= usage.getUserCpuTime();
+		this.sumSystemCpuTime		+= usage.getSystemCpuTime();
+		this.sumReadBytes			+= usage.getReadBytes();
+		this.sumWrittenBytes		+= usage.getWrittenBytes();
+		this.maxPeakRss				= Math.max(this.maxPeakRss, usage.getPeakRss());
+
+		this.resourceCount++;
+	}
+
+
+	/**
+	 * @return Observations count.
+	 */
+	public synchronized long getCount()
+	{
+		return this.count;
+	}
+
+
+	/**
+	 * @return EWMA of the file rate (seconds per KB).
+	 */
+	public synchronized double getEwmaRate()
+	{
+		return this.ewmaRate;
+	}
+
+
+	/**
+	 * @return File rate median (seconds per KB).
+	 */
+	public synchronized double getRateP50()
+	{
+		return this.rateP50.getValue();
+	}
+
+
+	/**
+	 * @return File rate 95th percentile (seconds per KB).
+	 */
+	public synchronized double getRateP95()
+	{
+		return this.rateP95.getValue();
+	}
+
+
+	/**
+	 * @return File rate 99th percentile (seconds per KB).
+	 */
+	public synchronized double getRateP99()
+	{
+		return this.rateP99.getValue();
+	}
+
+
+	/**
+	 * @return Observations count with the resource usage.
+	 */
+	public synchronized long getResourceCount()
+	{
+		return this.resourceCount;
+	}
+
+
+	/**
+	 * @return EWMA of the CPU utilization (number of busy cores, 0 = I/O bound).
+	 */
+	public synchronized double getCpuUtilization()
+	{
+		return this.ewmaCpuUtilization;
+	}
+
+
+	/**
+	 * @return Share of the system CPU time in the CPU time.
+	 */
+	public synchronized double getSystemCpuShare()
+	{
+		double cpuTime = this.sumUserCpuTime + this.sumSystemCpuTime;
+
+		return cpuTime > 0 ? this.sumSystemCpuTime / cpuTime : 0;
+	}
+
+
+	/**
+	 * @return Average read bytes per file.
+	 */
+	public synchronized double getAverageReadBytes()
+	{
+		return this.resourceCount > 0 ? this.sumReadBytes / this.resourceCount : 0;
+	}
+
+
+	/**
+	 * @return Average written bytes per file.
+	 */
+	public synchronized double getAverageWrittenBytes()
+	{
+		return this.resourceCount > 0 ? this.sumWrittenBytes / this.resourceCount : 0;
+	}
+
+
+	/**
+	 * @return Maximum peak RSS of the files (in KB).
+	 */
+	public synchronized long getMaxPeakRss()
+	{
+		return (long) this.maxPeakRss;
+	}
+
+
+	/**
+	 * @return TRUE if the regression can be used for the prediction.
+	 */
+	public synchronized boolean hasRegression()
+	{
+		return this.count >= REGRESSION_MIN_COUNT && this.getSizeVariance() > 0;
+	}
+
+
+	/**
+	 * @return Regression slope (seconds per KB).
+	 */
+	public synchronized double getRegressionSlope()
+	{
+		double sizeVariance = this.getSizeVariance();
+
+		if (this.count == 0 || sizeVariance <= 0)
+		{
+			return this.ewmaRate;
+		}
+
+		return (this.sumXY - this.sumX * this.sumY / this.count) / (sizeVariance * this.count);
+	}
+
+
+	/**
+	 * @return Regression intercept (seconds).
+	 */
+	public synchronized double getRegressionIntercept()
+	{
+		if (this.count == 0)
+		{
+			return 0;
+		}
+
+		return (this.sumY - this.getRegressionSlope() * this.sumX) / this.count;
+	}
+
+
+	/**
+	 * @param	fileSize	File size (in KB).
+	 * @return	Running time predicted by the regression (in seconds).
+	 */
+	public synchronized double getPredictedRunningTime(double fileSize)
+	{
+		if (!this.hasRegression())
+		{
+			return this.ewmaRate * fileSize;
+		}
+
+		return Math.max(0, this.getRegressionIntercept() + this.getRegressionSlope() * fileSize);
+	}
+
+
+	/**
+	 * Upper bound of the file running time at the given confidence.
+	 *
+	 * It's the larger of the file rate quantile bound and the regression
+	 * prediction increased by the residuals deviation (normal approximation).
+	 *
+	 * @param	fileSize	File size (in KB).
+	 * @param	confidence	Confidence (0.5 - 0.99).
+	 * @return	Running time upper bound (in seconds).
+	 */
+	public synchronized double getRunningTimeUpperBound(double fileSize, double confidence)
+	{
+		double rate;
+
+		if (confidence <= 0.5)
+		{
+			rate = this.rateP50.getValue();
+		}
+		else if (confidence <= 0.95)
+		{
+			rate = this.rateP95.getValue();
+		}
+		else
+		{
+			rate = this.rateP99.getValue();
+		}
+
+		double bound = rate * fileSize;
+
+		if (this.hasRegression())
+		{
+			bound = Math.max(bound, this.getPredictedRunningTime(fileSize) + getNormalQuantile(confidence) * this.getResidualStandardDeviation());
+		}
+
+		return bound;
+	}
+
+
+	/**
+	 * Inverse of the standard normal distribution function (Acklam's approximation).
+	 *
+	 * @param	p	Probability (0 - 1).
+	 * @return	Standard normal quantile.
+	 */
+	public static double getNormalQuantile(double p)
+	{
+		if (p <= 0 || p >= 1)
+		{
+			throw new IllegalArgumentException("Probability has to be in (0, 1).");
+		}
+
+		double[] a = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02, 1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00};
+		double[] b = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02, 6.680131188771972e+01, -1.328068155288572e+01};
+		double[] c = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00, -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00};
+		double[] d = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00, 3.754408661907416e+00};
+		double q, r;
+
+		if (p < 0.02425)
+		{
+			q = Math.sqrt(-2 * Math.log(p));
+
+			return (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5]) / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+		}
+
+		if (p > 1 - 0.02425)
+		{
+			q = Math.sqrt(-2 * Math.log(1 - p));
+
+			return -(((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5]) / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+		}
+
+		q = p - 0.5;
+		r = q * q;
+
+		return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * q / (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+	}
+
+
+	/**
+	 * @return Standard deviation of the regression residuals (in seconds).
+	 */
+	public synchronized double getResidualStandardDeviation()
+	{
+		if (this.count < REGRESSION_MIN_COUNT)
+		{
+			return 0;
+		}
+
+		double slope		= this.getRegressionSlope();
+		double intercept	= this.getRegressionIntercept();
+
+		// Sum of (y - a - bx)^2 expanded to the kept sums.
+		double residuals = this.sumYY
+				- 2 * intercept * this.sumY
+				- 2 * slope * this.sumXY
+				+ this.count * intercept * intercept
+				+ 2 * intercept * slope * this.sumX
+				+ slope * slope * this.sumXX;
+
+		return Math.sqrt(Math.max(0, residuals) / (this.count - 2));
+	}
+
+
+	/**
+	 * @return Serialized model.
+	 */
+	public synchronized String serialize()
+	{
+		StringBuilder model = new StringBuilder(FORMAT_VERSION);
+
+		for (double value : new double[] {this.count, this.ewmaRate, this.sumX, this.sumY, this.sumXX, this.sumXY, this.sumYY})
+		{
+			model.append(' ').append(value);
+		}
+
+		for (double value : new double[] {this.resourceCount, this.ewmaCpuUtilization, this.sumUserCpuTime, this.sumSystemCpuTime, this.sumReadBytes, this.sumWrittenBytes, this.maxPeakRss})
+		{
+			model.append(' ').append(value);
+		}
+
+		for (P2Quantile quantile : new P2Quantile[] {this.rateP50, this.rateP95, this.rateP99})
+		{
+			for (double value : quantile.getState())
+			{
+				model.append(' ').append(value);
+			}
+		}
+
+		return model.toString();
+	}
+
+
+	/**
+	 * @param	model	Model returned by serialize().
+	 * @return	Deserialized model.
+	 * @throws	IllegalArgumentException
+	 */
+	public static ProcessStatistics deserialize(String model)
+	{
+		String[] parts			= model.trim().split(" ");
+		int resourceValuesCount	= parts[0].equals(FORMAT_VERSION_1) ? 0 : 7;
+
+		if (parts.length != 1 + 7 + resourceValuesCount + 3 * 16 || !(parts[0].equals(FORMAT_VERSION) || parts[0].equals(FORMAT_VERSION_1)))
+		{
+			throw new IllegalArgumentException("Invalid process statistics model.");
+		}
+
+		double[] values = new double[parts.length - 1];
+
+		for (int i = 1; i < parts.length; i++)
+		{
+			values[i - 1] = Double.parseDouble(parts[i]);
+		}
+
+		ProcessStatistics statistics = new ProcessStatistics();
+
+		statistics.count	= (long) values[0];
+		statistics.ewmaRate	= values[1];
+		statistics.sumX		= values[2];
+		statistics.sumY		= values[3];
+		statistics.sumXX	= values[4];
+		statistics.sumXY	= values[5];
+		statistics.sumYY	= values[6];
+
+		if (resourceValuesCount > 0)
+		{
+			statistics.resourceCount		= (long) values[7];
+			statistics.ewmaCpuUtilization	= values[8];
+			statistics.sumUserCpuTime		= values[9];
+			statistics.sumSystemCpuTime		= values[10];
+			statistics.sumReadBytes			= values[11];
+			statistics.sumWrittenBytes		= values[12];
+			statistics.maxPeakRss			= values[13];
+		}
+
+		int offset = 7 + resourceValuesCount;
+
+		statistics.rateP50.setState(Arrays.copyOfRange(values, offset, offset + 16));
+		statistics.rateP95.setState(Arrays.copyOfRange(values, offset + 16, offset + 32));
+		statistics.rateP99.setState(Arrays.copyOfRange(values, offset + 32, offset + 48));
+
+		return statistics;
+	}
+
+
+	/**
+	 * @return File size variance.
+	 */
+	private double getSizeVariance()
+	{
+		if (this.count == 0)
+		{
+			return 0;
+		}
+
+		double mean = this.sumX / this.count;
+
+		return this.sumXX / this.count - mean * mean;
+	}
+}
@@ -0,0 +1,89 @@
+package Paralexec;
+
+/**
+ * Periodic refresher of the process tree.
+ *
+ * New waiting processes are attached to the running tree, so they don't wait
+ * for the next Paralexec start. Refresh is triggered by the interval
+ * or by the refresh flag file in the current directory.
+ *
+ * Settings:
+ *
+ *  - paralexec.refresh.interval - refresh interval in seconds (default 60, 0 = only the flag file)
+ *
+ * @author oto
+ */
+final public class ProcessTreeRefresher implements Runnable
+{
+	/**
+	 * Flag file check interval (miliseconds).
+	 */
+	private static long CHECK_INTERVAL = 500;
+
+
+	/**
+	 * Refresh interval (miliseconds, 0 = only the flag file).
+	 */
+	private static long REFRESH_INTERVAL = Math.max(0, Settings.getLong("refresh.interval", 60)) * 1000;
+
+
+	private Paralexec paralexec;
+
+
+	/**
+	 * Time of the last refresh.
+	 */
+	private long lastRefreshTime;
+
+
+	/**
+	 * @param paralexec
+	 */
+	public ProcessTreeRefresher(Paralexec paralexec)
+	{
+		this.paralexec			= paralexec;
+		this.lastRefreshTime	= System.currentTimeMillis();
+	}
+
+
+	@Override
+	public void run()
+	{
+		while (this.paralexec.isRunning())
+		{
+			boolean intervalElapsed = REFRESH_INTERVAL > 0 && System.currentTimeMillis() - this.lastRefreshTime >= REFRESH_INTERVAL;
+
+			if (this.paralexec.isRefreshRequested() || intervalElapsed)
+			{
+				try
+				{
+					this.paralexec.refreshProcessTree();
+				}
+				catch (Exception e)
+				{
+					Logger.logError("Process tree refresh error: " + e.getMessage());
+				}
+
+				this.lastRefreshTime = System.currentTimeMillis();
+			}
+
+			try
+			{
+				Thread.sleep(CHECK_INTERVAL);
+			}
+			catch (InterruptedException e) {}
+		}
+	}
+
+
+	/**
+	 * Creates and starts the thread.
+	 */
+	public void start()
+	{
+		Thread t = new Thread(this);
+
+		t.setDaemon(true);
+		t.start();
+	}
+}
@@ -0,0 +1,111 @@
+package Paralexec;
+
+/**
+ * Paralexec runtime settings.
+ *
+ * Settings are Java system properties with the "paralexec." prefix,
+ * e.g. java -Dparalexec.fifo=true -jar Paralexec.jar 10
+ *
+ * Invalid values are logged and replaced by the default value.
+ *
+ * @author oto
+ */
+final public class Settings
+{
+	/**
+	 * System properties prefix.
+	 */
+	private static String PREFIX = "paralexec.";
+
+
+	/**
+	 * @param	name
+	 * @param	defaultValue
+	 * @return	String setting value.
+	 */
+	public static String getString(String name, String defaultValue)
+	{
+		String value = System.getProperty(PREFIX + name);
+
+		return value == null || value.trim().equals("") ? defaultValue : value.trim();
+	}
+
+
+	/**
+	 * @param	name
+	 * @param	defaultValue
+	 * @return	Boolean setting value.
+	 */
+	public static boolean getBoolean(String name, boolean defaultValue)
+	{
+		String value = getString(name, null);
+
+		if (value == null)
+		{
+			return defaultValue;
+		}
+
+		return value.equalsIgnoreCase("true") || value.equals("1") || value.equalsIgnoreCase("yes");
+	}
+
+
+	/**
+	 * @param	name
+	 * @param	defaultValue
+	 * @return	Integer setting value.
+	 */
+	public static int getInt(String name, int defaultValue)
+	{
+		return (int) getLong(name, defaultValue);
+	}
+
+
+	/**
+	 * @param	name
+	 * @param	defaultValue
+	 * @return	Long setting value.
+	 */
+	public static long getLong(String name, long defaultValue)
+	{
+		String value = getString(name, null);
+
+		if (value != null)
+		{
+			try
+			{
+				return Long.parseLong(value);
+			}
+			catch (NumberFormatException e)
+			{
+				Logger.logError("Invalid value of the setting " + PREFIX + name + ": " + value);
+			}
+		}
+
+		return defaultValue;
+	}
+
+
+	/**
+	 * @param	name
+	 * @param	defaultValue
+	 * @return	Double setting value.
+	 */
+	public static double getDouble(String name, double defaultValue)
+	{
+		String value = getString(name, null);
+
+		if (value != null)
+		{
+			try
+			{
+				return Double.parseDouble(value);
+			}
+			catch (NumberFormatException e)
+			{
+				Logger.logError("Invalid value of the setting " + PREFIX + name + ": " + value);
+			}
+		}
+
+		return defaultValue;
+	}
+}
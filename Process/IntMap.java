@@ -0,0 +1,185 @@
+package Process;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Map with the primitive int keys (open addressing, linear probing).
+ *
+ * It doesn't box the keys and keeps the values in the insertion order.
+ * Removal is not supported.
+ *
+ * @author oto
+ */
+final public class IntMap<V>
+{
+	/**
+	 * Maximum load factor.
+	 */
+	private static double LOAD_FACTOR = 0.5;
+
+
+	/**
+	 * Keys of the slots.
+	 */
+	private int[] keys;
+
+
+	/**
+	 * Value indexes of the slots (-1 = empty slot).
+	 */
+	private int[] slots;
+
+
+	/**
+	 * Values in the insertion order.
+	 */
+	private List<V> values = new ArrayList<>();
+
+
+	public IntMap()
+	{
+		this(16);
+	}
+
+
+	/**
+	 * @param expectedSize
+	 */
+	public IntMap(int expectedSize)
+	{
+		int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+
+		this.keys	= new int[capacity];
+		this.slots	= new int[capacity];
+
+		Arrays.fill(this.slots, -1);
+	}
+
+
+	/**
+	 * @param	key
+	 * @return	Value (null if the key is not present).
+	 */
+	public V get(int key)
+	{
+		int slot = this.findSlot(key);
+
+		return this.slots[slot] < 0 ? null : this.values.get(this.slots[slot]);
+	}
+
+
+	/**
+	 * @param	key
+	 * @return	TRUE if the key is present.
+	 */
+	public boolean containsKey(int key)
+	{
+		return this.slots[this.findSlot(key)] >= 0;
+	}
+
+
+	/**
+	 * Puts the value (replaces the value of the present key).
+	 *
+	 * @param key
+	 * @param value
+	 */
+	public void put(int key, V value)
+	{
+		int slot = this.findSlot(key);
+
+		if (this.slots[slot] >= 0)
+		{
+			this.values.set(this.slots[slot], value);
+
+			return;
+		}
+
+		this.keys[slot]		= key;
+		this.slots[slot]	= this.values.size();
+
+		this.values.add(value);
+
+		if (this.values.size() > this.keys.length * LOAD_FACTOR)
+		{
+			this.resize();
+		}
+	}
+
+
+	/**
+	 * @return Number of the keys.
+	 */
+	public int size()
+	{
+		return this.values.size();
+	}
+
+
+	/**
+	 * @return Values in the insertion order (read only view).
+	 */
+	public List<V> values()
+	{
+		return Collections.unmodifiableList(this.values);
+	}
+
+
+	/**
+	 * @param	key
+	 * @return	Slot of the key or the empty slot for it.
+	 */
+	private int findSlot(int key)
+	{
+		int mask = this.keys.length - 1;
+		int slot = mix(key) & mask;
+
+		while (this.slots[slot] >= 0 && this.keys[slot] != key)
+		{
+			slot = (slot + 1) & mask;
+		}
+
+		return slot;
+	}
+
+
+	/**
+	 * Doubles the capacity.
+	 */
+	private void resize()
+	{
+		int[] oldKeys	= this.keys;
+		int[] oldSlots	= this.slots;
+
+		this.keys	= new int[oldKeys.length * 2];
+		this.slots	= new int[oldKeys.length * 2];
+
+		Arrays.fill(this.slots, -1);
+
+		for (int i = 0; i < oldKeys.length; i++)
+		{
+			if (oldSlots[i] >= 0)
+			{
+				int slot = this.findSlot(oldKeys[i]);
+
+				this.keys[slot]		= oldKeys[i];
+				this.slots[slot]	= oldSlots[i];
+			}
+		}
+	}
+
+
+	/**
+	 * @param	key
+	 * @return	Scrambled hash of the key (sequential IDs are spread over the slots).
+	 */
+	private static int mix(int key)
+	{
+		int hash = key * 0x9E3779B9;
+
+		return hash ^ (hash >>> 16);
+	}
+}
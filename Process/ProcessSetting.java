@@ -2,6 +2,7 @@ package Process;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  *
@@ -9,6 +10,12 @@ import java.util.List;
  */
 final public class ProcessSetting
 {
+	/**
+	 * Script path prefix of the process steps implemented in Java (FileTask).
+	 */
+	final public static String JAVA_TASK_PREFIX = "java:";
+
+
 	private int id;
 
 
@@ -36,12 +43,48 @@ final public class ProcessSetting
 	private String error;
 
 
+	/**
+	 * Additional parent process IDs (dependency table).
+	 */
+	private List<Integer> dependencyIds = new ArrayList<>();
+
+
 	private List<ProcessSetting> children;
 
 
+	/**
+	 * Number of the linked (waiting) parents - in-degree.
+	 */
+	private int parentsCount = 0;
+
+
+	/**
+	 * Number of the parents which haven't finished yet.
+	 */
+	private AtomicInteger pendingParentsCount = new AtomicInteger();
+
+
 	private boolean isRoot;
 
 
+	/**
+	 * Children have been released by the finished process.
+	 */
+	private boolean childrenReleased = false;
+
+
+	/**
+	 * Only child is chained through the named pipes, no other child can be linked.
+	 */
+	private boolean childrenChained = false;
+
+
+	/**
+	 * Any parent has finished with the partial results.
+	 */
+	private volatile boolean incompleteInput = false;
+
+
 	public ProcessSetting(
 			int		id,
 			int		parentId,
@@ -80,6 +123,105 @@ final public class ProcessSetting
 	}
 	
 	
+	/**
+	 * Adds the additional parent - the process is ready after all its parents.
+	 *
+	 * @param parentId
+	 */
+	public void addDependency(int parentId)
+	{
+		if (parentId != this.parentId && !this.dependencyIds.contains(parentId))
+		{
+			this.dependencyIds.add(parentId);
+		}
+
+		this.isRoot = false;
+	}
+
+
+	/**
+	 * @return IDs of all parents (the parent and the dependencies).
+	 */
+	public List<Integer> getParentIds()
+	{
+		List<Integer> parentIds = new ArrayList<>();
+
+		if (this.parentId != 0)
+		{
+			parentIds.add(this.parentId);
+		}
+
+		parentIds.addAll(this.dependencyIds);
+
+		return parentIds;
+	}
+
+
+	/**
+	 * @return Number of the linked (waiting) parents.
+	 */
+	public int getParentsCount()
+	{
+		return this.parentsCount;
+	}
+
+
+	/**
+	 * Marks one of the parents as finished.
+	 *
+	 * @return TRUE if it was the last unfinished parent (the process is ready).
+	 */
+	public boolean resolveParent()
+	{
+		return this.pendingParentsCount.decrementAndGet() == 0;
+	}
+
+
+	/**
+	 * @return TRUE if the children have been released by the finished process.
+	 */
+	public boolean areChildrenReleased()
+	{
+		return this.childrenReleased;
+	}
+
+
+	public void setChildrenReleased(boolean childrenReleased)
+	{
+		this.childrenReleased = childrenReleased;
+	}
+
+
+	/**
+	 * @return TRUE if the only child is chained through the named pipes.
+	 */
+	public boolean areChildrenChained()
+	{
+		return this.childrenChained;
+	}
+
+
+	public void setChildrenChained(boolean childrenChained)
+	{
+		this.childrenChained = childrenChained;
+	}
+
+
+	/**
+	 * @return TRUE if any parent has finished with the partial results.
+	 */
+	public boolean hasIncompleteInput()
+	{
+		return this.incompleteInput;
+	}
+
+
+	public void setIncompleteInput(boolean incompleteInput)
+	{
+		this.incompleteInput = incompleteInput;
+	}
+
+
 	public boolean isRoot()
 	{
 		return this.isRoot;
@@ -98,9 +240,17 @@ final public class ProcessSetting
 	}
 
 
+	/**
+	 * Links the child (increments its in-degree).
+	 *
+	 * @param child
+	 */
 	public void addChild(ProcessSetting child)
 	{
 		this.children.add(child);
+
+		child.parentsCount++;
+		child.pendingParentsCount.incrementAndGet();
 	}
 
 
@@ -108,6 +258,18 @@ final public class ProcessSetting
 	{
 		return this.scriptPath;
 	}
+
+
+	public boolean isJavaTask()
+	{
+		return this.scriptPath.startsWith(JAVA_TASK_PREFIX);
+	}
+
+
+	public String getJavaTaskClassName()
+	{
+		return this.scriptPath.substring(JAVA_TASK_PREFIX.length()).trim();
+	}
 	
 
 	public String getInputDirPath()
@@ -1,68 +1,465 @@
 package Process;
 
-import Database.Tables.ExecutedProcessesTable;
-import java.sql.ResultSet;
+import Database.DatabaseException;
+import Database.ProcessStore;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Deque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
+ * Graph (DAG) of the waiting process settings.
+ *
+ * Process can have more parents (the dependency table), it's ready when all its
+ * waiting parents are finished. The graph is loaded in two passes, so the rows
+ * can come in any order:
+ *
+ *  - dependencies are loaded first, so the processes without any parent are known
+ *  - streamed rows are indexed by the ID, roots can be started immediately
+ *  - children are linked to their parents, the children of not waiting parents become roots
+ *  - cycles are detected (Kahn's algorithm), the processes in them are never ready,
+ *    the other processes are scheduled (streamed roots can't be in the cycle)
+ *
+ * New waiting processes can be attached by refresh() while the processes are running.
+ * Children of the running processes are read only under the tree lock (see getChildren()).
  *
  * @author ODIS
  */
 final public class ProcessSettingTree
 {
-	private ExecutedProcessesTable processTable;
+	private ProcessStore processStore;
 
 
-	private final Map<Integer, ProcessSetting> items = new HashMap<>();
+	private final IntMap<ProcessSetting> items = new IntMap<>(1024);
 
 
-	public ProcessSettingTree(ExecutedProcessesTable processTable) throws ProcessSettingException
-	{
-		this.processTable = processTable;
+	private final CountDownLatch loaded = new CountDownLatch(1);
+
 
-		this.loadItems();
+	public ProcessSettingTree(ProcessStore processStore)
+	{
+		this.processStore = processStore;
 	}
 
 
-	private void loadItems() throws ProcessSettingException
+	/**
+	 * Loads the tree.
+	 * 
+	 * Children of the started roots are complete only after the load,
+	 * use awaitLoaded() before reading them.
+	 * 
+	 * @param	rootListener	Called for every root as soon as it's known (null if not needed).
+	 * @return	Processes in the dependency cycles and after them (they are never ready).
+	 * @throws	ProcessSettingException 
+	 */
+	public List<ProcessSetting> load(Consumer<ProcessSetting> rootListener) throws ProcessSettingException
 	{
+		List<Integer> duplicates				= new ArrayList<>();
+		List<ProcessSetting> orphans			= new ArrayList<>();
+		IntMap<List<Integer>> dependencies		= new IntMap<>();
+		List<ProcessSetting> cycle;
+
 		try
 		{
-                        for (ProcessSetting processSetting : processTable.getWaitingProcesses())
-                        {
-                                this.addItem(processSetting);
-                        }
+			this.loadDependencies(dependencies);
+
+			this.processStore.loadWaitingProcesses(item -> {
+				if (this.items.containsKey(item.getId()))
+				{
+					duplicates.add(item.getId());
+					return;
+				}
+
+				List<Integer> parentIds = dependencies.get(item.getId());
+
+				if (parentIds != null)
+				{
+					parentIds.forEach(item::addDependency);
+				}
+
+				this.items.put(item.getId(), item);
+
+				if (item.isRoot() && rootListener != null)
+				{
+					rootListener.accept(item);
+				}
+			});
+
+			for (ProcessSetting item : this.items.values())
+			{
+				if (item.isRoot())
+				{
+					continue;
+				}
+
+				for (int parentId : item.getParentIds())
+				{
+					ProcessSetting parent = this.items.get(parentId);
+
+					// Parent which is not waiting is already finished.
+					if (parent != null)
+					{
+						parent.addChild(item);
+					}
+				}
+
+				if (item.getParentsCount() == 0)
+				{
+					item.setIsRoot(true);
+					orphans.add(item);
+				}
+			}
+
+			cycle = this.findCycle();
 		}
 		catch (Exception e)
 		{
 			throw new ProcessSettingException("Error while loading tree: " + e.getMessage());
 		}
+		finally
+		{
+			this.loaded.countDown();
+		}
+
+		if (!duplicates.isEmpty())
+		{
+			throw new ProcessSettingException("Duplicite key " + duplicates.get(0));
+		}
+
+		if (rootListener != null)
+		{
+			orphans.forEach(rootListener);
+		}
+
+		return cycle;
 	}
 
 
-	private void addItem(ProcessSetting item) throws ProcessSettingException
+	/**
+	 * Attaches new waiting processes to the loaded tree.
+	 *
+	 * Processes already known by the tree are skipped (including their new dependencies).
+	 * New process is linked to its parents which haven't released their children yet,
+	 * it's ready if there is no such parent.
+	 *
+	 * Children of the parent with the chained child (and their descendants) are deferred,
+	 * they are attached by the refresh after the parent releases its children.
+	 *
+	 * @param	readyListener	Called for every new process ready for the execution.
+	 * @param	deferred		Deferred processes are added to it.
+	 * @return	New processes in the dependency cycles and after them (they are never ready).
+	 * @throws	ProcessSettingException
+	 */
+	public List<ProcessSetting> refresh(Consumer<ProcessSetting> readyListener, List<ProcessSetting> deferred) throws ProcessSettingException
 	{
-		if (this.items.containsKey(item.getId()))
+		IntMap<List<Integer>> dependencies	= new IntMap<>();
+		List<ProcessSetting> loadedItems	= new ArrayList<>();
+		List<ProcessSetting> cycle			= new ArrayList<>();
+
+		this.awaitLoaded();
+
+		// Store is read without the tree lock, running Execs can release their children meanwhile.
+		try
+		{
+			this.loadDependencies(dependencies);
+			this.processStore.loadWaitingProcesses(loadedItems::add);
+		}
+		catch (Exception e)
 		{
-			throw new ProcessSettingException("Duplicite key " + item.getId());
+			throw new ProcessSettingException("Error while refreshing tree: " + e.getMessage());
 		}
 
-		this.items.put(item.getId(), item);
+		// Listener is called without the tree lock.
+		this.attach(loadedItems, dependencies, cycle, deferred).forEach(readyListener);
 
-		if (!item.isRoot())
+		return cycle;
+	}
+
+
+	/**
+	 * @param	parent
+	 * @return	Snapshot of the children (the running Execs cannot iterate the children attached by refresh()).
+	 */
+	public synchronized List<ProcessSetting> getChildren(ProcessSetting parent)
+	{
+		return new ArrayList<>(parent.getChildren());
+	}
+
+
+	/**
+	 * Chains the only child of the process through the named pipes.
+	 *
+	 * The decision is made under the tree lock, so refresh() cannot link another child
+	 * to the process after it (the new children are deferred).
+	 *
+	 * @param	parent
+	 * @param	condition	Chaining condition of the only child.
+	 * @return	Chained child (null if the process has not exactly one child or it doesn't meet the condition).
+	 */
+	public synchronized ProcessSetting chainOnlyChild(ProcessSetting parent, Predicate<ProcessSetting> condition)
+	{
+		if (parent.getChildren().size() != 1 || !condition.test(parent.getChildren().get(0)))
 		{
-			if (this.items.containsKey(item.getParentId()))
+			return null;
+		}
+
+		parent.setChildrenChained(true);
+
+		return parent.getChildren().get(0);
+	}
+
+
+	/**
+	 * Releases the children of the finished process.
+	 *
+	 * @param	parent
+	 * @param	partial		Parent has finished with the partial results.
+	 * @return	Children ready for the execution (their last parent has finished).
+	 */
+	public synchronized List<ProcessSetting> releaseChildren(ProcessSetting parent, boolean partial)
+	{
+		List<ProcessSetting> readyChildren = new ArrayList<>();
+
+		parent.setChildrenReleased(true);
+
+		for (ProcessSetting child : parent.getChildren())
+		{
+			if (partial)
 			{
-				this.items.get(item.getParentId()).addChild(item);
+				child.setIncompleteInput(true);
 			}
-			else
+
+			if (child.resolveParent())
+			{
+				readyChildren.add(child);
+			}
+		}
+
+		return readyChildren;
+	}
+
+
+	/**
+	 * @param	loadedItems		Streamed waiting processes.
+	 * @param	dependencies	<Process ID => parent IDs>
+	 * @param	cycle			New processes in the cycles are added to it.
+	 * @param	deferred		New processes deferred by the chained parents are added to it.
+	 * @return	New processes ready for the execution.
+	 */
+	private synchronized List<ProcessSetting> attach(List<ProcessSetting> loadedItems, IntMap<List<Integer>> dependencies, List<ProcessSetting> cycle, List<ProcessSetting> deferred)
+	{
+		Set<ProcessSetting> newItems		= Collections.newSetFromMap(new IdentityHashMap<>());
+		List<ProcessSetting> readyItems		= new ArrayList<>();
+		IntMap<ProcessSetting> candidates	= new IntMap<>();
+
+		for (ProcessSetting item : loadedItems)
+		{
+			if (this.items.containsKey(item.getId()) || candidates.containsKey(item.getId()))
+			{
+				continue;
+			}
+
+			List<Integer> parentIds = dependencies.get(item.getId());
+
+			if (parentIds != null)
+			{
+				parentIds.forEach(item::addDependency);
+			}
+
+			candidates.put(item.getId(), item);
+		}
+
+		Set<ProcessSetting> deferredItems = this.findDeferredItems(candidates);
+
+		deferred.addAll(deferredItems);
+
+		for (ProcessSetting item : candidates.values())
+		{
+			if (!deferredItems.contains(item))
+			{
+				this.items.put(item.getId(), item);
+				newItems.add(item);
+			}
+		}
+
+		for (ProcessSetting item : newItems)
+		{
+			for (int parentId : item.getParentIds())
+			{
+				ProcessSetting parent = this.items.get(parentId);
+
+				if (parent != null && !parent.areChildrenReleased())
+				{
+					parent.addChild(item);
+				}
+			}
+		}
+
+		for (ProcessSetting item : this.findCycle())
+		{
+			if (newItems.contains(item))
+			{
+				cycle.add(item);
+			}
+		}
+
+		for (ProcessSetting item : loadedItems)
+		{
+			if (newItems.contains(item) && item.getParentsCount() == 0)
 			{
 				item.setIsRoot(true);
+				readyItems.add(item);
+			}
+		}
+
+		return readyItems;
+	}
+
+
+	/**
+	 * Finds the new processes which cannot be linked yet.
+	 *
+	 * Chained parent has to keep its only child, so its new children wait
+	 * until it releases the children. The descendants of the deferred processes are deferred too.
+	 *
+	 * @param	candidates	<Process ID => new process>
+	 * @return	Deferred processes.
+	 */
+	private Set<ProcessSetting> findDeferredItems(IntMap<ProcessSetting> candidates)
+	{
+		Set<ProcessSetting> deferredItems	= Collections.newSetFromMap(new IdentityHashMap<>());
+		boolean changed						= true;
+
+		while (changed)
+		{
+			changed = false;
+
+			for (ProcessSetting item : candidates.values())
+			{
+				if (deferredItems.contains(item))
+				{
+					continue;
+				}
+
+				for (int parentId : item.getParentIds())
+				{
+					ProcessSetting parent		= this.items.get(parentId);
+					ProcessSetting newParent	= candidates.get(parentId);
+
+					if ((parent != null && parent.areChildrenChained() && !parent.areChildrenReleased())
+							|| (newParent != null && deferredItems.contains(newParent)))
+					{
+						deferredItems.add(item);
+						changed = true;
+
+						break;
+					}
+				}
+			}
+		}
+
+		return deferredItems;
+	}
+
+
+	/**
+	 * Loads the additional parents of the waiting processes.
+	 *
+	 * @param	dependencies	<Process ID => parent IDs>
+	 * @throws	DatabaseException
+	 */
+	private void loadDependencies(IntMap<List<Integer>> dependencies) throws DatabaseException
+	{
+		this.processStore.loadProcessDependencies((processId, parentId) -> {
+			List<Integer> parentIds = dependencies.get(processId);
+
+			if (parentIds == null)
+			{
+				parentIds = new ArrayList<>();
+				dependencies.put(processId, parentIds);
+			}
+
+			parentIds.add(parentId);
+		});
+	}
+
+
+	/**
+	 * Finds the processes which can never be ready (Kahn's algorithm).
+	 *
+	 * @return Processes in the cycles and after them (empty if there is no cycle).
+	 */
+	private List<ProcessSetting> findCycle()
+	{
+		Map<ProcessSetting, Integer> inDegrees	= new IdentityHashMap<>();
+		Deque<ProcessSetting> readyItems		= new ArrayDeque<>();
+		List<ProcessSetting> cycle				= new ArrayList<>();
+
+		for (ProcessSetting item : this.items.values())
+		{
+			inDegrees.put(item, item.getParentsCount());
+
+			if (item.getParentsCount() == 0)
+			{
+				readyItems.add(item);
+			}
+		}
+
+		while (!readyItems.isEmpty())
+		{
+			for (ProcessSetting child : readyItems.poll().getChildren())
+			{
+				int inDegree = inDegrees.get(child) - 1;
+
+				inDegrees.put(child, inDegree);
+
+				if (inDegree == 0)
+				{
+					readyItems.add(child);
+				}
+			}
+		}
+
+		for (ProcessSetting item : this.items.values())
+		{
+			if (inDegrees.get(item) > 0)
+			{
+				cycle.add(item);
+			}
+		}
+
+		return cycle;
+	}
+
+
+	/**
+	 * @return TRUE if the tree is loaded.
+	 */
+	public boolean isLoaded()
+	{
+		return this.loaded.getCount() == 0;
+	}
+
+
+	/**
+	 * Waits for the end of the tree load.
+	 */
+	public void awaitLoaded()
+	{
+		while (!this.isLoaded())
+		{
+			try
+			{
+				this.loaded.await();
 			}
+			catch (InterruptedException e) {}
 		}
 	}
 
@@ -71,14 +468,14 @@ final public class ProcessSettingTree
 	{
 		List<ProcessSetting> tree = new ArrayList<>();
 
-		for (Entry<Integer, ProcessSetting> item : this.items.entrySet())
+		for (ProcessSetting item : this.items.values())
 		{
-			if (item.getValue().isRoot())
+			if (item.isRoot())
 			{
-				tree.add(item.getValue());
+				tree.add(item);
 			}
 		}
 
 		return tree;
 	}
-}
+}
\ No newline at end of file
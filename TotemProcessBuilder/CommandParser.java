@@ -10,6 +10,32 @@ import java.util.List;
  */
 public class CommandParser
 {
+	/**
+	 * Tee program name.
+	 * 
+	 * Program calls of this name are handled by TotemProcessBuilder itself.
+	 */
+	public static final String TEE_PROGRAM = "tee";
+	
+	
+	/**
+	 * Append flag of the tee program call (the only supported tee option).
+	 */
+	public static final String TEE_APPEND_FLAG = "-a";
+	
+	
+	/**
+	 * Prefix of the placeholder which replaces the tee branch in the command.
+	 */
+	private static final String TEE_BRANCH_PLACEHOLDER_PREFIX = "[tee-branch-";
+	
+	
+	/**
+	 * Suffix of the placeholder which replaces the tee branch in the command.
+	 */
+	private static final String TEE_BRANCH_PLACEHOLDER_SUFFIX = "]";
+	
+	
 	/**
 	 * Processed command.
 	 * 
@@ -36,6 +62,12 @@ public class CommandParser
 	private String errorOutputFilePath = null;
 	
 	
+	/**
+	 * Tee branches - commands defined as >(...) in the command.
+	 */
+	private List<CommandParser> teeBranches = new ArrayList<>();
+	
+	
 	/**
 	 * @param command
 	 * @throws CommandParserException 
@@ -44,6 +76,9 @@ public class CommandParser
 	{
 		this.processedCommand = command;
 		
+		// Tee branches have to be taken out first (they can contain outputs).
+		this.parseTeeBranches();
+		
 		// Parsing from the end of the command.
 		this.parseErrorOutput();
 		this.parseStandardOutput();
@@ -96,6 +131,85 @@ public class CommandParser
 	}
 	
 	
+	/**
+	 * @return tee branches
+	 */
+	public List<CommandParser> getTeeBranches()
+	{
+		return this.teeBranches;
+	}
+	
+	
+	/**
+	 * @param argument Program call argument.
+	 * @return TRUE if the argument is a tee branch placeholder, FALSE otherwise
+	 */
+	public static boolean isTeeBranchPlaceholder(String argument)
+	{
+		return argument.startsWith(TEE_BRANCH_PLACEHOLDER_PREFIX) && argument.endsWith(TEE_BRANCH_PLACEHOLDER_SUFFIX);
+	}
+	
+	
+	/**
+	 * @param placeholder Tee branch placeholder.
+	 * @return index of the tee branch
+	 */
+	public static int getTeeBranchIndex(String placeholder)
+	{
+		return Integer.parseInt(placeholder.substring(
+				TEE_BRANCH_PLACEHOLDER_PREFIX.length(),
+				placeholder.length() - TEE_BRANCH_PLACEHOLDER_SUFFIX.length()
+		));
+	}
+	
+	
+	/**
+	 * Parses tee branches.
+	 * 
+	 * Every >(...) part of the command is parsed as a separate command
+	 * and replaced by the placeholder, e.g.:
+	 * 
+	 *	sort in.txt | tee >(uniq -c > counts.txt) sorted.txt | wc -l > lines.txt
+	 * 
+	 * @throws CommandParserException 
+	 */
+	private void parseTeeBranches() throws CommandParserException
+	{
+		int branchStart;
+		
+		while ((branchStart = this.processedCommand.indexOf(">(")) >= 0)
+		{
+			int depth		= 0;
+			int branchEnd	= -1;
+			
+			for (int i = branchStart + 1; i < this.processedCommand.length() && branchEnd < 0; i++)
+			{
+				char c = this.processedCommand.charAt(i);
+				
+				if (c == '(')
+				{
+					depth++;
+				}
+				else if (c == ')' && --depth == 0)
+				{
+					branchEnd = i;
+				}
+			}
+			
+			if (branchEnd < 0)
+			{
+				throw new CommandParserException("Unclosed tee branch detected.");
+			}
+			
+			this.teeBranches.add(new CommandParser(this.processedCommand.substring(branchStart + 2, branchEnd)));
+			
+			this.processedCommand = this.processedCommand.substring(0, branchStart)
+					+ TEE_BRANCH_PLACEHOLDER_PREFIX + (this.teeBranches.size() - 1) + TEE_BRANCH_PLACEHOLDER_SUFFIX
+					+ this.processedCommand.substring(branchEnd + 1);
+		}
+	}
+	
+	
 	/**
 	 * Parses error output file path.
 	 * 
@@ -30,6 +30,7 @@ public class CommandValidator
 		this.parser = parser;
 		
 		this.validateProgramCalls();
+		this.validateTeeBranches();
 	}
 	
 	
@@ -61,4 +62,50 @@ public class CommandValidator
 			this.invalidityReasons.add("No program calls.");
 		}
 	}
+	
+	
+	/**
+	 * Validates tee branches in command.
+	 * 
+	 * Branch can be used only as an argument of the tee program call
+	 * and it has to be a valid command itself. Tee program call supports only
+	 * the append option, other options would become the output file names.
+	 */
+	private void validateTeeBranches()
+	{
+		for (String[] programCall : parser.getProgramCalls())
+		{
+			for (int i = 0; i < programCall.length; i++)
+			{
+				if (i > 0 && programCall[0].equals(CommandParser.TEE_PROGRAM) && programCall[i].startsWith("-") && !programCall[i].equals(CommandParser.TEE_APPEND_FLAG))
+				{
+					this.invalidityReasons.add("Unsupported tee option " + programCall[i] + ".");
+				}
+				
+				if (!CommandParser.isTeeBranchPlaceholder(programCall[i]))
+				{
+					continue;
+				}
+				
+				if (i == 0 || !programCall[0].equals(CommandParser.TEE_PROGRAM))
+				{
+					this.invalidityReasons.add("Tee branch used outside of the tee program call.");
+				}
+				else if (CommandParser.getTeeBranchIndex(programCall[i]) >= parser.getTeeBranches().size())
+				{
+					this.invalidityReasons.add("Unknown tee branch " + programCall[i] + ".");
+				}
+			}
+		}
+		
+		for (CommandParser branch : parser.getTeeBranches())
+		{
+			CommandValidator branchValidator = new CommandValidator(branch);
+			
+			for (String reason : branchValidator.getInvalidityReasons())
+			{
+				this.invalidityReasons.add("Tee branch: " + reason);
+			}
+		}
+	}
 }
@@ -19,19 +19,19 @@ public class TotemProcess implements Runnable
 	/**
 	 * Executing command parts.
 	 */
-	private String[] command;
+	protected String[] command;
 	
 	
 	/**
 	 * Process builder (caller).
 	 */
-	private TotemProcessBuilder builder;
+	protected TotemProcessBuilder builder;
 	
 	
 	/**
 	 * Process input lines.
 	 */
-	private List<String> input = new ArrayList<>();
+	protected List<String> input = new ArrayList<>();
 	
 	
 	/**
@@ -75,6 +75,24 @@ public class TotemProcess implements Runnable
 	}
 	
 	
+	/**
+	 * @return Executing command parts.
+	 */
+	public String[] getCommand()
+	{
+		return this.command;
+	}
+	
+	
+	/**
+	 * @return OS process ID (-1 if the process is not started).
+	 */
+	public long getPid()
+	{
+		return this.process != null ? this.process.pid() : -1;
+	}
+	
+	
 	/**
 	 * Sets the process input.
 	 * 
@@ -131,11 +149,18 @@ public class TotemProcess implements Runnable
 	@Override
 	public void run()
 	{
-		ProcessBuilder processBuilder = new ProcessBuilder(this.command);
+		ProcessBuilder processBuilder	= new ProcessBuilder(this.builder.getSpawnCommand(this.command));
+		TotemProcessListener listener	= this.builder.getListener();
 		
 		try
 		{
-			this.process = processBuilder.start();
+			long startTime	= System.nanoTime();
+			this.process	= processBuilder.start();
+			
+			if (listener != null)
+			{
+				listener.processStarted(this, System.nanoTime() - startTime);
+			}
 			
 			// Write standard output if the input has been provided.
 			if (!this.input.isEmpty())
@@ -147,12 +172,20 @@ public class TotemProcess implements Runnable
 			this.process.waitFor();
 			this.closeFiles();
 			
+			if (listener != null)
+			{
+				listener.processFinished(this, System.nanoTime() - startTime);
+			}
+			
 			// Contact builder about process end - continue signal.
 			this.builder.processNextProgramCall();
 		}
+		// Builder would wait for the next program call forever.
 		catch (Exception e)
 		{
+			this.closeFiles();
 			
+			this.builder.processFailed(this, e);
 		}
 	}
 	
@@ -173,7 +206,12 @@ public class TotemProcess implements Runnable
 	 */
 	public void stop()
 	{
-		this.process.destroy();
+		// Process could fail to start.
+		if (this.process != null)
+		{
+			this.process.destroy();
+		}
+		
 		this.closeFiles();
 	}
 	
@@ -226,7 +264,7 @@ public class TotemProcess implements Runnable
 	 * 
 	 * @param line 
 	 */
-	private void saveStandardOutputLine(String line)
+	protected void saveStandardOutputLine(String line)
 	{
 		// Saves it into the file, if provided.
 		if (this.standardOutputFile != null)
@@ -264,7 +302,7 @@ public class TotemProcess implements Runnable
 	/**
 	 * Closes all open files.
 	 */
-	private void closeFiles()
+	protected void closeFiles()
 	{
 		if (this.standardOutputFile != null)
 		{
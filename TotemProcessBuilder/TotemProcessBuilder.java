@@ -29,10 +29,46 @@ public class TotemProcessBuilder
 	private String errorOutputFilePath = null;
 	
 	
+	/**
+	 * Tee branches of the parsed command.
+	 */
+	private List<CommandParser> teeBranches = new ArrayList<>();
+	
+	
+	/**
+	 * Builders of the started tee branches.
+	 */
+	private List<TotemProcessBuilder> teeBranchBuilders = new ArrayList<>();
+	
+	
+	/**
+	 * Input lines of the first program call.
+	 */
+	private List<String> input = null;
+	
+	
+	/**
+	 * Listener of the spawned processes.
+	 */
+	private TotemProcessListener listener = null;
+	
+	
+	/**
+	 * Command prefix of the spawned processes (e.g. the wrapper joining the cgroup).
+	 */
+	private String[] commandPrefix = new String[0];
+	
+	
 	/**
 	 * Running flag.
 	 */
-	private boolean isRunning = false;
+	private volatile boolean isRunning = false;
+	
+	
+	/**
+	 * Processing error (null if there is none).
+	 */
+	private volatile String error = null;
 	
 	
 	/**
@@ -54,8 +90,17 @@ public class TotemProcessBuilder
 	 */
 	public TotemProcessBuilder(String command) throws CommandParserException, InvalidCommandException
 	{
-		// Parses and validates the command.
-		CommandParser parser		= new CommandParser(command);
+		this(new CommandParser(command));
+	}
+	
+	
+	/**
+	 * @param	parser
+	 * @throws	InvalidCommandException 
+	 */
+	public TotemProcessBuilder(CommandParser parser) throws InvalidCommandException
+	{
+		// Validates the parsed command.
 		CommandValidator validator	= new CommandValidator(parser);
 		
 		if (!validator.isValid())
@@ -67,6 +112,7 @@ public class TotemProcessBuilder
 		this.programCalls			= parser.getProgramCalls();
 		this.standardOutputFilePath = parser.getStandardOutputFilePath();
 		this.errorOutputFilePath	= parser.getErrorOutputFilePath();
+		this.teeBranches			= parser.getTeeBranches();
 	}
 	
 	
@@ -85,6 +131,101 @@ public class TotemProcessBuilder
 	}
 	
 	
+	/**
+	 * @return Standard output file path (null if not set).
+	 */
+	public String getStandardOutputFilePath()
+	{
+		return this.standardOutputFilePath;
+	}
+	
+	
+	/**
+	 * Sets the input of the first program call.
+	 * 
+	 * @param input 
+	 */
+	public void setInput(List<String> input)
+	{
+		this.input = input;
+	}
+	
+	
+	/**
+	 * Sets the listener of the spawned processes (also used by the tee branches).
+	 * 
+	 * @param listener 
+	 */
+	public void setListener(TotemProcessListener listener)
+	{
+		this.listener = listener;
+	}
+	
+	
+	/**
+	 * @return Listener of the spawned processes (null if not set).
+	 */
+	public TotemProcessListener getListener()
+	{
+		return this.listener;
+	}
+	
+	
+	/**
+	 * Sets the command prefix of the spawned processes (also used by the tee branches).
+	 * 
+	 * The prefix has to exec the program given by its arguments.
+	 * 
+	 * @param commandPrefix 
+	 */
+	public void setCommandPrefix(String[] commandPrefix)
+	{
+		this.commandPrefix = commandPrefix;
+	}
+	
+	
+	/**
+	 * @return Command prefix of the spawned processes.
+	 */
+	public String[] getCommandPrefix()
+	{
+		return this.commandPrefix;
+	}
+	
+	
+	/**
+	 * @param	command	Program call.
+	 * @return	Spawned command (program call with the command prefix).
+	 */
+	public String[] getSpawnCommand(String[] command)
+	{
+		if (this.commandPrefix.length == 0)
+		{
+			return command;
+		}
+		
+		String[] spawnCommand = new String[this.commandPrefix.length + command.length];
+		
+		System.arraycopy(this.commandPrefix, 0, spawnCommand, 0, this.commandPrefix.length);
+		System.arraycopy(command, 0, spawnCommand, this.commandPrefix.length, command.length);
+		
+		return spawnCommand;
+	}
+	
+	
+	/**
+	 * Registers started tee branch builder.
+	 * 
+	 * Processing is not finished until all branches are finished.
+	 * 
+	 * @param branchBuilder 
+	 */
+	public synchronized void addTeeBranchBuilder(TotemProcessBuilder branchBuilder)
+	{
+		this.teeBranchBuilders.add(branchBuilder);
+	}
+	
+	
 	/**
 	 * Starts the processing.
 	 * 
@@ -92,7 +233,8 @@ public class TotemProcessBuilder
 	 */
 	public void start() throws IOException
 	{
-		this.isRunning = true;
+		this.error		= null;
+		this.isRunning	= true;
 		
 		this.processNextProgramCall();
 	}
@@ -107,6 +249,29 @@ public class TotemProcessBuilder
 	}
 	
 	
+	/**
+	 * @return Processing error of the last run (null if there is none).
+	 */
+	public String getError()
+	{
+		return this.error;
+	}
+	
+	
+	/**
+	 * Ends the processing after the failure of the process (spawn or I/O error).
+	 * 
+	 * @param process
+	 * @param e 
+	 */
+	public void processFailed(TotemProcess process, Exception e)
+	{
+		this.error = "Program " + process.getCommand()[0] + " failed: " + e.getMessage();
+		
+		this.stop();
+	}
+	
+	
 	/**
 	 * Processes next program call.
 	 * 
@@ -119,7 +284,9 @@ public class TotemProcessBuilder
 			if (this.programCallIndex < this.programCalls.size())
 			{
 				String[] programCall	= this.programCalls.get(this.programCallIndex);
-				TotemProcess newProcess	= new TotemProcess(programCall, this);
+				TotemProcess newProcess	= programCall[0].equals(CommandParser.TEE_PROGRAM)
+						? new TotemTeeProcess(programCall, this, this.teeBranches)
+						: new TotemProcess(programCall, this);
 				
 				// Setting error file if provided.
 				if (this.errorOutputFilePath != null)
@@ -132,6 +299,11 @@ public class TotemProcessBuilder
 				{
 					newProcess.setInput(this.runningProcess.getStandardOutput());
 				}
+				// First program call - setting builder input if provided.
+				else if (this.input != null)
+				{
+					newProcess.setInput(this.input);
+				}
 				
 				// Last program call - setting output file if provided.
 				if (this.programCallIndex == this.programCalls.size() - 1 && this.standardOutputFilePath != null)
@@ -147,12 +319,39 @@ public class TotemProcessBuilder
 			}
 			else
 			{
+				this.waitForTeeBranches();
 				this.resetState();
 			}
 		}
 	}
 	
 	
+	/**
+	 * Waits for all started tee branches.
+	 */
+	private void waitForTeeBranches()
+	{
+		for (TotemProcessBuilder branchBuilder : this.getTeeBranchBuilders())
+		{
+			branchBuilder.waitFor();
+			
+			if (this.error == null && branchBuilder.getError() != null)
+			{
+				this.error = branchBuilder.getError();
+			}
+		}
+	}
+	
+	
+	/**
+	 * @return Copy of the started tee branch builders list.
+	 */
+	private synchronized List<TotemProcessBuilder> getTeeBranchBuilders()
+	{
+		return new ArrayList<>(this.teeBranchBuilders);
+	}
+	
+	
 	/**
 	 * Stops processing.
 	 */
@@ -165,6 +364,11 @@ public class TotemProcessBuilder
 				this.runningProcess.stop();
 			}
 			
+			for (TotemProcessBuilder branchBuilder : this.getTeeBranchBuilders())
+			{
+				branchBuilder.stop();
+			}
+			
 			this.resetState();
 		}
 	}
@@ -178,6 +382,11 @@ public class TotemProcessBuilder
 		this.runningProcess		= null;
 		this.programCallIndex	= 0;
 		this.isRunning			= false;
+		
+		synchronized (this)
+		{
+			this.teeBranchBuilders.clear();
+		}
 	}
 	
 	
@@ -251,6 +460,14 @@ public class TotemProcessBuilder
 			{
 				System.out.println("Error output: " + parser.getErrorOutputFilePath());
 			}
+			
+			for (CommandParser branch : parser.getTeeBranches())
+			{
+				for (String[] programCall : branch.getProgramCalls())
+				{
+					System.out.println("Tee branch program call: " + String.join(" ", programCall));
+				}
+			}
 		}
 		catch (CommandParserException e)
 		{
@@ -0,0 +1,28 @@
+package TotemProcessBuilder;
+
+/**
+ * Listener of the spawned TotemProcess life cycle.
+ * 
+ * Methods are called from the TotemProcess threads.
+ * 
+ * @author Ondřej Tom <info@ondratom.cz>
+ */
+public interface TotemProcessListener
+{
+	/**
+	 * Called after the process has been spawned.
+	 * 
+	 * @param process
+	 * @param spawnTime Process spawn duration (in nanoseconds).
+	 */
+	public void processStarted(TotemProcess process, long spawnTime);
+	
+	
+	/**
+	 * Called after the process has ended.
+	 * 
+	 * @param process
+	 * @param runTime Process run duration including the input and output handling (in nanoseconds).
+	 */
+	public void processFinished(TotemProcess process, long runTime);
+}
@@ -0,0 +1,166 @@
+package TotemProcessBuilder;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Totem tee process.
+ * 
+ * Fans the previous program call output out into the files and tee branches
+ * without spawning any program. The output is also passed to the next program call.
+ * 
+ * Supported form: tee [-a] [file | >(command)]...
+ * 
+ * @author Ondřej Tom <info@ondratom.cz>
+ */
+public class TotemTeeProcess extends TotemProcess
+{
+	/**
+	 * Tee branches of the parsed command.
+	 */
+	private List<CommandParser> teeBranches;
+	
+	
+	/**
+	 * Started branch builders.
+	 */
+	private List<TotemProcessBuilder> branchBuilders = new ArrayList<>();
+	
+	
+	/**
+	 * Stopped flag.
+	 */
+	private volatile boolean stopped = false;
+	
+	
+	/**
+	 * @param command		Tee program call.
+	 * @param builder		The caller of the TotemTeeProcess.
+	 * @param teeBranches	Tee branches of the parsed command.
+	 */
+	public TotemTeeProcess(String[] command, TotemProcessBuilder builder, List<CommandParser> teeBranches)
+	{
+		super(command, builder);
+		
+		this.teeBranches = teeBranches;
+	}
+	
+	
+	@Override
+	public void run()
+	{
+		try
+		{
+			this.startBranches();
+			this.writeFiles();
+			
+			// Pass the stream through to the next program call.
+			for (String line : this.input)
+			{
+				this.saveStandardOutputLine(line);
+			}
+			
+			this.closeFiles();
+			
+			if (!this.stopped)
+			{
+				// Contact builder about process end - continue signal.
+				this.builder.processNextProgramCall();
+			}
+		}
+		// Builder would wait for the next program call forever.
+		catch (Exception e)
+		{
+			this.closeFiles();
+			
+			this.builder.processFailed(this, e);
+		}
+	}
+	
+	
+	@Override
+	public void stop()
+	{
+		this.stopped = true;
+		
+		for (TotemProcessBuilder branchBuilder : this.branchBuilders)
+		{
+			branchBuilder.stop();
+		}
+		
+		this.closeFiles();
+	}
+	
+	
+	/**
+	 * Starts builders of all branches with the tee input.
+	 * 
+	 * Branches are registered in the caller, so it waits for them.
+	 * 
+	 * @throws CommandParserException
+	 * @throws InvalidCommandException
+	 * @throws IOException 
+	 */
+	private void startBranches() throws CommandParserException, InvalidCommandException, IOException
+	{
+		for (int i = 1; i < this.command.length; i++)
+		{
+			if (!CommandParser.isTeeBranchPlaceholder(this.command[i]))
+			{
+				continue;
+			}
+			
+			CommandParser branch				= this.teeBranches.get(CommandParser.getTeeBranchIndex(this.command[i]));
+			TotemProcessBuilder branchBuilder	= new TotemProcessBuilder(branch);
+			
+			branchBuilder.setInput(this.input);
+			branchBuilder.setListener(this.builder.getListener());
+			branchBuilder.setCommandPrefix(this.builder.getCommandPrefix());
+			
+			this.branchBuilders.add(branchBuilder);
+			this.builder.addTeeBranchBuilder(branchBuilder);
+			
+			branchBuilder.start();
+		}
+	}
+	
+	
+	/**
+	 * Writes the tee input into all given files.
+	 * 
+	 * @throws IOException 
+	 */
+	private void writeFiles() throws IOException
+	{
+		boolean append = false;
+		
+		for (int i = 1; i < this.command.length; i++)
+		{
+			if (this.command[i].equals(CommandParser.TEE_APPEND_FLAG))
+			{
+				append = true;
+			}
+		}
+		
+		for (int i = 1; i < this.command.length && !this.stopped; i++)
+		{
+			if (this.command[i].isEmpty() || this.command[i].equals(CommandParser.TEE_APPEND_FLAG) || CommandParser.isTeeBranchPlaceholder(this.command[i]))
+			{
+				continue;
+			}
+			
+			try (PrintWriter file = new PrintWriter(new OutputStreamWriter(new FileOutputStream(this.command[i], append), StandardCharsets.UTF_8)))
+			{
+				for (String line : this.input)
+				{
+					file.println(line);
+				}
+			}
+		}
+	}
+}